@@ -0,0 +1,191 @@
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets customers into a threaded theater on the schedule of an ArrivalProcess, using a scheduled executor so arrival
+ * times do not depend on how fast customer threads start.
+ *
+ * When the box office line is at capacity, the next arrival is held back and the rest of the schedule slides with it,
+ * so a saturated theater sees a lower achieved arrival rate instead of an ever-growing line.
+ *
+ */
+public class ArrivalGenerator {
+
+    //how long a held back arrival waits before checking the line again, in real nanoseconds
+    private static final long BACKOFF_NANOS = 1000000;
+
+    private final ArrivalProcess process;
+    private final SplittableRandom rand;
+    //customers in the box office line
+    private final IntSupplier inLine;
+    private final int capacity;
+    private final int customers;
+    private final int timeScale;
+    private final ScheduledExecutorService scheduler;
+    private final CountDownLatch done;
+
+    //only touched by the scheduler thread
+    private IntConsumer arrive;
+    private int started;
+    private long nextMillis;
+    private long startNanos;
+    private long shiftNanos;
+    private long firstNanos;
+    private long lastNanos;
+    private int held;
+    private long maxLagNanos;
+
+    /**
+     * Constructs an ArrivalGenerator
+     *
+     * @param process when customers arrive
+     * @param rand random generator for the arrival process
+     * @param boxLine metrics of the box office line, used to see how long it is
+     * @param config customer count, line capacity and time scale
+     */
+    public ArrivalGenerator(ArrivalProcess process, SplittableRandom rand, StageMetrics boxLine, TheaterConfig config) {
+        this(process, rand, boxLine::getInLine, config);
+    }
+
+    /**
+     * Constructs an ArrivalGenerator that holds arrivals back by a line length it reads from anywhere
+     *
+     * @param process when customers arrive
+     * @param rand random generator for the arrival process
+     * @param inLine returns how many customers wait in the line arrivals join
+     * @param config customer count, line capacity and time scale
+     */
+    public ArrivalGenerator(ArrivalProcess process, SplittableRandom rand, IntSupplier inLine, TheaterConfig config) {
+        this(process, rand, inLine, config, config.customers);
+    }
+
+    /**
+     * Constructs an ArrivalGenerator for a customer count other than the configured one, such as a replayed trace's
+     *
+     * @param process when customers arrive
+     * @param rand random generator for the arrival process
+     * @param inLine returns how many customers wait in the line arrivals join
+     * @param config line capacity and time scale
+     * @param customers number of customers that arrive
+     */
+    public ArrivalGenerator(ArrivalProcess process, SplittableRandom rand, IntSupplier inLine, TheaterConfig config,
+            int customers) {
+        this.process = process;
+        this.rand = rand;
+        this.inLine = inLine;
+        this.capacity = config.lineCapacity;
+        this.customers = customers;
+        this.timeScale = config.timeScale;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ArrivalGenerator");
+            t.setDaemon(true);
+            return t;
+        });
+        this.done = new CountDownLatch(1);
+    }
+
+    /**
+     * Lets every customer in and returns once the last one has arrived
+     *
+     * @param arrive called on the scheduler thread with the ID of each arriving customer
+     * @return number of customers that arrived
+     */
+    public int run(IntConsumer arrive) {
+        this.arrive = arrive;
+        scheduler.execute(() -> {
+            startNanos = System.nanoTime();
+            nextMillis = process.nextArrival(0, rand);
+            schedule();
+        });
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ArrivalGenerator.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        scheduler.shutdown();
+        return started;
+    }
+
+    /**
+     * Stops letting customers in and makes run return
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+        done.countDown();
+    }
+
+    private void schedule() {
+        if (started >= customers || nextMillis < 0) {
+            done.countDown();
+            return;
+        }
+        long due = startNanos + shiftNanos + nextMillis * 1000000 / timeScale;
+        scheduler.schedule(this::arrive, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void arrive() {
+        long now = System.nanoTime();
+        if (capacity > 0 && inLine.getAsInt() >= capacity) {  //line is full, hold the arrival back
+            held++;
+            shiftNanos += BACKOFF_NANOS;
+            scheduler.schedule(this::arrive, BACKOFF_NANOS, TimeUnit.NANOSECONDS);
+            return;
+        }
+        long due = startNanos + shiftNanos + nextMillis * 1000000 / timeScale;
+        maxLagNanos = Math.max(maxLagNanos, now - due);
+        if (started == 0) {
+            firstNanos = now;
+        }
+        lastNanos = now;
+        arrive.accept(started++);
+        nextMillis = process.nextArrival(nextMillis, rand);
+        schedule();
+    }
+
+    /**
+     * Returns the simulated time from the first to the last arrival
+     *
+     * @return span of the arrivals in simulated milliseconds
+     */
+    public double getArrivalSpanMillis() {
+        return (lastNanos - firstNanos) / 1e6 * timeScale;
+    }
+
+    /**
+     * Returns how often an arrival found the box office line full
+     *
+     * @return number of times an arrival was held back
+     */
+    public int getHeldBack() {
+        return held;
+    }
+
+    /**
+     * Returns the arrival rate the process aims for
+     *
+     * @return customers per simulated minute
+     */
+    public double getTargetRatePerMinute() {
+        return process.getTargetRatePerMinute();
+    }
+
+    /**
+     * Prints how far behind its timetable the generator let customers in
+     *
+     * @param out stream to print to
+     */
+    public void report(PrintStream out) {
+        out.printf("Arrival generator: %d customers, max schedule lag %.2f ms real time%n", started,
+                maxLagNanos / 1e6);
+    }
+
+}
@@ -0,0 +1,260 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * When customers arrive at the theater. Times are in simulated milliseconds since the theater opened. An
+ * ArrivalProcess may keep state between calls, so every run needs its own.
+ *
+ */
+public abstract class ArrivalProcess {
+
+    /**
+     * Returns when the next customer arrives
+     *
+     * @param nowMillis arrival time of the previous customer, 0 for the first
+     * @param rand random generator of the run
+     * @return arrival time of the next customer, or -1 if no more customers arrive
+     */
+    public abstract long nextArrival(long nowMillis, SplittableRandom rand);
+
+    /**
+     * Returns the average arrival rate the process aims for
+     *
+     * @return customers per simulated minute, 0 if everyone arrives at once
+     */
+    public abstract double getTargetRatePerMinute();
+
+    /**
+     * Creates the arrival process described by a config. With no arrival setting, customers arrive at a constant
+     * rate if arrival.rate is set and all at once otherwise.
+     *
+     * @param config settings of the run
+     * @return a new arrival process
+     * @throws IOException if a trace file cannot be read
+     * @throws IllegalArgumentException if the process name is unknown
+     */
+    public static ArrivalProcess fromConfig(TheaterConfig config) throws IOException {
+        String name = config.arrival;
+        if (name == null) {
+            name = config.arrivalRate > 0 ? "constant" : "burst";
+        }
+        double perMilli = config.arrivalRate / 60000;
+        if (name.startsWith("trace:")) {
+            return new Trace(Files.readAllLines(Paths.get(name.substring("trace:".length()))));
+        }
+        switch (name) {
+            case "burst":
+                return new Burst();
+            case "constant":
+            case "poisson":
+            case "diurnal":
+            case "bursty":
+                if (perMilli <= 0) {
+                    throw new IllegalArgumentException("arrival " + name + " needs a positive arrival.rate");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown arrival process " + name);
+        }
+        switch (name) {
+            case "constant":
+                return new Constant(perMilli);
+            case "poisson":
+                return new Poisson(perMilli);
+            case "diurnal":
+                return new Diurnal(perMilli, config.arrivalPeriodMillis);
+            default:
+                return new Bursty(perMilli);
+        }
+    }
+
+    private static long exponential(SplittableRandom rand, double ratePerMilli) {
+        return (long) (-Math.log(1 - rand.nextDouble()) / ratePerMilli);
+    }
+
+    /**
+     * Everyone arrives when the theater opens
+     */
+    static class Burst extends ArrivalProcess {
+
+        @Override
+        public long nextArrival(long nowMillis, SplittableRandom rand) {
+            return 0;
+        }
+
+        @Override
+        public double getTargetRatePerMinute() {
+            return 0;
+        }
+    }
+
+    /**
+     * Customers arrive evenly spaced
+     */
+    static class Constant extends ArrivalProcess {
+
+        private final double perMilli;
+        private long count;
+
+        Constant(double perMilli) {
+            this.perMilli = perMilli;
+        }
+
+        @Override
+        public long nextArrival(long nowMillis, SplittableRandom rand) {
+            return (long) (count++ / perMilli);   //no drift from rounding each gap
+        }
+
+        @Override
+        public double getTargetRatePerMinute() {
+            return perMilli * 60000;
+        }
+    }
+
+    /**
+     * Customers arrive independently of each other, with exponentially distributed gaps
+     */
+    static class Poisson extends ArrivalProcess {
+
+        private final double perMilli;
+        private boolean first = true;
+
+        Poisson(double perMilli) {
+            this.perMilli = perMilli;
+        }
+
+        @Override
+        public long nextArrival(long nowMillis, SplittableRandom rand) {
+            if (first) {
+                first = false;
+                return 0;
+            }
+            return nowMillis + exponential(rand, perMilli);
+        }
+
+        @Override
+        public double getTargetRatePerMinute() {
+            return perMilli * 60000;
+        }
+    }
+
+    /**
+     * A Poisson process whose rate swings 80% above and below the average over each period, like the rush before
+     * evening shows. Generated by thinning a Poisson process at the peak rate.
+     */
+    static class Diurnal extends ArrivalProcess {
+
+        private static final double SWING = 0.8;
+        private final double perMilli;
+        private final long periodMillis;
+
+        Diurnal(double perMilli, long periodMillis) {
+            this.perMilli = perMilli;
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public long nextArrival(long nowMillis, SplittableRandom rand) {
+            double peak = perMilli * (1 + SWING);
+            long t = nowMillis;
+            while (true) {
+                t += exponential(rand, peak);
+                double rate = perMilli * (1 + SWING * Math.sin(2 * Math.PI * t / periodMillis));
+                if (rand.nextDouble() * peak <= rate) {
+                    return t;
+                }
+            }
+        }
+
+        @Override
+        public double getTargetRatePerMinute() {
+            return perMilli * 60000;
+        }
+    }
+
+    /**
+     * Quiet spells at half the average rate broken up by bursts at three times the average rate. Bursts take 20% of
+     * the time, so the long run average is the configured rate.
+     */
+    static class Bursty extends ArrivalProcess {
+
+        private static final double BURST_RATE = 3;
+        private static final double QUIET_RATE = 0.5;
+        private static final long MEAN_BURST_MILLIS = 120000;
+        private static final long MEAN_QUIET_MILLIS = 480000;
+        private final double perMilli;
+        private boolean bursting;
+        private long stateEnds = -1;
+
+        Bursty(double perMilli) {
+            this.perMilli = perMilli;
+        }
+
+        @Override
+        public long nextArrival(long nowMillis, SplittableRandom rand) {
+            long t = nowMillis;
+            if (stateEnds < 0) {
+                stateEnds = exponential(rand, 1.0 / MEAN_QUIET_MILLIS);
+            }
+            while (true) {
+                long gap = exponential(rand, perMilli * (bursting ? BURST_RATE : QUIET_RATE));
+                if (t + gap < stateEnds) {
+                    return t + gap;
+                }
+                t = stateEnds;  //memoryless, so start over from the switch
+                bursting = !bursting;
+                stateEnds = t + exponential(rand, 1.0 / (bursting ? MEAN_BURST_MILLIS : MEAN_QUIET_MILLIS));
+            }
+        }
+
+        @Override
+        public double getTargetRatePerMinute() {
+            return perMilli * 60000;
+        }
+    }
+
+    /**
+     * Replays arrival times recorded in a file, one simulated millisecond timestamp per line, or taken from a
+     * TraceReplay
+     */
+    static class Trace extends ArrivalProcess {
+
+        private final long[] times;
+        private int next;
+
+        Trace(List<String> lines) {
+            long[] parsed = new long[lines.size()];
+            int n = 0;
+            for (String line : lines) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    parsed[n++] = Long.parseLong(line);
+                }
+            }
+            this.times = Arrays.copyOf(parsed, n);
+        }
+
+        Trace(long[] times) {
+            this.times = times;
+        }
+
+        @Override
+        public long nextArrival(long nowMillis, SplittableRandom rand) {
+            return next < times.length ? times[next++] : -1;
+        }
+
+        @Override
+        public double getTargetRatePerMinute() {
+            if (times.length < 2 || times[times.length - 1] == times[0]) {
+                return 0;
+            }
+            return (times.length - 1) * 60000.0 / (times[times.length - 1] - times[0]);
+        }
+    }
+
+}
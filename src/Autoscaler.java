@@ -0,0 +1,58 @@
+
+/**
+ * Watches the lines of an open theater and opens another window when a line gets too long, then sends the extra
+ * workers home again once the line is empty. Stages without an autoscale threshold are left alone.
+ *
+ */
+public class Autoscaler implements Runnable {
+
+    private final Theater theater;
+    private final TheaterConfig config;
+
+    /**
+     * Constructs an Autoscaler
+     *
+     * @param theater theater whose lines are watched
+     */
+    public Autoscaler(Theater theater) {
+        this.theater = theater;
+        this.config = theater.getConfig();
+    }
+
+    /**
+     * Checks every stage once
+     */
+    void check() {
+        for (int stage = TheaterConfig.BOX; stage <= TheaterConfig.CONCESSION; stage++) {
+            int threshold = config.autoscaleThreshold[stage];
+            if (threshold <= 0) {
+                continue;
+            }
+            ServiceLine line = theater.getLine(stage);
+            int inLine = line.getMetrics().getInLine();
+            int workers = line.getWorkers();
+            if (inLine > threshold && workers < config.autoscaleMax[stage]) {
+                int id = theater.addWorker(stage);
+                theater.getLog().log(EventLog.Type.WINDOW_OPENED, -1, id, stage);
+            } else if (inLine == 0 && workers > config.workers[stage]) {
+                theater.removeWorker(stage);
+            }
+        }
+    }
+
+    /**
+     * Checks the lines every autoscale period until interrupted by the theater stopping
+     */
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(config.autoscalePeriodMillis);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            check();
+        }
+    }
+
+}
@@ -1,7 +1,4 @@
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 /**
  * A box office agent in the movie theater
  *
@@ -23,28 +20,63 @@ public class BoxOfficeAgent extends Worker {
     }
 
     /**
-     * Waits for a customer to arrive, then sells them a ticket if possible
+     * Waits for a customer to arrive, then sells tickets for their whole party if there are enough seats
      */
     @Override
     void work() {
         try {
-            theater.getBoxCustomerReadySem().acquire(); //wait for customer to be ready
-            Customer c = theater.getBoxQ().remove();
-            System.out.println(this + " serving " + c);
-            Thread.sleep(TIME / Theater.TIME_SCALE);
-            if (c.getMovie().purchaseTicket(1)) { //attempt to sell ticket
+            Customer c = theater.getBoxLine().next(this);   //wait for customer to be ready
+            if (c == null) {    //asked to leave instead
+                goHome();
+                return;
+            }
+            long start = theater.getBoxLine().started(this, c);
+            theater.trace(TraceRecorder.Type.TAKEN, TheaterConfig.BOX, c.getId(), id, -1);
+            theater.getLog().log(EventLog.Type.BOX_SERVING, c.getId(), id, -1);
+            serve(TheaterConfig.BOX);
+            if (sell(c)) { //attempt to sell a ticket for everyone in the party
                 c.setGotTicket();
-                System.out.println(this + " sold ticket for " + c.getMovie().title + " to " + c);
+                theater.getLog().log(EventLog.Type.BOX_SOLD, c.getId(), id, c.getMovie().id);
             } else {
-                System.out.println(this + " was unable to sell ticket for " + c.getMovie().title + " to " + c);
+                theater.getLog().log(EventLog.Type.BOX_NOT_SOLD, c.getId(), id, c.getMovie().id);
             }
+            theater.getBoxLine().finished(this, start, c);   //transaction is done, ready for next customer
+            theater.trace(TraceRecorder.Type.RELEASED, TheaterConfig.BOX, c.getId(), id, -1);
             c.release();   //tell customer transaction done
-            theater.getBoxSem().release();   //transaction is done, ready for next customer
-        } catch (InterruptedException ex) {
-            Logger.getLogger(BoxOfficeAgent.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (InterruptedException ex) {    //told to stop
+            goHome();
         }
     }
 
+    /**
+     * Sells tickets for a customer's party, seating them together when the movie has assigned seating. If sales for
+     * their showing closed while they waited, they are sold the next showing of the title with seats for them.
+     *
+     * @param c customer buying tickets
+     * @return if the tickets were sold
+     */
+    private boolean sell(Customer c) {
+        Movie movie = c.getMovie();
+        Schedule schedule = theater.getSchedule();
+        int timeOfDay = theater.getTimeOfDay();
+        if (!schedule.isOnSale(movie, timeOfDay)) {
+            movie = schedule.next(movie.title, timeOfDay, m -> m.getTicketsAvaliable() >= c.getPartySize());
+            if (movie == null) {
+                return false;
+            }
+            c.setMovie(movie);
+        }
+        if (movie.getSeatMap() == null) {
+            return movie.purchaseTicket(c.getPartySize());
+        }
+        int block = movie.purchaseSeats(c.getPartySize());
+        if (block == SeatMap.NONE) {
+            return false;
+        }
+        theater.getLog().log(EventLog.Type.SEATED, c.getId(), id, block);
+        return true;
+    }
+
     @Override
     public String getTitle() {
         return "Box office agent";
@@ -52,11 +84,12 @@ public class BoxOfficeAgent extends Worker {
 
     @Override
     void printCreated() {
-        if (Theater.MAX_BOX_AGENTS != 1) {
-            System.out.println(this.getTitle() + " " + id + " created");
-        } else {
-            System.out.println(this.getTitle() + " created");
-        }
+        printCreated(TheaterConfig.BOX);
+    }
+
+    @Override
+    int getStage() {
+        return TheaterConfig.BOX;
     }
 
 }
@@ -1,6 +1,5 @@
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Arrays;
 
 /**
  * A concession worker in the movie theater
@@ -11,6 +10,12 @@ import java.util.logging.Logger;
 public class ConcessionWorker extends Worker {
 
     public static final int TIME = 180000;
+    //share of TIME every order after the first of the same food in a batch takes
+    public static final double EXTRA_ORDER = 0.25;
+
+    //customers served in the current batch, and how many of them ordered each food
+    private final Customer[] batch;
+    private final int[] orders;
 
     /**
      * Constructs a ConcessionWorker object with an ID
@@ -20,23 +25,77 @@ public class ConcessionWorker extends Worker {
      */
     public ConcessionWorker(int id, Theater theater) {
         super(id, theater);
+        this.batch = new Customer[theater.getConcessionLine().getBatchSize()];
+        this.orders = new int[Customer.Food.values().length];
     }
 
     /**
-     * Waits for a customer to arrive, then sells them food and drinks
+     * Returns how many single services preparing a batch of orders takes as long as. Orders of the same food share
+     * their preparation, so each kind of food takes a full service and every further order of it EXTRA_ORDER.
+     *
+     * @param orders number of orders of each food, indexed by Customer.Food ordinal
+     * @return single services the batch takes as long as
+     */
+    static double batchUnits(int[] orders) {
+        double units = 0;
+        for (int n : orders) {
+            if (n > 0) {
+                units += 1 + (n - 1) * EXTRA_ORDER;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Waits for a customer to arrive, then takes the orders of every ready customer up to the batch size, prepares
+     * them grouped by food, gets them from the kitchen if stock is limited and hands them out
      */
     @Override
     void work() {
         try {
-            theater.getConcessionCustomerReadySem().acquire();   //wait for customer to be ready
-            Customer c = theater.getConcessionQ().remove();
-            System.out.println("Order for " + c.getFood() + " from " + c);
-            Thread.sleep(TIME / Theater.TIME_SCALE);
-            System.out.println(c.getFood() + " given to " + c);
-            c.release();  //tell customer transaction done
-            theater.getConcessionSem().release();    //transaction done, ready for next customer
-        } catch (InterruptedException ex) {
-            Logger.getLogger(ConcessionWorker.class.getName()).log(Level.SEVERE, null, ex);
+            int count = theater.getConcessionLine().nextBatch(this, batch);   //wait for customers to be ready
+            if (count == 0) {    //asked to leave instead
+                goHome();
+                return;
+            }
+            long start = theater.getConcessionLine().started(this, batch, count);
+            Arrays.fill(orders, 0);
+            for (int i = 0; i < count; i++) {
+                theater.trace(TraceRecorder.Type.TAKEN, TheaterConfig.CONCESSION, batch[i].getId(), id, -1);
+                orders[batch[i].getFood().ordinal()]++;
+                theater.getLog().log(EventLog.Type.FOOD_ORDERED, batch[i].getId(), id, batch[i].getFood().ordinal());
+            }
+            serve(TheaterConfig.CONCESSION, batchUnits(orders));
+            Kitchen kitchen = theater.getKitchen();
+            for (int i = 0; kitchen != null && i < count; i++) {
+                fetch(kitchen, batch[i]);
+            }
+            theater.getConcessionLine().finished(this, start, batch, count);    //done, ready for next customers
+            for (int i = 0; i < count; i++) {
+                theater.getLog().log(EventLog.Type.FOOD_GIVEN, batch[i].getId(), id, batch[i].getFood().ordinal());
+                theater.trace(TraceRecorder.Type.RELEASED, TheaterConfig.CONCESSION, batch[i].getId(), id, -1);
+                batch[i].release();  //tell customer transaction done
+                batch[i] = null;
+            }
+        } catch (InterruptedException ex) {    //told to stop
+            goHome();
+        }
+    }
+
+    /**
+     * Gets a customer's order from the kitchen: popcorn from the warmer and soda from a dispenser
+     *
+     * @param kitchen the kitchen
+     * @param c the customer
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void fetch(Kitchen kitchen, Customer c) throws InterruptedException {
+        Customer.Food food = c.getFood();
+        if (food != Customer.Food.Soda && !kitchen.takePopcorn(c.getPartySize())) {
+            theater.getLog().log(EventLog.Type.STOCK_OUT, c.getId(), id, Kitchen.Item.POPCORN.ordinal());
+        }
+        if (food != Customer.Food.Popcorn) {
+            kitchen.pourSoda(c.getPartySize());
         }
     }
 
@@ -47,11 +106,12 @@ public class ConcessionWorker extends Worker {
 
     @Override
     void printCreated() {
-        if (Theater.MAX_CONCESSION_WORKERS != 1) {
-            System.out.println(this.getTitle() + " " + id + " created");
-        } else {
-            System.out.println(this.getTitle() + " created");
-        }
+        printCreated(TheaterConfig.CONCESSION);
+    }
+
+    @Override
+    int getStage() {
+        return TheaterConfig.CONCESSION;
     }
 
 }
@@ -1,12 +1,14 @@
 
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Comparator;
+import java.util.SplittableRandom;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A customer in the movie theater
+ * A customer in the movie theater, or a party of people that buy their tickets together and stay together
  *
  * @author Zion Mantey
  *
@@ -17,13 +19,63 @@ public class Customer implements Runnable {
         Popcorn, Soda, Both;
     }
 
-    private static final Random rand = new Random();
-    private final Theater theater;
+    /**
+     * Kinds of customers, which lines in PRIORITY order serve at different urgencies
+     */
+    public enum Kind {
+        //buys at the box office and waits their turn
+        REGULAR,
+        //a member, served as soon as a worker is free
+        MEMBER,
+        //their showing starts within priority.soon.min of arriving, served like a member
+        SOON,
+        //bought their ticket online, so they skip the box office and wait their turn after it
+        PREPAID;
+
+        /**
+         * Returns if customers of this kind go ahead of customers that joined a line less than priority.aging.ms
+         * before them
+         *
+         * @return if the kind has priority
+         */
+        boolean isUrgent() {
+            return this == MEMBER || this == SOON;
+        }
+    }
+
+    /**
+     * Orders customers in a line by deadline: the time they joined, plus priority.aging.ms for customers without
+     * priority. A customer's deadline never changes while they wait, so anyone who has waited priority.aging.ms is
+     * ahead of every urgent customer that joins after them and nobody waits forever. Ties go to the lower ID.
+     */
+    static final Comparator<Customer> BY_DEADLINE = (a, b) -> {
+        long d = (a.joinedNanos + a.slackNanos) - (b.joinedNanos + b.slackNanos);   //safe when nanoTime wraps
+        return d != 0 ? Long.signum(d) : Integer.compare(a.id, b.id);
+    };
+
+    private final SplittableRandom rand;
+    //theater and showing the customer is at, which change if they go to another theater of a multiplex for seats
+    private Theater theater;
     private final int id;
-    private final Movie movie;
+    private Movie movie;
+    //people in the party, 1 for a customer on their own
+    private final int partySize;
+    private final Kind kind;
+    //added to the time the customer joins a line to give their deadline there, 0 for urgent customers
+    private final long slackNanos;
     private boolean gotTicket = false;
+    //semaphore the workers release when done with the customer, or null if they unpark the customer's thread instead
     private final Semaphore ready;
+    //set by a worker when done with the customer, and the thread to unpark, for the park handoff
+    private volatile boolean released;
+    private volatile Thread waiter;
     private Food food;
+    //total time spent waiting in lines, added by the workers that take the customer
+    private long waitNanos;
+    //wait in the line the customer was last taken from
+    private long lastWaitNanos;
+    //when the customer joined their current line: when they arrived, then when a worker was last done with them
+    private long joinedNanos;
 
     /**
      * Constructs a Customer object with an ID
@@ -32,27 +84,97 @@ public class Customer implements Runnable {
      * @param theater theater this customer is visiting
      */
     public Customer(int id, Theater theater) {
-        this.ready = new Semaphore(0);
+        this.ready = theater.getConfig().handoff == ServiceLine.Handoff.SEMAPHORE ? new Semaphore(0) : null;
         this.id = id;
         this.theater = theater;
+        this.rand = theater.newRandom();
         ArrayList<Movie> movies = theater.getMovies();
-        this.movie = movies.get(rand.nextInt(movies.size()));
+        TraceReplay replay = theater.getReplay();
+        if (replay != null) {   //decide as the customer with this ID did in the trace
+            this.movie = movies.get(replay.getMovie(id));
+            this.partySize = replay.getPartySize(id);
+            this.kind = replay.getKind(id);
+        } else {
+            Movie drawn = movies.get(rand.nextInt(movies.size()));
+            this.partySize = theater.getConfig().partySize.sample(rand);
+            this.movie = theater.getSchedule().choose(drawn, theater.getTimeOfDay(), partySize);
+            this.kind = pickKind(theater.getConfig());
+        }
+        this.slackNanos = kind.isUrgent() ? 0
+                : theater.getConfig().priorityAgingMillis * 1000000 / theater.getConfig().timeScale;
+        this.joinedNanos = System.nanoTime();   //for customers sent to a line without run, as benchmarks do
+    }
+
+    /**
+     * Decides what kind of customer this is, only drawing a random number when some customers are members or
+     * prepaid so runs without them stay the same for a seed
+     */
+    private Kind pickKind(TheaterConfig config) {
+        if (config.memberShare > 0 || config.prepaidShare > 0) {
+            double r = rand.nextDouble();
+            if (r < config.prepaidShare) {
+                return Kind.PREPAID;
+            } else if (r < config.prepaidShare + config.memberShare) {
+                return Kind.MEMBER;
+            }
+        }
+        if (config.soonMinutes > 0 && movie.showtime >= 0) {
+            int untilShowtime = movie.showtime - theater.getTimeOfDay();
+            if (untilShowtime >= 0 && untilShowtime <= config.soonMinutes) {
+                return Kind.SOON;
+            }
+        }
+        return Kind.REGULAR;
     }
 
     /**
-     * Calls aquire on the customers ready semaphore
+     * Waits until a worker is done with the customer
      *
      * @throws InterruptedException
      */
     public void acquire() throws InterruptedException {
-        ready.acquire();
+        if (ready != null) {
+            ready.acquire();
+            return;
+        }
+        waiter = Thread.currentThread();
+        while (!released) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        released = false;
     }
 
     /**
-     * Calls release on the customers ready semaphore
+     * Tells the customer a worker is done with them
      */
     public void release() {
-        ready.release();
+        if (ready != null) {
+            ready.release();
+            return;
+        }
+        released = true;
+        LockSupport.unpark(waiter);
+    }
+
+    void setJoinedNanos(long nanos) {
+        joinedNanos = nanos;
+    }
+
+    long getJoinedNanos() {
+        return joinedNanos;
+    }
+
+    /**
+     * Adds time the customer waited in a line, called by the worker that took them
+     *
+     * @param nanos time waited in nanoseconds
+     */
+    void addWait(long nanos) {
+        waitNanos += nanos;
+        lastWaitNanos = nanos;
     }
 
     /**
@@ -64,6 +186,33 @@ public class Customer implements Runnable {
         return movie;
     }
 
+    /**
+     * Changes the showing the customer buys tickets for, called by the box office agent serving them
+     *
+     * @param movie the new showing
+     */
+    void setMovie(Movie movie) {
+        this.movie = movie;
+    }
+
+    /**
+     * Returns how many people are in the Customer's party
+     *
+     * @return number of tickets the Customer buys
+     */
+    public int getPartySize() {
+        return partySize;
+    }
+
+    /**
+     * Returns what kind of customer this is
+     *
+     * @return the kind of this Customer instance
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
     /**
      * Returns the Customers ID
      *
@@ -94,30 +243,96 @@ public class Customer implements Runnable {
      *
      * @return if received ticket successfully
      */
-    private boolean buyTicket() {
+    boolean buyTicket() {
         try {
-            theater.getBoxSem().acquire();   //wait for a box agent to be avaliable
-            theater.getBoxQ().add(this);
-            theater.getBoxCustomerReadySem().release(); //tell box agent you are ready to buy ticket
-            ready.acquire();    //wait for box agent to give ticket
+            theater.trace(TraceRecorder.Type.JOINED, TheaterConfig.BOX, id, -1, -1);
+            joinLine(TheaterConfig.BOX);   //wait for box agent to give ticket
         } catch (InterruptedException ex) {
             Logger.getLogger(Customer.class.getName()).log(Level.SEVERE, null, ex);
         }
         return gotTicket;
     }
 
+    /**
+     * Buys tickets for the whole party online on arrival, without a box office agent
+     *
+     * @return if received ticket successfully
+     */
+    private boolean buyTicketOnline() {
+        if (!movie.purchaseTicket(partySize)) {
+            return false;
+        }
+        gotTicket = true;
+        theater.getLog().log(EventLog.Type.PREPAID, id, -1, movie.id);
+        return true;
+    }
+
+    /**
+     * Tries the other theaters of the multiplex in turn, skipping those without enough seats left for the party, and
+     * stays at the first one that sells tickets
+     *
+     * @return if received ticket successfully, always false outside a multiplex
+     */
+    private boolean buyTicketElsewhere() {
+        Multiplex multiplex = theater.getMultiplex();
+        if (multiplex == null) {
+            return false;
+        }
+        int home = theater.getShard();
+        for (int hop = 1; hop < multiplex.getShardCount(); hop++) {
+            Theater other = multiplex.getShard((home + hop) % multiplex.getShardCount());
+            Movie showing = other.getMovies().get(movie.id);   //every shard loads the same movie file
+            if (showing.getTicketsAvaliable() < partySize) {
+                continue;
+            }
+            theater.getLog().log(EventLog.Type.TRANSFERRED, id, -1, other.getShard());
+            multiplex.recordTransfer();
+            theater = other;
+            movie = showing;
+            if (buyTicket()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Joins the line of a stage and waits until a worker is done with the customer, recording the time in line for
+     * Flight Recorder. Lines that park their workers let the customer join at once, so the wait is in acquire.
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void joinLine(int stage) throws InterruptedException {
+        ServiceLine line = theater.getLine(stage);
+        TheaterEvents.LineWait event = new TheaterEvents.LineWait();
+        boolean recording = event.isEnabled();   //only read the clock for an enabled event
+        if (recording) {
+            event.begin();
+        }
+        line.join(this);    //wait for a worker to be free, then tell them you are ready
+        acquire();
+        if (recording) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = line.getMetrics().name;
+                event.customer = id;
+                event.queueWait = lastWaitNanos;
+                event.commit();
+            }
+        }
+    }
+
     /**
      * Gives ticket to ticket taker and enters lobby of theater
      *
      * @return always true
      */
     private boolean enterLobby() {
-        System.out.println(this + " in line to see ticket taker");
+        theater.getLog().log(EventLog.Type.TICKET_LINE, id, -1, -1);
         try {
-            theater.getTicketSem().acquire();    //wait for ticket taker to be avaliable
-            theater.getTicketQ().add(this);
-            theater.getTicketCustomerReadySem().release();   //tell ticket taker you are ready
-            ready.acquire();    //wait for ticket taker to take ticket
+            theater.trace(TraceRecorder.Type.JOINED, TheaterConfig.TICKET, id, -1, -1);
+            joinLine(TheaterConfig.TICKET);   //wait for ticket taker to take ticket
         } catch (InterruptedException ex) {
             Logger.getLogger(Customer.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -130,32 +345,41 @@ public class Customer implements Runnable {
      * @return if the customer visited the concession stand
      */
     private boolean visitConcessions() {
-        if (rand.nextFloat() > 0.5) {   //decide to visit concessions
+        food = theater.getReplay() != null ? theater.getReplay().getFood(id) : chooseFood();
+        theater.trace(TraceRecorder.Type.FOOD, TheaterConfig.CONCESSION, id, -1, food == null ? -1 : food.ordinal());
+        if (food == null) {
             return false;
         }
-        switch (rand.nextInt(3)) {  //decide what to buy
-            case 0:
-                food = Food.Popcorn;
-                break;
-            case 1:
-                food = Food.Soda;
-                break;
-            case 2:
-                food = Food.Both;
-                break;
-        }
-        System.out.println(this + " in line to buy " + food);
+        theater.recordConcessionOrder(food);
+        theater.getLog().log(EventLog.Type.CONCESSION_LINE, id, -1, food.ordinal());
         try {
-            theater.getConcessionSem().acquire();    //wait for concession worker to be avaliable
-            theater.getConcessionQ().add(this);
-            theater.getConcessionCustomerReadySem().release();   //tell concession worker you are ready
-            ready.acquire();    //wait for concession worker to give food
+            theater.trace(TraceRecorder.Type.JOINED, TheaterConfig.CONCESSION, id, -1, -1);
+            joinLine(TheaterConfig.CONCESSION);   //wait for concession worker to give food
         } catch (InterruptedException ex) {
             Logger.getLogger(Customer.class.getName()).log(Level.SEVERE, null, ex);
         }
         return true;
     }
 
+    /**
+     * Decides if to visit concessions and what to buy
+     *
+     * @return the food to buy, or null to skip the concession stand
+     */
+    private Food chooseFood() {
+        if (rand.nextFloat() > 0.5) {   //decide to visit concessions
+            return null;
+        }
+        switch (rand.nextInt(3)) {  //decide what to buy
+            case 0:
+                return Food.Popcorn;
+            case 1:
+                return Food.Soda;
+            default:
+                return Food.Both;
+        }
+    }
+
     @Override
     public String toString() {
         return "Customer " + id;
@@ -166,15 +390,19 @@ public class Customer implements Runnable {
      */
     @Override
     public void run() {
-        System.out.println(this + " created, buying ticket to " + movie.title);
-        //attempt to buy ticket
-        if (!buyTicket()) {   //if movie sold out, leave
-            System.out.println(this + " did not get a ticket to " + movie.title + " and left");
+        long arrived = System.nanoTime();
+        joinedNanos = arrived;
+        theater.getLog().log(EventLog.Type.CUSTOMER_CREATED, id, -1, movie.id);
+        //attempt to buy ticket, online before arriving for prepaid customers
+        boolean bought = kind == Kind.PREPAID ? buyTicketOnline() : buyTicket();
+        if (!bought && !buyTicketElsewhere()) {   //if movie sold out everywhere, leave
+            theater.getLog().log(EventLog.Type.NO_TICKET, id, -1, movie.id);
             return;
         }
         enterLobby();   //go to ticket taker and enter
         visitConcessions(); //go to concession stand
-        System.out.println(this + " entered theater to see " + movie.title);
+        theater.getLog().log(EventLog.Type.ENTERED, id, -1, movie.id);
+        theater.recordWait(kind, waitNanos, joinedNanos - arrived);  //entered as the last worker was done
     }
 
 }
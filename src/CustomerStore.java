@@ -0,0 +1,176 @@
+
+/**
+ * The state of every customer of a run in primitive arrays indexed by customer ID, for drivers that do not give each
+ * customer a thread. A customer costs BYTES_PER_CUSTOMER bytes here, against a Customer object with its own random
+ * generator, Semaphore and Thread in the threaded Theater.
+ *
+ * Times are in whatever unit the driver keeps its clock in. The store does no locking, so a driver that moves customers
+ * between threads must hand them over safely itself.
+ *
+ */
+public class CustomerStore {
+
+    /**
+     * Where a customer is
+     */
+    public enum State {
+        //arrived but held back by a full box office line
+        ARRIVING,
+        //in the line of a stage or being served there
+        BOX, TICKET, CONCESSION,
+        //entered the theater
+        ENTERED,
+        //left without a ticket
+        LEFT
+    }
+
+    //food of a customer that has not ordered any
+    public static final byte NO_FOOD = -1;
+    //movie, party size, food and state, then arrival time, time joined the current line and total wait
+    public static final int BYTES_PER_CUSTOMER = 4 + 2 + 1 + 1 + 8 + 8 + 8;
+
+    private static final State[] STATES = State.values();
+
+    private final int[] movies;
+    private final short[] partySizes;
+    private final byte[] foods;
+    private final byte[] states;
+    private final long[] arrivedAt;
+    private final long[] lineSince;
+    private final long[] waited;
+
+    /**
+     * Constructs a store with room for a number of customers
+     *
+     * @param capacity number of customers, IDs run from 0 to capacity - 1
+     */
+    public CustomerStore(int capacity) {
+        this.movies = new int[capacity];
+        this.partySizes = new short[capacity];
+        this.foods = new byte[capacity];
+        this.states = new byte[capacity];
+        this.arrivedAt = new long[capacity];
+        this.lineSince = new long[capacity];
+        this.waited = new long[capacity];
+    }
+
+    /**
+     * Returns the number of customers the store has room for
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return movies.length;
+    }
+
+    /**
+     * Records a customer's decisions as they arrive. They have no food yet and wait in ARRIVING until they join the
+     * box office line.
+     *
+     * @param id customer ID
+     * @param movie index of the showing they chose
+     * @param partySize people in the party
+     * @throws IllegalArgumentException if the party is larger than Short.MAX_VALUE
+     */
+    public void arrive(int id, int movie, int partySize) {
+        if (partySize > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Party of " + partySize + " is too large");
+        }
+        movies[id] = movie;
+        partySizes[id] = (short) partySize;
+        foods[id] = NO_FOOD;
+        states[id] = (byte) State.ARRIVING.ordinal();
+        waited[id] = 0;
+    }
+
+    /**
+     * Puts a customer in the line of a stage
+     *
+     * @param id customer ID
+     * @param stage BOX, TICKET or CONCESSION
+     * @param now current time
+     */
+    public void joinLine(int id, State stage, long now) {
+        if (stage == State.BOX) {
+            arrivedAt[id] = now;
+        }
+        states[id] = (byte) stage.ordinal();
+        lineSince[id] = now;
+    }
+
+    /**
+     * Takes a customer out of their line to be served, adding the time they waited
+     *
+     * @param id customer ID
+     * @param now current time
+     */
+    public void leaveLine(int id, long now) {
+        waited[id] += now - lineSince[id];
+    }
+
+    public void setState(int id, State state) {
+        states[id] = (byte) state.ordinal();
+    }
+
+    public State getState(int id) {
+        return STATES[states[id]];
+    }
+
+    public int getMovie(int id) {
+        return movies[id];
+    }
+
+    public void setMovie(int id, int movie) {
+        movies[id] = movie;
+    }
+
+    public int getPartySize(int id) {
+        return partySizes[id];
+    }
+
+    /**
+     * Returns what a customer ordered
+     *
+     * @param id customer ID
+     * @return Customer.Food ordinal, or NO_FOOD
+     */
+    public int getFood(int id) {
+        return foods[id];
+    }
+
+    public void setFood(int id, int food) {
+        foods[id] = (byte) food;
+    }
+
+    public long getArrivedAt(int id) {
+        return arrivedAt[id];
+    }
+
+    /**
+     * Returns how long a customer has waited in lines, not counting the line they are in now
+     *
+     * @param id customer ID
+     * @return total wait
+     */
+    public long getWaited(int id) {
+        return waited[id];
+    }
+
+    /**
+     * Counts the customers in a state, among the first customers of the store
+     *
+     * @param state the state
+     * @param customers number of customers to look at
+     * @return customers in the state
+     */
+    public int count(State state, int customers) {
+        int n = 0;
+        for (int id = 0; id < customers; id++) {
+            if (states[id] == state.ordinal()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,303 @@
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs what happens in the theater. Customers and workers write small fixed-size event records into a ring buffer
+ * without taking any lock, and a single writer thread drains the buffer and writes the events out in batches.
+ *
+ * When the buffer is full, logging threads wait for the writer, so a slow output slows the simulation down instead of
+ * dropping events.
+ *
+ */
+public class EventLog {
+
+    /**
+     * Where and how events are written
+     */
+    public enum Output {
+        TEXT, BINARY, DIRECT, OFF;
+
+        /**
+         * Parses an output name, ignoring case
+         *
+         * @param name name of the output
+         * @return the matching output
+         */
+        public static Output parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Kinds of events. customer and worker are IDs, arg is a movie ID, a Customer.Food or Kitchen.Item ordinal, a
+     * Multiplex shard, a SeatMap block or the stage of a worker.
+     */
+    public enum Type {
+        CUSTOMER_CREATED, NO_TICKET, TICKET_LINE, CONCESSION_LINE, ENTERED,
+        BOX_SERVING, BOX_SOLD, BOX_NOT_SOLD, TICKET_TAKEN, FOOD_ORDERED, FOOD_GIVEN, JOINED, TRANSFERRED, PREPAID, STOCK_OUT,
+        SEATED, WENT_HOME, WINDOW_OPENED
+    }
+
+    //bytes in one binary record: time, type, customer, worker, arg
+    public static final int BINARY_RECORD_SIZE = 8 + 1 + 4 + 4 + 4;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final long IDLE_PARK_NANOS = 100000;
+    private static final Type[] TYPES = Type.values();
+    private static final Customer.Food[] FOODS = Customer.Food.values();
+    private static final Kitchen.Item[] ITEMS = Kitchen.Item.values();
+    //titles of the workers of each stage, indexed by TheaterConfig.BOX, TICKET and CONCESSION
+    private static final String[] WORKER_TITLES = {"Box office agent", "Ticket taker", "Concession stand worker"};
+
+    private final Output output;
+    private final OutputStream out;
+    private final PrintStream direct;
+    private final List<Movie> movies;
+
+    //ring buffer of event records, one array per field
+    private final int mask;
+    private final long[] times;
+    private final byte[] types;
+    private final int[] customers;
+    private final int[] workers;
+    private final int[] args;
+    //sequence number of the record in each slot once it is fully written
+    private final AtomicLongArray published;
+    //next sequence number to claim, and next sequence number the writer will read
+    private final AtomicLong claimed;
+    private final AtomicLong consumed;
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Constructs an EventLog and starts its writer thread
+     *
+     * @param output how events are written
+     * @param out stream events are written to, ignored if output is OFF
+     * @param movies movies of the theater, used to print titles
+     */
+    public EventLog(Output output, OutputStream out, List<Movie> movies) {
+        this(output, out, movies, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an EventLog and starts its writer thread
+     *
+     * @param output how events are written
+     * @param out stream events are written to, ignored if output is OFF
+     * @param movies movies of the theater, used to print titles
+     * @param capacity number of events the ring buffer holds, rounded up to a power of two
+     */
+    public EventLog(Output output, OutputStream out, List<Movie> movies, int capacity) {
+        this.output = output;
+        this.out = out;
+        if (output == Output.DIRECT) {
+            this.direct = out instanceof PrintStream ? (PrintStream) out : new PrintStream(out, true);
+        } else {
+            this.direct = null;
+        }
+        this.movies = movies;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        boolean buffered = output == Output.TEXT || output == Output.BINARY;
+        if (!buffered) {
+            size = 0;
+        }
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.types = new byte[size];
+        this.customers = new int[size];
+        this.workers = new int[size];
+        this.args = new int[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.claimed = new AtomicLong();
+        this.consumed = new AtomicLong();
+        if (buffered) {
+            this.writer = new Thread(this::drain, "EventLog writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Logs an event
+     *
+     * @param type kind of event
+     * @param customer ID of the customer involved
+     * @param worker ID of the worker involved, or -1
+     * @param arg movie ID, food ordinal, stage or -1 depending on the type
+     */
+    public void log(Type type, int customer, int worker, int arg) {
+        switch (output) {
+            case OFF:
+                return;
+            case DIRECT:
+                direct.println(format(new StringBuilder(), type, customer, worker, arg));
+                return;
+            default:
+                break;
+        }
+        long seq = claimed.getAndIncrement();
+        while (seq - consumed.get() > mask) {   //buffer full, wait for the writer to catch up
+            Thread.onSpinWait();
+        }
+        int slot = (int) seq & mask;
+        times[slot] = System.nanoTime();
+        types[slot] = (byte) type.ordinal();
+        customers[slot] = customer;
+        workers[slot] = worker;
+        args[slot] = arg;
+        published.lazySet(slot, seq);
+    }
+
+    /**
+     * Waits until every event logged so far has been written
+     */
+    public void flush() {
+        if (writer == null) {
+            return;
+        }
+        long target = claimed.get();
+        while (consumed.get() < target) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Writes every remaining event and stops the writer thread
+     */
+    public void close() {
+        flush();
+        closed = true;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Logger.getLogger(EventLog.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Writer thread: reads every published record in order and writes them out one batch at a time
+     */
+    private void drain() {
+        StringBuilder text = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream binary = new DataOutputStream(bytes);
+        long next = 0;
+        try {
+            while (true) {
+                long end = next;
+                while (end - next <= mask && published.get((int) end & mask) == end) {
+                    int slot = (int) end & mask;
+                    Type type = TYPES[types[slot]];
+                    if (output == Output.TEXT) {
+                        format(text, type, customers[slot], workers[slot], args[slot]).append('\n');
+                    } else {
+                        binary.writeLong(times[slot]);
+                        binary.writeByte(types[slot]);
+                        binary.writeInt(customers[slot]);
+                        binary.writeInt(workers[slot]);
+                        binary.writeInt(args[slot]);
+                    }
+                    end++;
+                }
+                if (end == next) {
+                    if (closed && consumed.get() == claimed.get()) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                if (output == Output.TEXT) {
+                    byte[] batch = text.toString().getBytes(StandardCharsets.UTF_8);
+                    text.setLength(0);
+                    out.write(batch);
+                } else {
+                    bytes.writeTo(out);
+                    bytes.reset();
+                }
+                out.flush();
+                next = end;
+                consumed.set(next);   //slots are free to reuse
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(EventLog.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Formats an event the way the theater has always printed it
+     */
+    private StringBuilder format(StringBuilder sb, Type type, int customer, int worker, int arg) {
+        switch (type) {
+            case CUSTOMER_CREATED:
+                return sb.append("Customer ").append(customer).append(" created, buying ticket to ").append(title(arg));
+            case NO_TICKET:
+                return sb.append("Customer ").append(customer).append(" did not get a ticket to ").append(title(arg))
+                        .append(" and left");
+            case TICKET_LINE:
+                return sb.append("Customer ").append(customer).append(" in line to see ticket taker");
+            case CONCESSION_LINE:
+                return sb.append("Customer ").append(customer).append(" in line to buy ").append(FOODS[arg]);
+            case ENTERED:
+                return sb.append("Customer ").append(customer).append(" entered theater to see ").append(title(arg));
+            case BOX_SERVING:
+                return sb.append("Box office agent ").append(worker).append(" serving Customer ").append(customer);
+            case BOX_SOLD:
+                return sb.append("Box office agent ").append(worker).append(" sold ticket for ").append(title(arg))
+                        .append(" to Customer ").append(customer);
+            case BOX_NOT_SOLD:
+                return sb.append("Box office agent ").append(worker).append(" was unable to sell ticket for ")
+                        .append(title(arg)).append(" to Customer ").append(customer);
+            case TICKET_TAKEN:
+                return sb.append("Ticket taken from Customer ").append(customer);
+            case FOOD_ORDERED:
+                return sb.append("Order for ").append(FOODS[arg]).append(" from Customer ").append(customer);
+            case FOOD_GIVEN:
+                return sb.append(FOODS[arg]).append(" given to Customer ").append(customer);
+            case JOINED:
+                return sb.append("Joined customer ").append(customer);
+            case TRANSFERRED:
+                return sb.append("Customer ").append(customer).append(" went to theater ").append(arg)
+                        .append(" for seats");
+            case PREPAID:
+                return sb.append("Customer ").append(customer).append(" bought a ticket to ").append(title(arg))
+                        .append(" online");
+            case STOCK_OUT:
+                return sb.append(ITEMS[arg]).append(" ran out for Customer ").append(customer);
+            case SEATED:
+                return sb.append("Customer ").append(customer).append(" seated in row ").append(SeatMap.row(arg) + 1)
+                        .append(" from seat ").append(SeatMap.seat(arg) + 1);
+            case WENT_HOME:
+                return sb.append(WORKER_TITLES[arg]).append(' ').append(worker).append(" went home");
+            case WINDOW_OPENED:
+                return sb.append(WORKER_TITLES[arg]).append(' ').append(worker)
+                        .append(" opened another window for a long line");
+            default:
+                return sb.append(type).append(' ').append(customer).append(' ').append(worker).append(' ').append(arg);
+        }
+    }
+
+    private String title(int movieId) {
+        return movies.get(movieId).title;
+    }
+
+}
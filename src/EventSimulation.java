@@ -0,0 +1,383 @@
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Simulates the theater as a discrete-event simulation. Instead of sleeping threads, a virtual clock jumps from one
+ * service completion to the next using a priority queue of pending events, so a day of business takes milliseconds.
+ *
+ * Customers go through the same pipeline as the threaded Theater: a box office line, a ticket taker line and an
+ * optional concession line, each served first come first served by a fixed number of workers drawing service times from
+ * the same distributions as the threaded workers.
+ *
+ * Customers arrive as the configured ArrivalProcess says. When the box office line is at its capacity, the next
+ * arrival waits until someone is served and the rest of the arrival schedule moves back with it, like the threaded
+ * ArrivalGenerator does.
+ *
+ * A customer may be a party that buys all its seats at once and goes through the ticket taker and concession stand as
+ * one, so box office service times are per party. Ticket takers and concession workers serve up to batch.size
+ * customers at once, with the same batch service times as the threaded TicketTaker and ConcessionWorker.
+ *
+ * When the movie file has showtimes, the clock starts at open.time and customers buy the next showing of their title
+ * that is on sale with seats for them, as the threaded Theater does with its Schedule. A customer still in line when
+ * sales close is sold the next showing instead, or leaves if there is none.
+ *
+ */
+public class EventSimulation {
+
+    //stages of the pipeline, also the event types of service completions
+    static final int BOX = 0;
+    static final int TICKET = 1;
+    static final int CONCESSION = 2;
+    //event type of a customer arriving
+    static final int ARRIVAL = 3;
+
+    private final int[] capacities;
+    private final List<Movie> movies;
+    private final Schedule schedule;
+    //tickets sold for each showing, and the state of every customer, in the last run
+    private int[] soldByShowing;
+    private CustomerStore customers;
+    private final int customerCount;
+    private final int[] staff;
+    private final ServiceTime[] serviceTimes;
+    private final PartySize partySize;
+    private final int batchSize;
+    private final long seed;
+    private final int lineCapacity;
+    private final TheaterConfig config;
+
+    /**
+     * A service completion or arrival on the event calendar
+     */
+    private static final class Event implements Comparable<Event> {
+
+        final long time;
+        final long seq;
+        final int stage;
+        final int customer;
+        //every customer served together, or null if just customer
+        final int[] batch;
+
+        Event(long time, long seq, int stage, int customer) {
+            this(time, seq, stage, customer, null);
+        }
+
+        Event(long time, long seq, int stage, int customer, int[] batch) {
+            this.time = time;
+            this.seq = seq;
+            this.stage = stage;
+            this.customer = customer;
+            this.batch = batch;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (time != o.time) {
+                return Long.compare(time, o.time);
+            }
+            return Long.compare(seq, o.seq);   //events at the same time happen in the order they were scheduled
+        }
+    }
+
+    /**
+     * A growable FIFO line of customer IDs
+     */
+    private static final class Line {
+
+        private int[] ids = new int[16];
+        private int head;
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                int[] grown = new int[ids.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = ids[(head + i) % ids.length];
+                }
+                ids = grown;
+                head = 0;
+            }
+            ids[(head + size) % ids.length] = id;
+            size++;
+        }
+
+        int remove() {
+            int id = ids[head];
+            head = (head + 1) % ids.length;
+            size--;
+            return id;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Constructs an EventSimulation
+     *
+     * @param movies movies showing, only their seat counts are used and they are not changed
+     * @param customerCount number of customers, all arriving when the theater opens
+     * @param boxAgents number of box office agents
+     * @param ticketTakers number of ticket takers
+     * @param concessionWorkers number of concession stand workers
+     * @param seed seed for every random decision the customers make
+     */
+    public EventSimulation(List<Movie> movies, int customerCount, int boxAgents, int ticketTakers,
+            int concessionWorkers, long seed) {
+        this(movies, staffed(customerCount, boxAgents, ticketTakers, concessionWorkers, seed));
+    }
+
+    /**
+     * Constructs an EventSimulation from the settings of a run
+     *
+     * @param movies movies showing, only their seat counts and showtimes are used and they are not changed
+     * @param config customer count, staffing, service times, arrivals and seed
+     */
+    public EventSimulation(List<Movie> movies, TheaterConfig config) {
+        this.capacities = new int[movies.size()];
+        for (int i = 0; i < capacities.length; i++) {
+            capacities[i] = movies.get(i).getCapacity();
+        }
+        this.movies = movies;
+        this.schedule = new Schedule(movies, config.salesCloseMinutes);
+        this.customerCount = config.customers;
+        this.staff = config.workers.clone();
+        this.serviceTimes = config.serviceTimes.clone();
+        this.partySize = config.partySize;
+        this.batchSize = config.batchSize;
+        this.seed = config.seed;
+        this.lineCapacity = config.lineCapacity;
+        this.config = config;
+    }
+
+    private static TheaterConfig staffed(int customerCount, int boxAgents, int ticketTakers, int concessionWorkers,
+            long seed) {
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customerCount;
+        config.workers = new int[]{boxAgents, ticketTakers, concessionWorkers};
+        config.seed = seed;
+        return config;
+    }
+
+    /**
+     * Returns the tickets sold for each showing in the last run
+     *
+     * @return tickets sold by showing ID, or null before the first run
+     */
+    public int[] getSold() {
+        return soldByShowing;
+    }
+
+    /**
+     * Returns the state every customer of the last run ended in, with times in simulated milliseconds
+     *
+     * @return the customers, or null before the first run
+     */
+    public CustomerStore getCustomers() {
+        return customers;
+    }
+
+    private int timeOfDay(long now) {
+        return config.openTime + (int) (now / 60000);
+    }
+
+    /**
+     * Finds the next showing on sale of the title of a showing with seats left for a party. Showings with a showtime
+     * come from a MovieCatalog, so their IDs are their indexes.
+     *
+     * @return index of the showing, or -1 if there is none
+     */
+    private int nextShowing(int showing, long now, int party, int[] seats) {
+        Movie next = schedule.next(movies.get(showing).title, timeOfDay(now), m -> seats[m.id] >= party);
+        return next == null ? -1 : next.id;
+    }
+
+    /**
+     * Chooses the showing an arriving party buys, the one they drew unless the day has showtimes
+     */
+    private int choose(int drawn, long now, int party, int[] seats) {
+        if (movies.get(drawn).showtime < 0) {
+            return drawn;
+        }
+        int next = nextShowing(drawn, now, party, seats);
+        return next < 0 ? drawn : next;
+    }
+
+    /**
+     * Runs the simulation until every customer has entered the theater or left
+     *
+     * @return totals of the run
+     */
+    public SimulationResult run() {
+        ArrivalProcess arrivals;
+        try {
+            arrivals = ArrivalProcess.fromConfig(config);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        SplittableRandom rand = new SplittableRandom(seed);
+        int[] seats = Arrays.copyOf(capacities, capacities.length);
+        CustomerStore store = new CustomerStore(customerCount);
+        customers = store;
+        int people = 0;
+        Histogram waits = new Histogram();
+        Histogram entryTimes = new Histogram();
+        int[] orders = new int[Customer.Food.values().length];
+        int[] free = Arrays.copyOf(staff, staff.length);
+        Line[] lines = {new Line(), new Line(), new Line()};
+        PriorityQueue<Event> calendar = new PriorityQueue<>();
+        long seq = 0;
+        long now = 0;
+        int sold = 0;
+        int concessionVisits = 0;
+        int[] foodOrders = new int[Customer.Food.values().length];
+        //arrivals so far, and the schedule time of the last one before any hold back moved it
+        int arrived = 0;
+        long scheduled = 0;
+        long shift = 0;
+        long firstArrival = 0;
+        long lastArrival = 0;
+        //customer waiting for room in the box office line and since when, or -1
+        int holding = -1;
+        long holdingSince = 0;
+        int heldBack = 0;
+
+        if (arrivals instanceof ArrivalProcess.Burst) {
+            for (int c = 0; c < customerCount; c++) {   //everyone arrives when the theater opens
+                int drawn = rand.nextInt(seats.length);
+                int size = partySize.sample(rand);
+                store.arrive(c, choose(drawn, 0, size, seats), size);
+                people += size;
+                store.joinLine(c, CustomerStore.State.BOX, 0);
+                lines[BOX].add(c);
+            }
+            arrived = customerCount;
+        } else if (customerCount > 0) {
+            scheduled = arrivals.nextArrival(0, rand);
+            if (scheduled >= 0) {
+                calendar.add(new Event(scheduled, seq++, ARRIVAL, 0));
+            }
+        }
+        while (true) {
+            for (int stage = BOX; stage <= CONCESSION; stage++) {   //start service wherever a worker is free
+                while (free[stage] > 0 && !lines[stage].isEmpty()) {
+                    free[stage]--;
+                    if (stage == BOX) {
+                        int c = lines[stage].remove();
+                        store.leaveLine(c, now);
+                        calendar.add(new Event(now + serviceTimes[stage].sample(rand), seq++, stage, c));
+                        continue;
+                    }
+                    int[] batch = new int[Math.min(batchSize, lines[stage].size())];
+                    int tickets = 0;
+                    Arrays.fill(orders, 0);
+                    for (int i = 0; i < batch.length; i++) {
+                        int c = lines[stage].remove();
+                        store.leaveLine(c, now);
+                        tickets += store.getPartySize(c);
+                        if (stage == CONCESSION) {
+                            orders[store.getFood(c)]++;
+                        }
+                        batch[i] = c;
+                    }
+                    double units = stage == TICKET ? TicketTaker.batchUnits(tickets)
+                            : ConcessionWorker.batchUnits(orders);
+                    long time = (long) (serviceTimes[stage].sample(rand) * units);
+                    calendar.add(new Event(now + time, seq++, stage, batch[0], batch));
+                }
+            }
+            if (holding >= 0 && lines[BOX].size() < lineCapacity) {  //room again, let the held arrival in
+                store.joinLine(holding, CustomerStore.State.BOX, now);
+                lines[BOX].add(holding);
+                lastArrival = now;
+                shift += now - holdingSince;
+                holding = -1;
+                scheduled = arrived < customerCount ? arrivals.nextArrival(scheduled, rand) : -1;
+                if (scheduled >= 0) {
+                    calendar.add(new Event(Math.max(now, scheduled + shift), seq++, ARRIVAL, arrived));
+                }
+                continue;
+            }
+            Event e = calendar.poll();
+            if (e == null) {
+                break;
+            }
+            now = e.time;
+            if (e.stage == ARRIVAL) {
+                int drawn = rand.nextInt(seats.length);
+                int size = partySize.sample(rand);
+                store.arrive(e.customer, choose(drawn, now, size, seats), size);
+                people += size;
+                if (arrived++ == 0) {
+                    firstArrival = now;
+                }
+                if (lineCapacity > 0 && lines[BOX].size() >= lineCapacity) {  //line is full, hold the arrival back
+                    holding = e.customer;
+                    holdingSince = now;
+                    heldBack++;
+                    continue;
+                }
+                store.joinLine(e.customer, CustomerStore.State.BOX, now);
+                lines[BOX].add(e.customer);
+                lastArrival = now;
+                scheduled = arrived < customerCount ? arrivals.nextArrival(scheduled, rand) : -1;
+                if (scheduled >= 0) {
+                    calendar.add(new Event(scheduled + shift, seq++, ARRIVAL, arrived));
+                }
+                continue;
+            }
+            free[e.stage]++;
+            if (e.stage == BOX) {
+                int c = e.customer;
+                int size = store.getPartySize(c);
+                if (!schedule.isOnSale(movies.get(store.getMovie(c)), timeOfDay(now))) {   //sales closed
+                    int next = nextShowing(store.getMovie(c), now, size, seats);
+                    if (next < 0) {
+                        store.setState(c, CustomerStore.State.LEFT);
+                        continue;
+                    }
+                    store.setMovie(c, next);
+                }
+                if (seats[store.getMovie(c)] >= size) {   //seats for the whole party or none
+                    seats[store.getMovie(c)] -= size;
+                    sold += size;
+                    store.joinLine(c, CustomerStore.State.TICKET, now);
+                    lines[TICKET].add(c);
+                } else {
+                    store.setState(c, CustomerStore.State.LEFT);
+                }
+                continue;
+            }
+            for (int c : e.batch) {
+                if (e.stage == TICKET && rand.nextDouble() <= 0.5) {  //decide to visit concessions
+                    store.setFood(c, rand.nextInt(foodOrders.length));
+                    foodOrders[store.getFood(c)]++;
+                    concessionVisits++;
+                    store.joinLine(c, CustomerStore.State.CONCESSION, now);
+                    lines[CONCESSION].add(c);
+                } else {
+                    waits.record(store.getWaited(c));
+                    entryTimes.record(now - store.getArrivedAt(c));
+                    store.setState(c, CustomerStore.State.ENTERED);
+                }
+            }
+        }
+        soldByShowing = new int[seats.length];
+        for (int i = 0; i < seats.length; i++) {
+            soldByShowing[i] = capacities[i] - seats[i];
+        }
+        return new SimulationResult(people, arrived, sold, concessionVisits, foodOrders, now, waits, entryTimes,
+                arrivals.getTargetRatePerMinute(), lastArrival - firstArrival, heldBack);
+    }
+
+}
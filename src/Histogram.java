@@ -0,0 +1,168 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram of non-negative long values, in the style of HdrHistogram. Every power of two is
+ * split into 16 buckets, so any recorded value is reported within about 6% of its true value. Recording is a few
+ * shifts and one atomic increment, so it is cheap enough to use on every customer handoff.
+ *
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final int BUCKETS = (64 - SUB_BITS) * HALF_COUNT + HALF_COUNT;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong max;
+
+    /**
+     * Constructs an empty Histogram
+     */
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.max = new AtomicLong();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / HALF_COUNT - 1;
+        long sub = bucket - shift * HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value
+     *
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        if (value > max.get()) {    //rare once the histogram has seen a few values, so usually no compare-and-set
+            raiseMax(value);
+        }
+    }
+
+    private void raiseMax(long value) {
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one
+     *
+     * @param other histogram to add
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        long m = max.get();
+        long om = other.max.get();
+        while (om > m && !max.compareAndSet(m, om)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded
+     *
+     * @return count of values
+     */
+    public long getCount() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the largest value recorded
+     *
+     * @return maximum value, 0 if empty
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the approximate mean of the recorded values
+     *
+     * @return mean value, 0 if empty
+     */
+    public double getMean() {
+        long n = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c != 0) {
+                n += c;
+                sum += c * (double) ((highestValueIn(i) + highestValueIn(Math.max(i - 1, 0)) + 1) / 2);
+            }
+        }
+        return n == 0 ? 0 : sum / n;
+    }
+
+    /**
+     * Returns the percentage of recorded values at or below a value, counting whole buckets
+     *
+     * @param value the value
+     * @return percentage between 0 and 100, 100 if empty
+     */
+    public double getPercentAtOrBelow(long value) {
+        long total = 0;
+        long below = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            total += n;
+            if (highestValueIn(i) <= value) {
+                below += n;
+            }
+        }
+        return total == 0 ? 100 : below * 100.0 / total;
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are at or below
+     *
+     * @param percentile percentile between 0 and 100
+     * @return highest value in the bucket holding the percentile, 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+}
@@ -0,0 +1,190 @@
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes a Flight Recorder recording of the theater, best made with theater.jfc. For every stage it prints the
+ * line waits, the services and how much longer each service slept than it asked to. Below that come the JDK's own
+ * view of the run: Thread.sleep drift, threads parked on semaphores and LockSupport, threads blocked entering a
+ * monitor such as the System.out PrintStream, and garbage collection pauses. Where the time of a slow run went is
+ * usually plain from which of these is large.
+ *
+ * java JfrSummary run.jfr
+ *
+ */
+public class JfrSummary {
+
+    private static final String[] STAGE_NAMES = {"Box office", "Ticket taker", "Concession stand"};
+
+    /**
+     * Times of one stage, in microseconds
+     */
+    private static final class Stage {
+
+        final Histogram waits = new Histogram();
+        final Histogram service = new Histogram();
+        final Histogram drift = new Histogram();
+    }
+
+    /**
+     * Count and total time of events blocked on one class, in microseconds
+     */
+    private static final class Blocked {
+
+        long count;
+        long totalMicros;
+        long maxMicros;
+
+        void add(Duration d) {
+            long micros = micros(d);
+            count++;
+            totalMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+        }
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Blocked> parked = new TreeMap<>();
+    private final Map<String, Blocked> monitors = new TreeMap<>();
+    private final Histogram sleepDrift = new Histogram();
+    private final Blocked gc = new Blocked();
+    private final StringBuilder sellOuts = new StringBuilder();
+    private long arrivals;
+
+    private JfrSummary() {
+        for (String name : STAGE_NAMES) {
+            stages.put(name, new Stage());
+        }
+    }
+
+    private static long micros(Duration d) {
+        return d.toNanos() / 1000;
+    }
+
+    private static String className(RecordedClass c) {
+        return c == null ? "(none)" : c.getName();
+    }
+
+    /**
+     * Reads every event of a recording
+     *
+     * @param file path of the recording
+     * @return the summary
+     * @throws IOException if the recording cannot be read
+     */
+    public static JfrSummary load(String file) throws IOException {
+        JfrSummary summary = new JfrSummary();
+        try (RecordingFile recording = new RecordingFile(Paths.get(file))) {
+            while (recording.hasMoreEvents()) {
+                summary.add(recording.readEvent());
+            }
+        }
+        return summary;
+    }
+
+    private void add(RecordedEvent e) {
+        switch (e.getEventType().getName()) {
+            case "theater.Arrival":
+                arrivals++;
+                break;
+            case "theater.LineWait":
+                stage(e.getString("stage")).waits.record(e.getLong("queueWait") / 1000);
+                break;
+            case "theater.Service":
+                Stage stage = stage(e.getString("stage"));
+                stage.service.record(micros(e.getDuration()));
+                stage.drift.record(micros(e.getDuration()) - e.getLong("requestedMillis") * 1000);
+                break;
+            case "theater.SellOut":
+                sellOuts.append(String.format("  %s, screen %d, showtime %d, %d seats, sold out at %s%n",
+                        e.getString("movie"), e.getInt("screen"), e.getInt("showtime"), e.getInt("capacity"),
+                        e.getStartTime()));
+                break;
+            case "jdk.ThreadSleep":
+                sleepDrift.record(micros(e.getDuration()) - micros(e.getDuration("time")));
+                break;
+            case "jdk.ThreadPark":
+                parked.computeIfAbsent(className(e.getClass("parkedClass")), c -> new Blocked()).add(e.getDuration());
+                break;
+            case "jdk.JavaMonitorEnter":
+                monitors.computeIfAbsent(className(e.getClass("monitorClass")), c -> new Blocked())
+                        .add(e.getDuration());
+                break;
+            case "jdk.GarbageCollection":
+                gc.add(e.getDuration("sumOfPauses"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Stage stage(String name) {
+        return stages.computeIfAbsent(name, n -> new Stage());
+    }
+
+    /**
+     * Prints the summary
+     *
+     * @param out stream to print to
+     */
+    public void report(PrintStream out) {
+        out.printf("%d arrivals%n", arrivals);
+        out.printf("%-18s %-12s %10s %10s %10s %10s %10s%n", "stage", "", "count", "mean ms", "p50 ms", "p99 ms",
+                "max ms");
+        for (Map.Entry<String, Stage> stage : stages.entrySet()) {
+            printTimes(out, stage.getKey(), "wait", stage.getValue().waits);
+            printTimes(out, "", "service", stage.getValue().service);
+            printTimes(out, "", "sleep drift", stage.getValue().drift);
+        }
+        printTimes(out, "Thread.sleep", "drift", sleepDrift);
+        printBlocked(out, "Parked on", parked);
+        printBlocked(out, "Blocked entering monitor of", monitors);
+        out.printf("%d GC pauses, %.1f ms in total, longest %.1f ms%n", gc.count, gc.totalMicros / 1000.0,
+                gc.maxMicros / 1000.0);
+        if (sellOuts.length() > 0) {
+            out.print("Sell-outs:\n" + sellOuts);
+        }
+    }
+
+    private static void printTimes(PrintStream out, String stage, String label, Histogram h) {
+        if (h.getCount() == 0) {
+            return;
+        }
+        out.printf("%-18s %-12s %10d %10.2f %10.2f %10.2f %10.2f%n", stage, label, h.getCount(), h.getMean() / 1000,
+                h.getPercentile(50) / 1000.0, h.getPercentile(99) / 1000.0, h.getMax() / 1000.0);
+    }
+
+    private static void printBlocked(PrintStream out, String title, Map<String, Blocked> byClass) {
+        if (byClass.isEmpty()) {
+            return;
+        }
+        out.printf("%-56s %10s %12s %10s%n", title, "count", "total ms", "max ms");
+        for (Map.Entry<String, Blocked> b : byClass.entrySet()) {
+            out.printf("  %-54s %10d %12.1f %10.1f%n", b.getKey(), b.getValue().count,
+                    b.getValue().totalMicros / 1000.0, b.getValue().maxMicros / 1000.0);
+        }
+    }
+
+    /**
+     * Summarizes a recording
+     *
+     * @param args the recording file
+     * @throws IOException if the recording cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java JfrSummary recording.jfr");
+            return;
+        }
+        load(args[0]).report(System.out);
+    }
+
+}
@@ -0,0 +1,235 @@
+
+import java.io.PrintStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The stock and machines behind the concession stand. Popcorn is cooked in batches by a machine running on its own
+ * thread and kept in a warmer of limited size; soda is poured at a few dispensers. Each item has its own semaphore, so
+ * workers taking popcorn never wait on workers pouring soda and there is no lock over the whole stand.
+ *
+ * A worker that finds the warmer empty waits for the next batch for up to popcorn.patience.ms, after which the customer
+ * goes without popcorn. Times are in simulated milliseconds, scaled like every other sleep in the theater.
+ *
+ */
+public class Kitchen {
+
+    /**
+     * Items the kitchen keeps track of
+     */
+    public enum Item {
+        POPCORN, SODA;
+    }
+
+    private static final Item[] ITEMS = Item.values();
+
+    private final TheaterConfig config;
+    //most portions the warmer holds, at least one batch
+    private final int warmer;
+    //portions in the warmer, or null if popcorn never runs out
+    private final Semaphore popcorn;
+    //free soda dispensers, or null if there are as many as needed
+    private final Semaphore dispensers;
+    //time workers waited for each item, in simulated milliseconds
+    private final Histogram[] waits;
+    //portions or cups handed out and asked for but not available, by Item ordinal
+    private final AtomicIntegerArray served;
+    private final AtomicIntegerArray stockOuts;
+    //portions the machine has cooked since opening
+    private final AtomicInteger cooked;
+    //set by start while workers may already be taking popcorn, so they read it without a lock
+    private volatile Thread machine;
+
+    /**
+     * Constructs a Kitchen with a full warmer
+     *
+     * @param config settings of the run, see the popcorn and soda keys of TheaterConfig
+     */
+    public Kitchen(TheaterConfig config) {
+        this.config = config;
+        this.warmer = Math.max(config.popcornWarmer, config.popcornBatch);
+        this.popcorn = config.popcornBatch > 0 ? new Semaphore(warmer, true) : null;
+        this.dispensers = config.sodaDispensers > 0 ? new Semaphore(config.sodaDispensers, true) : null;
+        this.waits = new Histogram[ITEMS.length];
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = new Histogram();
+        }
+        this.served = new AtomicIntegerArray(ITEMS.length);
+        this.stockOuts = new AtomicIntegerArray(ITEMS.length);
+        this.cooked = new AtomicInteger();
+    }
+
+    /**
+     * Starts the popcorn machine if popcorn is limited
+     */
+    void start() {
+        if (popcorn == null) {
+            return;
+        }
+        machine = new Thread(this::cook, "Popcorn machine");
+        machine.setDaemon(true);
+        machine.start();
+    }
+
+    /**
+     * Stops the popcorn machine and waits for it
+     */
+    void stop() {
+        Thread cooking = machine;
+        if (cooking == null) {
+            return;
+        }
+        cooking.interrupt();
+        try {
+            cooking.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Kitchen.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        machine = null;
+    }
+
+    /**
+     * Popcorn machine thread: cooks a batch whenever the warmer has room for a whole one and puts it in the warmer,
+     * and waits for portions to be taken otherwise
+     */
+    private void cook() {
+        while (true) {
+            if (warmer - popcorn.availablePermits() < config.popcornBatch) {
+                LockSupport.park(this); //a portion being taken wakes the machine
+                if (Thread.interrupted()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                Thread.sleep(config.popcornCookMillis / config.timeScale);
+            } catch (InterruptedException ex) {    //theater stopped
+                return;
+            }
+            cooked.addAndGet(config.popcornBatch);
+            popcorn.release(config.popcornBatch);  //only the machine adds portions, so there is still room
+        }
+    }
+
+    /**
+     * Takes popcorn for a party from the warmer, waiting up to popcorn.patience.ms for a batch if it is empty
+     *
+     * @param portions portions the party ordered
+     * @return if the popcorn was handed out, false if it ran out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean takePopcorn(int portions) throws InterruptedException {
+        if (popcorn == null) {
+            served.addAndGet(Item.POPCORN.ordinal(), portions);
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean got = popcorn.tryAcquire(portions)
+                || popcorn.tryAcquire(portions, config.popcornPatienceMillis * 1000000 / config.timeScale,
+                        TimeUnit.NANOSECONDS);
+        record(Item.POPCORN, start);
+        Thread cooking = machine;
+        if (cooking != null) {
+            LockSupport.unpark(cooking);    //there may be room for another batch now
+        }
+        if (!got) {
+            stockOuts.addAndGet(Item.POPCORN.ordinal(), portions);
+            return false;
+        }
+        served.addAndGet(Item.POPCORN.ordinal(), portions);
+        return true;
+    }
+
+    /**
+     * Pours soda for a party at a free dispenser, waiting for one if they are all in use
+     *
+     * @param cups cups the party ordered
+     * @throws InterruptedException if interrupted while waiting or pouring
+     */
+    void pourSoda(int cups) throws InterruptedException {
+        long start = System.nanoTime();
+        if (dispensers != null) {
+            dispensers.acquire();
+        }
+        record(Item.SODA, start);
+        try {
+            Thread.sleep(config.sodaPourMillis * cups / config.timeScale);
+        } finally {
+            if (dispensers != null) {
+                dispensers.release();
+            }
+        }
+        served.addAndGet(Item.SODA.ordinal(), cups);
+    }
+
+    private void record(Item item, long startNanos) {
+        waits[item.ordinal()].record((long) ((double) (System.nanoTime() - startNanos) * config.timeScale / 1e6));
+    }
+
+    /**
+     * Returns how long workers waited for an item
+     *
+     * @param item the item
+     * @return waits in simulated milliseconds, one per order
+     */
+    Histogram getWaits(Item item) {
+        return waits[item.ordinal()];
+    }
+
+    /**
+     * Returns how much of an item was handed out
+     *
+     * @param item the item
+     * @return portions or cups
+     */
+    int getServed(Item item) {
+        return served.get(item.ordinal());
+    }
+
+    /**
+     * Returns how much of an item was ordered but not available
+     *
+     * @param item the item
+     * @return portions or cups customers went without
+     */
+    int getStockOuts(Item item) {
+        return stockOuts.get(item.ordinal());
+    }
+
+    /**
+     * Returns how many portions of popcorn the machine has cooked
+     *
+     * @return portions cooked since opening, not counting the full warmer the kitchen opened with
+     */
+    int getCooked() {
+        return cooked.get();
+    }
+
+    /**
+     * Prints how much of each item was handed out per simulated hour, how long workers waited for it and how much ran
+     * out
+     *
+     * @param out stream to print to
+     * @param simulatedMillis simulated length of the run
+     */
+    void report(PrintStream out, double simulatedMillis) {
+        out.printf("%-8s %8s %8s %10s %10s %10s %10s%n", "item", "served", "per hour", "stock-outs", "p50 wait s",
+                "p99 wait s", "max wait s");
+        for (Item item : ITEMS) {
+            Histogram h = waits[item.ordinal()];
+            out.printf("%-8s %8d %8.0f %10d %10.1f %10.1f %10.1f%n", item, getServed(item),
+                    simulatedMillis == 0 ? 0 : getServed(item) * 3600000.0 / simulatedMillis, getStockOuts(item),
+                    h.getPercentile(50) / 1000.0, h.getPercentile(99) / 1000.0, h.getMax() / 1000.0);
+        }
+        if (popcorn != null) {
+            out.printf("Popcorn machine cooked %d portions, %d left in the warmer%n", getCooked(),
+                    popcorn.availablePermits());
+        }
+    }
+
+}
@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ServiceLine where every worker has a lane of their own instead of all workers sharing one queue. A customer picks a
+ * lane when they join, either the shortest one or the shorter of two random ones, and their worker takes customers from
+ * the front of it. A worker whose lane is empty steals from the back of the longest other lane before parking, so no
+ * one waits behind a slow customer while another worker is idle.
+ *
+ * Workers park and customers join without waiting, as in ParkingServiceLine.
+ *
+ */
+public class LaneServiceLine extends ServiceLine {
+
+    /**
+     * The customers waiting for one worker
+     */
+    private static final class Lane {
+
+        final int worker;
+        final ConcurrentLinkedDeque<Customer> customers;
+        //customers in the deque, which cannot count itself in constant time
+        final AtomicInteger size;
+        //set once the worker has left, after which the lane is emptied into the others
+        volatile boolean closed;
+        volatile Thread owner;
+
+        Lane(int worker) {
+            this.worker = worker;
+            this.customers = new ConcurrentLinkedDeque<>();
+            this.size = new AtomicInteger();
+        }
+    }
+
+    private final Lanes policy;
+    //every open lane, replaced whenever a worker is hired or leaves, and each lane by worker ID, grown on hire
+    private volatile Lane[] lanes;
+    private volatile Lane[] byWorker;
+    //lanes whose workers are parked waiting for customers
+    private final Queue<Lane> idle;
+    //customers taken by a worker from someone else's lane
+    private final AtomicInteger stolen;
+
+    /**
+     * Constructs a LaneServiceLine
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     * @param policy how customers pick a lane, SHORTEST or TWO_CHOICES
+     */
+    public LaneServiceLine(String name, int workers, int batchSize, Lanes policy) {
+        super(name, workers, batchSize, Handoff.PARK);
+        this.policy = policy;
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.stolen = new AtomicInteger();
+        Lane[] initial = new Lane[workers];
+        for (int i = 0; i < workers; i++) {
+            initial[i] = new Lane(i);
+        }
+        this.lanes = initial;
+        this.byWorker = initial.clone();
+    }
+
+    /**
+     * Called by a customer to join a lane and wake a worker. Returns at once; the worker that takes the customer adds
+     * the time they waited to them.
+     *
+     * @param c the customer
+     */
+    @Override
+    void join(Customer c) {
+        metrics.joined();
+        enqueue(c);
+    }
+
+    private void enqueue(Customer c) {
+        while (true) {
+            Lane lane = pick(lanes);
+            lane.customers.addLast(c);
+            lane.size.incrementAndGet();
+            if (lane.closed && lane.customers.removeLastOccurrence(c)) {  //its worker left meanwhile, pick again
+                lane.size.decrementAndGet();
+                continue;
+            }
+            wake(lane);
+            return;
+        }
+    }
+
+    /**
+     * Picks the lane a customer joins
+     */
+    private Lane pick(Lane[] open) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        if (policy == Lanes.TWO_CHOICES) {
+            Lane a = open[rand.nextInt(open.length)];
+            Lane b = open[rand.nextInt(open.length)];
+            return b.size.get() < a.size.get() ? b : a;
+        }
+        int start = rand.nextInt(open.length);  //spread ties
+        Lane best = open[start];
+        for (int i = 1; i < open.length; i++) {
+            Lane lane = open[(start + i) % open.length];
+            if (lane.size.get() < best.size.get()) {
+                best = lane;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Wakes the worker of a lane if they are parked, or else any parked worker so they can steal the customer
+     */
+    private void wake(Lane lane) {
+        Lane woken = idle.remove(lane) ? lane : idle.poll();
+        if (woken != null) {
+            LockSupport.unpark(woken.owner);
+        }
+    }
+
+    /**
+     * Called by a worker to take the next customer from their lane, or from the back of the longest other lane if
+     * theirs is empty, parking while every lane is empty
+     *
+     * @param w the worker
+     * @return the customer to serve, or null if the worker should leave instead
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    Customer next(Worker w) throws InterruptedException {
+        return next(byWorker[w.getId()]);
+    }
+
+    private Customer next(Lane own) throws InterruptedException {
+        own.owner = Thread.currentThread();
+        while (true) {
+            int r;
+            while ((r = retiring.get()) > 0) {  //asked to leave
+                if (retiring.compareAndSet(r, r - 1)) {
+                    leave(own);
+                    return null;
+                }
+            }
+            Customer c = take(own);
+            if (c == null) {
+                c = steal(own);
+            }
+            if (c != null) {
+                return c;
+            }
+            idle.add(own);
+            if (anyWaiting() || retiring.get() > 0) {   //a customer or a retire came before we were in idle
+                idle.remove(own);
+                continue;
+            }
+            LockSupport.park(this);
+            idle.remove(own);   //still there if the wake up was spurious
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    int nextBatch(Worker w, Customer[] batch) throws InterruptedException {
+        Lane own = byWorker[w.getId()];
+        Customer first = next(own);
+        if (first == null) {
+            return 0;
+        }
+        batch[0] = first;
+        int count = 1;
+        Customer c;
+        while (count < batchSize && (c = take(own)) != null) {
+            batch[count++] = c;
+        }
+        return count;
+    }
+
+    /**
+     * Takes the customer at the front of a lane
+     */
+    private Customer take(Lane lane) {
+        Customer c = lane.customers.pollFirst();
+        if (c != null) {
+            lane.size.decrementAndGet();
+        }
+        return c;
+    }
+
+    /**
+     * Takes the customer at the back of the longest lane other than the worker's own
+     */
+    private Customer steal(Lane own) {
+        while (true) {
+            Lane victim = null;
+            for (Lane lane : lanes) {
+                if (lane != own && lane.size.get() > 0 && (victim == null || lane.size.get() > victim.size.get())) {
+                    victim = lane;
+                }
+            }
+            if (victim == null) {
+                return null;
+            }
+            Customer c = victim.customers.pollLast();
+            if (c != null) {
+                victim.size.decrementAndGet();
+                stolen.incrementAndGet();
+                return c;
+            }
+        }
+    }
+
+    private boolean anyWaiting() {
+        for (Lane lane : lanes) {
+            if (lane.size.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a leaving worker's lane and moves any customers still in it to the other lanes
+     */
+    private void leave(Lane own) {
+        synchronized (this) {
+            Lane[] open = lanes;
+            if (open.length > 1) {  //the last lane stays so late customers have somewhere to wait
+                Lane[] rest = new Lane[open.length - 1];
+                int n = 0;
+                for (Lane lane : open) {
+                    if (lane != own) {
+                        rest[n++] = lane;
+                    }
+                }
+                lanes = rest;
+                own.closed = true;
+            }
+            Lane[] ids = byWorker.clone();
+            ids[own.worker] = null;
+            byWorker = ids;
+        }
+        if (!own.closed) {
+            return;
+        }
+        Customer c;
+        while ((c = own.customers.pollFirst()) != null) {
+            own.size.decrementAndGet();
+            enqueue(c);
+        }
+    }
+
+    @Override
+    void freePlaces(int count) {
+        //customers join without waiting for a place
+    }
+
+    @Override
+    int hire() {
+        int id = nextId.getAndIncrement();
+        Lane lane = new Lane(id);
+        synchronized (this) {
+            Lane[] ids = Arrays.copyOf(byWorker, Math.max(byWorker.length, id + 1));
+            ids[id] = lane;
+            byWorker = ids;
+            Lane[] open = lanes;
+            Lane[] grown = new Lane[open.length + 1];
+            System.arraycopy(open, 0, grown, 0, open.length);
+            grown[open.length] = lane;
+            lanes = grown;
+        }
+        workers.incrementAndGet();
+        return id;
+    }
+
+    /**
+     * Asks one idle worker to leave. The line keeps at least one worker, and busy workers are never interrupted.
+     *
+     * @return if a worker was idle and will leave
+     */
+    @Override
+    boolean retire() {
+        if (workers.get() <= 1) {
+            return false;
+        }
+        Lane lane = idle.poll();
+        if (lane == null) {
+            return false;
+        }
+        workers.decrementAndGet();
+        retiring.incrementAndGet();
+        LockSupport.unpark(lane.owner);
+        return true;
+    }
+
+    @Override
+    void close() {
+        retiring.addAndGet(workers.getAndSet(0));
+        Lane lane;
+        while ((lane = idle.poll()) != null) {
+            LockSupport.unpark(lane.owner);
+        }
+    }
+
+    /**
+     * Returns how many customers were served by a worker other than the one whose lane they joined
+     *
+     * @return customers stolen from other lanes
+     */
+    public int getStolen() {
+        return stolen.get();
+    }
+
+}
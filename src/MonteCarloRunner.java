@@ -0,0 +1,263 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs thousands of independent discrete-event simulations of the theater across a ForkJoinPool to compare staffing
+ * levels. Every combination of box office agents, ticket takers, concession workers and customer count in the grid is
+ * simulated many times and the runs are combined into throughput, sold-out rate and p99 wait figures.
+ *
+ * Runs are reproducible: every run's seed comes from a SplittableRandom that is split along the same task tree no
+ * matter how the pool schedules it.
+ *
+ */
+public class MonteCarloRunner {
+
+    //runs simulated by one task without forking further
+    private static final int RUNS_PER_TASK = 16;
+
+    /**
+     * One combination of staffing and customer count
+     */
+    public static class Point {
+
+        final int boxAgents;
+        final int ticketTakers;
+        final int concessionWorkers;
+        final int customers;
+
+        public Point(int boxAgents, int ticketTakers, int concessionWorkers, int customers) {
+            this.boxAgents = boxAgents;
+            this.ticketTakers = ticketTakers;
+            this.concessionWorkers = concessionWorkers;
+            this.customers = customers;
+        }
+    }
+
+    /**
+     * Combined results of many runs of one point
+     */
+    public static class Summary {
+
+        int runs;
+        long customers;
+        long turnedAway;
+        double throughputSum;
+        final Histogram waits = new Histogram();
+
+        /**
+         * Adds one run to the summary
+         *
+         * @param r result of the run
+         */
+        void add(SimulationResult r) {
+            runs++;
+            customers += r.customers;
+            turnedAway += r.getTurnedAway();
+            throughputSum += r.getThroughputPerHour();
+            waits.add(r.waits);
+        }
+
+        /**
+         * Combines another summary into this one
+         *
+         * @param other summary to combine
+         * @return this summary
+         */
+        Summary merge(Summary other) {
+            runs += other.runs;
+            customers += other.customers;
+            turnedAway += other.turnedAway;
+            throughputSum += other.throughputSum;
+            waits.add(other.waits);
+            return this;
+        }
+
+        public double getMeanThroughputPerHour() {
+            return runs == 0 ? 0 : throughputSum / runs;
+        }
+
+        public double getSoldOutRate() {
+            return customers == 0 ? 0 : (double) turnedAway / customers;
+        }
+
+        public long getP99WaitMillis() {
+            return waits.getPercentile(99);
+        }
+    }
+
+    /**
+     * Simulates runs [from, to) of one point, splitting the range in half until it is small enough
+     */
+    private static class RunTask extends RecursiveTask<Summary> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Movie> movies;
+        private final Point point;
+        private final int from;
+        private final int to;
+        private final SplittableRandom rand;
+
+        RunTask(List<Movie> movies, Point point, int from, int to, SplittableRandom rand) {
+            this.movies = movies;
+            this.point = point;
+            this.from = from;
+            this.to = to;
+            this.rand = rand;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= RUNS_PER_TASK) {
+                Summary summary = new Summary();
+                for (int i = from; i < to; i++) {
+                    summary.add(new EventSimulation(movies, point.customers, point.boxAgents, point.ticketTakers,
+                            point.concessionWorkers, rand.nextLong()).run());
+                }
+                return summary;
+            }
+            int mid = (from + to) >>> 1;
+            RunTask left = new RunTask(movies, point, from, mid, rand.split());
+            RunTask right = new RunTask(movies, point, mid, to, rand);
+            left.fork();
+            Summary r = right.compute();
+            return left.join().merge(r);
+        }
+    }
+
+    private final List<Movie> movies;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a MonteCarloRunner
+     *
+     * @param movies movies showing, their seat counts are copied by every run
+     * @param pool pool the runs are simulated on
+     */
+    public MonteCarloRunner(List<Movie> movies, ForkJoinPool pool) {
+        this.movies = movies;
+        this.pool = pool;
+    }
+
+    /**
+     * Simulates every point of a grid
+     *
+     * @param points staffing and customer count combinations
+     * @param runs runs per point
+     * @param seed seed the seeds of every run are derived from
+     * @return one summary per point, in the same order
+     */
+    public List<Summary> sweep(List<Point> points, int runs, long seed) {
+        SplittableRandom rand = new SplittableRandom(seed);
+        List<RunTask> tasks = new ArrayList<>();
+        for (Point point : points) {
+            tasks.add(new RunTask(movies, point, 0, runs, rand.split()));
+        }
+        List<Summary> summaries = new ArrayList<>();
+        for (RunTask task : tasks) {
+            pool.execute(task);
+        }
+        for (RunTask task : tasks) {
+            summaries.add(task.join());
+        }
+        return summaries;
+    }
+
+    /**
+     * Parses a comma separated list of numbers
+     */
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * Sweeps a staffing grid and prints a table
+     *
+     * @param args movie filename followed by optional --box=1,2 --ticket=1 --concession=1,2 --customers=50,100
+     * --runs=1000 --seed=1 --threads=N
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Missing parameter movie filename");
+            return;
+        }
+        int[] box = {Theater.MAX_BOX_AGENTS};
+        int[] ticket = {Theater.MAX_TICKET_TAKERS};
+        int[] concession = {Theater.MAX_CONCESSION_WORKERS};
+        int[] customers = {Theater.MAX_CUSTOMERS};
+        int runs = 1000;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            String[] kv = args[i].replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "box":
+                    box = parseList(kv[1]);
+                    break;
+                case "ticket":
+                    ticket = parseList(kv[1]);
+                    break;
+                case "concession":
+                    concession = parseList(kv[1]);
+                    break;
+                case "customers":
+                    customers = parseList(kv[1]);
+                    break;
+                case "runs":
+                    runs = Integer.parseInt(kv[1]);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(kv[1]);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        ArrayList<Movie> movies = new ArrayList<>();
+        if (!Theater.loadMovies(args[0], movies)) {
+            System.out.println("Movie file could not be opened");
+            return;
+        }
+        List<Point> points = new ArrayList<>();
+        for (int c : customers) {
+            for (int b : box) {
+                for (int t : ticket) {
+                    for (int w : concession) {
+                        points.add(new Point(b, t, w, c));
+                    }
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<Summary> summaries = new MonteCarloRunner(movies, pool).sweep(points, runs, seed);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("%5s %6s %10s %9s %6s %14s %11s %12s%n",
+                "box", "ticket", "concession", "customers", "runs", "admitted/hour", "sold out %", "p99 wait s");
+        for (int i = 0; i < points.size(); i++) {
+            Point p = points.get(i);
+            Summary s = summaries.get(i);
+            System.out.printf("%5d %6d %10d %9d %6d %14.1f %11.1f %12.1f%n", p.boxAgents, p.ticketTakers,
+                    p.concessionWorkers, p.customers, s.runs, s.getMeanThroughputPerHour(), s.getSoldOutRate() * 100,
+                    s.getP99WaitMillis() / 1000.0);
+        }
+        System.out.printf("%d runs on %d threads in %.1f s%n", points.size() * runs, threads, elapsed / 1e9);
+    }
+
+}
@@ -1,4 +1,6 @@
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A movie with a title and a ticket count
  *
@@ -7,8 +9,16 @@
  */
 public class Movie {
 
+    final int id;
     final String title;
-    private int ticketsAvaliable;
+    //minutes after midnight the showing starts and the screen it is on, -1 if the catalog does not say
+    final int showtime;
+    final int screen;
+    private final int capacity;
+    //available seats in the low 32 bits, held seats in the high 32 bits, so both change in one compare-and-set
+    private final AtomicLong seats;
+    //which seats are taken when seating is assigned, null when tickets are only counted
+    private volatile SeatMap seatMap;
 
     /**
      * Constructs a Movie object with a given title and number of seats
@@ -17,29 +27,284 @@ public class Movie {
      * @param ticketsAvaliable number of seats avaliable
      */
     public Movie(String title, int ticketsAvaliable) {
+        this(0, title, ticketsAvaliable);
+    }
+
+    /**
+     * Constructs a Movie object with an ID, a given title and number of seats
+     *
+     * @param id ID of the movie, its index in the theater's list of movies
+     * @param title title of the movie
+     * @param ticketsAvaliable number of seats avaliable
+     */
+    public Movie(int id, String title, int ticketsAvaliable) {
+        this(id, title, ticketsAvaliable, -1, -1);
+    }
+
+    /**
+     * Constructs a Movie object for one showing of a title
+     *
+     * @param id ID of the showing, its index in the theater's list of movies
+     * @param title title of the movie
+     * @param ticketsAvaliable number of seats avaliable
+     * @param showtime minutes after midnight the showing starts, or -1
+     * @param screen screen the showing is on, or -1
+     */
+    public Movie(int id, String title, int ticketsAvaliable, int showtime, int screen) {
+        this.id = id;
         this.title = title;
-        this.ticketsAvaliable = ticketsAvaliable;
+        this.showtime = showtime;
+        this.screen = screen;
+        this.capacity = ticketsAvaliable;
+        this.seats = new AtomicLong(ticketsAvaliable);
+    }
+
+    private static int avaliable(long state) {
+        return (int) state;
+    }
+
+    private static int held(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static long state(int avaliable, int held) {
+        return ((long) held << 32) | (avaliable & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Rejects a seat count that would give seats back or take none, since it changes the packed counts the other way
+     */
+    private static void checkCount(int number) {
+        if (number < 1) {
+            throw new IllegalArgumentException("number of seats must be at least 1, was " + number);
+        }
     }
 
     /**
-     * Attempts to purchase a ticket for the movie
+     * Gives the showing assigned seating, in rows of a given number of seats. Call it before tickets are sold.
      *
-     * @param number number of tickets to purchase
+     * @param seatsPerRow seats in every row of the auditorium
+     */
+    public void assignSeats(int seatsPerRow) {
+        seatMap = new SeatMap(capacity, seatsPerRow);
+    }
+
+    /**
+     * Returns which seats are taken
+     *
+     * @return the seat map, or null if seating is not assigned
+     */
+    SeatMap getSeatMap() {
+        return seatMap;
+    }
+
+    /**
+     * Attempts to purchase a ticket for the movie. Either all of the tickets are purchased or none are. With assigned
+     * seating the party gets adjacent seats in one row or no tickets.
+     *
+     * @param number number of tickets to purchase, at least 1
      * @return if the tickets were purchased successfully
+     * @throws IllegalArgumentException if number is below 1
      */
-    public synchronized boolean purchaseTicket(int number) {
-        if (ticketsAvaliable >= number) {
-            ticketsAvaliable -= number;
-            return true;
+    public boolean purchaseTicket(int number) {
+        checkCount(number);
+        if (seatMap != null) {
+            return purchaseSeats(number) != SeatMap.NONE;
+        }
+        while (true) {
+            long current = seats.get();
+            int avaliable = avaliable(current);
+            if (avaliable < number) {
+                return false;
+            }
+            if (seats.compareAndSet(current, state(avaliable - number, held(current)))) {
+                if (avaliable == number && held(current) == 0) {
+                    soldOut();
+                }
+                return true;
+            }
         }
-        return false;
     }
-/**
- * Returns the movie as a string
- * @return title and seat availability in a string
- */
+
+    /**
+     * Holds seats so no one else can buy them until the hold is confirmed or cancelled
+     *
+     * @param number number of seats to hold, at least 1
+     * @return if the seats were held successfully
+     * @throws IllegalArgumentException if number is below 1
+     */
+    public boolean holdTickets(int number) {
+        checkCount(number);
+        while (true) {
+            long current = seats.get();
+            int avaliable = avaliable(current);
+            if (avaliable < number) {
+                return false;
+            }
+            if (seats.compareAndSet(current, state(avaliable - number, held(current) + number))) {
+                return true;    //not sold out until the hold is confirmed, it may still be cancelled
+            }
+        }
+    }
+
+    /**
+     * Turns held seats into sold tickets
+     *
+     * @param number number of held seats to confirm
+     */
+    public void confirmHold(int number) {
+        updateHold(number, false);
+    }
+
+    /**
+     * Gives held seats back so they can be sold again
+     *
+     * @param number number of held seats to release
+     */
+    public void cancelHold(int number) {
+        updateHold(number, true);
+    }
+
+    /**
+     * Holds the best block of adjacent seats. The seats are counted as held first, so a sold out showing is turned
+     * down without searching the seat map, and the hold is cancelled if no row has enough adjacent seats. Confirm the
+     * seats with confirmHold or give them back with releaseSeats.
+     *
+     * @param number number of seats to hold
+     * @return the block held, see SeatMap.row and SeatMap.seat, or SeatMap.NONE
+     * @throws IllegalStateException if seating is not assigned
+     */
+    public int holdSeats(int number) {
+        SeatMap map = seatMap;
+        if (map == null) {
+            throw new IllegalStateException("Seating is not assigned for " + title + ", use holdTickets");
+        }
+        if (!holdTickets(number)) {
+            return SeatMap.NONE;
+        }
+        int block = map.allocate(number);
+        if (block == SeatMap.NONE) {
+            cancelHold(number);
+        }
+        return block;
+    }
+
+    /**
+     * Gives held seats back so they can be sold again
+     *
+     * @param block the block returned by holdSeats
+     * @param number number of seats held
+     * @throws IllegalStateException if seating is not assigned
+     */
+    public void releaseSeats(int block, int number) {
+        SeatMap map = seatMap;
+        if (map == null) {
+            throw new IllegalStateException("Seating is not assigned for " + title + ", use cancelHold");
+        }
+        map.release(block, number);
+        cancelHold(number);
+    }
+
+    /**
+     * Purchases the best block of adjacent seats
+     *
+     * @param number number of tickets to purchase
+     * @return the block sold, see SeatMap.row and SeatMap.seat, or SeatMap.NONE
+     * @throws IllegalStateException if seating is not assigned
+     */
+    public int purchaseSeats(int number) {
+        int block = holdSeats(number);
+        if (block != SeatMap.NONE) {
+            confirmHold(number);
+        }
+        return block;
+    }
+
+    /**
+     * Records for Flight Recorder that the last seat was just sold, with no seats left or held
+     */
+    private void soldOut() {
+        TheaterEvents.SellOut event = new TheaterEvents.SellOut();
+        if (event.shouldCommit()) {
+            event.movie = title;
+            event.showtime = showtime;
+            event.screen = screen;
+            event.capacity = capacity;
+            event.commit();
+        }
+    }
+
+    private void updateHold(int number, boolean giveBack) {
+        checkCount(number);
+        while (true) {
+            long current = seats.get();
+            int held = held(current);
+            if (held < number) {
+                throw new IllegalStateException("Only " + held + " seats are held for " + title);
+            }
+            int avaliable = avaliable(current) + (giveBack ? number : 0);
+            if (seats.compareAndSet(current, state(avaliable, held - number))) {
+                if (!giveBack && avaliable == 0 && held == number) {
+                    soldOut();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Makes every seat avaliable again for another run
+     */
+    public void reset() {
+        seats.set(state(capacity, 0));
+        if (seatMap != null) {
+            seatMap.reset();
+        }
+    }
+
+    /**
+     * Returns the number of seats in the showing
+     *
+     * @return seats sold, held and avaliable combined
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of seats that can still be bought or held
+     *
+     * @return seats neither sold nor held
+     */
+    public int getTicketsAvaliable() {
+        return avaliable(seats.get());
+    }
+
+    /**
+     * Returns the number of tickets sold, not counting seats that are only held
+     *
+     * @return confirmed tickets sold
+     */
+    public int getTicketsSold() {
+        long current = seats.get();
+        return capacity - avaliable(current) - held(current);
+    }
+
+    /**
+     * Returns if every seat has been sold. Held seats may still be cancelled, so a movie with holds is not sold out.
+     *
+     * @return if no seats are avaliable or held
+     */
+    public boolean isSoldOut() {
+        return seats.get() == 0;
+    }
+
+    /**
+     * Returns the movie as a string
+     * @return title and seat availability in a string
+     */
     public String toString() {
-        return title + " " + ticketsAvaliable;
+        return title + " " + getTicketsAvaliable();
     }
 
 }
@@ -0,0 +1,341 @@
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Every showing the theater sells tickets for, indexed by ID, by title and by title and showtime.
+ *
+ * A catalog file has one showing per line: title, seats, and optionally showtime (HH:MM or minutes after midnight)
+ * and screen, separated by tabs. Files are memory mapped and parsed byte by byte, so loading does not create a
+ * String per line or run a regex: titles are looked up by their bytes, and a String is only made for a title the
+ * first time it is seen, which every later showing of the title shares.
+ *
+ */
+public class MovieCatalog {
+
+    //largest file a single mapping can hold
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final Movie[] NO_SHOWINGS = new Movie[0];
+
+    /**
+     * The titles read so far, looked up by their UTF-8 bytes with open addressing
+     */
+    private static final class Titles {
+
+        private byte[][] keys = new byte[64][];
+        private String[] values = new String[64];
+        private int size;
+
+        /**
+         * Returns the title with the given bytes, making its String the first time
+         */
+        String get(byte[] bytes, int length) {
+            int mask = keys.length - 1;
+            int slot = slot(bytes, length, mask);
+            while (keys[slot] != null) {
+                if (Arrays.equals(keys[slot], 0, keys[slot].length, bytes, 0, length)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            byte[] key = Arrays.copyOf(bytes, length);
+            String title = new String(key, StandardCharsets.UTF_8);
+            keys[slot] = key;
+            values[slot] = title;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return title;
+        }
+
+        private static int slot(byte[] bytes, int length, int mask) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                byte[] key = oldKeys[i];
+                if (key == null) {
+                    continue;
+                }
+                int slot = slot(key, key.length, mask);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private final ArrayList<Movie> movies;
+    //showings of every title, sorted by showtime then screen
+    private final HashMap<String, Movie[]> byTitle;
+
+    private MovieCatalog(ArrayList<Movie> movies) {
+        this.movies = movies;
+        HashMap<String, ArrayList<Movie>> grouped = new HashMap<>();
+        for (Movie movie : movies) {
+            grouped.computeIfAbsent(movie.title, t -> new ArrayList<>()).add(movie);
+        }
+        this.byTitle = new HashMap<>(grouped.size() * 2);
+        for (String title : grouped.keySet()) {
+            Movie[] showings = grouped.get(title).toArray(NO_SHOWINGS);
+            Arrays.sort(showings, (a, b) -> a.showtime != b.showtime
+                    ? Integer.compare(a.showtime, b.showtime) : Integer.compare(a.screen, b.screen));
+            byTitle.put(title, showings);
+        }
+    }
+
+    /**
+     * Loads a catalog file
+     *
+     * @param file path of the catalog file
+     * @return the catalog, with showing IDs in file order starting at 0
+     * @throws IOException if the file cannot be read, a line is malformed or two showings share a screen and showtime
+     */
+    public static MovieCatalog load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_MAPPED_BYTES) {
+                throw new IOException(file + " is too large to map (" + size + " bytes)");
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MovieCatalog(parse(buf, (int) size, file));
+        }
+    }
+
+    /**
+     * Indexes showings that were not loaded from a file, such as movies added to a theater directly
+     *
+     * @param movies every showing, the list index of a showing being its ID
+     * @return the catalog
+     */
+    public static MovieCatalog of(List<Movie> movies) {
+        return new MovieCatalog(new ArrayList<>(movies));
+    }
+
+    /**
+     * Parses every line of a mapped file into a showing
+     */
+    private static ArrayList<Movie> parse(MappedByteBuffer buf, int size, Path file) throws IOException {
+        ArrayList<Movie> movies = new ArrayList<>();
+        Titles titles = new Titles();
+        //line of every showing by ID, to name the lines of two showings that clash
+        int[] lines = new int[1024];
+        byte[] scratch = new byte[256];
+        int[] fields = new int[8];  //start and end of up to four fields
+        int lineNumber = 0;
+        int pos = 0;
+        while (pos < size) {
+            lineNumber++;
+            int end = pos;
+            while (end < size && buf.get(end) != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            //trim like String.trim, which also takes the \r of Windows line endings
+            while (pos < end && (buf.get(pos) & 0xFF) <= ' ') {
+                pos++;
+            }
+            while (end > pos && (buf.get(end - 1) & 0xFF) <= ' ') {
+                end--;
+            }
+            if (pos == end) {
+                pos = next;
+                continue;
+            }
+            int count = 0;
+            int start = pos;
+            for (int i = pos; i <= end && count < 4; i++) {
+                if (i == end || buf.get(i) == '\t') {
+                    fields[count * 2] = start;
+                    fields[count * 2 + 1] = i;
+                    count++;
+                    start = i + 1;
+                }
+            }
+            if (count < 2) {
+                throw new IOException(file + " line " + lineNumber + ": expected title and seats");
+            }
+            int titleLength = fields[1] - fields[0];
+            if (titleLength > scratch.length) {
+                scratch = new byte[Math.max(titleLength, scratch.length * 2)];
+            }
+            for (int i = 0; i < titleLength; i++) {
+                scratch[i] = buf.get(fields[0] + i);
+            }
+            String title = titles.get(scratch, titleLength);
+            int seats = parseNumber(buf, fields[2], fields[3], file, lineNumber);
+            int showtime = count > 2 ? parseTime(buf, fields[4], fields[5], file, lineNumber) : -1;
+            int screen = count > 3 ? parseNumber(buf, fields[6], fields[7], file, lineNumber) : -1;
+            if (movies.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[movies.size()] = lineNumber;
+            movies.add(new Movie(movies.size(), title, seats, showtime, screen));
+            pos = next;
+        }
+        checkScreens(movies, lines, file);
+        return movies;
+    }
+
+    /**
+     * Checks that no screen has two showings at the same time, by sorting the showings by screen and showtime so any
+     * two that clash are next to each other
+     */
+    private static void checkScreens(ArrayList<Movie> movies, int[] lines, Path file) throws IOException {
+        Movie[] booked = new Movie[movies.size()];
+        int count = 0;
+        for (Movie movie : movies) {
+            if (movie.showtime >= 0 && movie.screen >= 0) {
+                booked[count++] = movie;
+            }
+        }
+        Arrays.sort(booked, 0, count, (a, b) -> a.screen != b.screen ? Integer.compare(a.screen, b.screen)
+                : a.showtime != b.showtime ? Integer.compare(a.showtime, b.showtime) : Integer.compare(a.id, b.id));
+        for (int i = 1; i < count; i++) {
+            if (booked[i].screen == booked[i - 1].screen && booked[i].showtime == booked[i - 1].showtime) {
+                throw new IOException(file + " line " + lines[booked[i].id] + ": screen " + booked[i].screen
+                        + " already has a showing at that time on line " + lines[booked[i - 1].id]);
+            }
+        }
+    }
+
+    private static int parseNumber(MappedByteBuffer buf, int from, int to, Path file, int line) throws IOException {
+        if (from == to) {
+            throw new IOException(file + " line " + line + ": missing number");
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new IOException(file + " line " + line + ": bad number");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses HH:MM, or a plain number of minutes after midnight
+     */
+    private static int parseTime(MappedByteBuffer buf, int from, int to, Path file, int line) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == ':') {
+                int hours = parseNumber(buf, from, i, file, line);
+                int minutes = parseNumber(buf, i + 1, to, file, line);
+                if (minutes > 59) {
+                    throw new IOException(file + " line " + line + ": bad showtime");
+                }
+                return hours * 60 + minutes;
+            }
+        }
+        return parseNumber(buf, from, to, file, line);
+    }
+
+    /**
+     * Returns every showing in file order. The list index of a showing is its ID.
+     *
+     * @return all showings
+     */
+    public List<Movie> getMovies() {
+        return Collections.unmodifiableList(movies);
+    }
+
+    /**
+     * Returns the number of showings
+     *
+     * @return number of showings
+     */
+    public int size() {
+        return movies.size();
+    }
+
+    /**
+     * Returns a showing by ID
+     *
+     * @param id ID of the showing
+     * @return the showing
+     */
+    public Movie get(int id) {
+        return movies.get(id);
+    }
+
+    /**
+     * Returns every showing of a title
+     *
+     * @param title title of the movie
+     * @return showings sorted by showtime then screen, empty if the title is not showing
+     */
+    public List<Movie> getShowings(String title) {
+        Movie[] showings = byTitle.get(title);
+        return showings == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(showings));
+    }
+
+    /**
+     * Returns the showings of a title without copying them, for lookups that must not allocate
+     *
+     * @param title title of the movie
+     * @return showings sorted by showtime then screen, not to be changed, or null if the title is not showing
+     */
+    Movie[] showings(String title) {
+        return byTitle.get(title);
+    }
+
+    /**
+     * Finds where showings at or after a time start in the sorted showings of a title
+     *
+     * @param showings showings sorted by showtime
+     * @param showtime minutes after midnight
+     * @return index of the first showing at or after the time, or the length if there is none
+     */
+    static int indexOf(Movie[] showings, int showtime) {
+        int lo = 0;
+        int hi = showings.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (showings[mid].showtime < showtime) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the showing of a title at a time. If several screens show it at that time, the lowest screen is returned.
+     *
+     * @param title title of the movie
+     * @param showtime minutes after midnight
+     * @return the showing, or null if there is none
+     */
+    public Movie find(String title, int showtime) {
+        Movie[] showings = byTitle.get(title);
+        if (showings == null) {
+            return null;
+        }
+        int i = indexOf(showings, showtime);
+        return i < showings.length && showings[i].showtime == showtime ? showings[i] : null;
+    }
+
+}
@@ -0,0 +1,234 @@
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A multiplex of several theaters, each a shard with its own workers, lines, seats and pool of threads. A router sends
+ * every arriving customer to one shard, and everything the customer does afterwards stays there. Only a customer whose
+ * movie has no seats left at their shard looks at the other shards, in turn, for one that still has seats, so the
+ * shards share nothing while seats last.
+ *
+ */
+public class Multiplex {
+
+    /**
+     * How arriving customers are spread over the shards
+     */
+    public enum Router {
+        ROUND_ROBIN, RANDOM, SHORTEST_LINE;
+
+        /**
+         * Parses a router name, ignoring case and accepting dashes for underscores
+         *
+         * @param name name of the router
+         * @return the matching router
+         */
+        public static Router parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final TheaterConfig config;
+    private final Theater[] shards;
+    private final SplittableRandom rand;
+    //customers that went to another shard for seats
+    private final AtomicInteger transfers;
+    //only touched by the thread letting customers in
+    private int nextShard;
+    //lets customers in over time, null if they all arrived at once
+    private ArrivalGenerator arrivals;
+    private long openedNanos;
+    private long closedNanos;
+
+    /**
+     * Constructs a Multiplex of config.shards theaters, or one per processor if config.shards is 0. Every shard gets
+     * the full staff of the config and its own random seed.
+     *
+     * @param config settings of the run
+     * @param threadFactory factory used to create every customer and worker thread
+     * @param logStream stream every shard logs events to
+     */
+    public Multiplex(TheaterConfig config, ThreadFactory threadFactory, OutputStream logStream) {
+        this.config = config;
+        this.rand = new SplittableRandom(config.seed);
+        this.transfers = new AtomicInteger();
+        int count = config.shards > 0 ? config.shards : Runtime.getRuntime().availableProcessors();
+        this.shards = new Theater[count];
+        for (int i = 0; i < count; i++) {
+            TheaterConfig shardConfig = config.copy();
+            shardConfig.customers = (config.customers + count - 1) / count;    //only sizes the shard's lists
+            shardConfig.seed = rand.nextLong();
+            shards[i] = new Theater(shardConfig, threadFactory, logStream);
+            shards[i].joinMultiplex(this, i);
+        }
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    Theater getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * Counts a customer going to another shard for seats
+     */
+    void recordTransfer() {
+        transfers.incrementAndGet();
+    }
+
+    /**
+     * Loads the movie file into every shard, so each has its own seats, then opens them all
+     *
+     * @param movieFile filename of the movie file
+     */
+    public void initTheaters(String movieFile) {
+        for (Theater shard : shards) {
+            shard.initTheater(movieFile);
+        }
+    }
+
+    /**
+     * Routes every customer to a shard as they arrive and waits until all of them have entered a theater or left.
+     * Customers arrive as the configured arrival process says, all at once by default. With a line.capacity,
+     * arrivals are held back while the shortest box office line of all shards is full.
+     *
+     * @throws IOException if the arrival trace cannot be read
+     */
+    public void initCustomers() throws IOException {
+        ArrivalProcess process = ArrivalProcess.fromConfig(config);
+        openedNanos = System.nanoTime();
+        if (process instanceof ArrivalProcess.Burst) {
+            for (int i = 0; i < config.customers; i++) {
+                if (!route().startCustomer(i)) {    //draining
+                    break;
+                }
+            }
+        } else {
+            arrivals = new ArrivalGenerator(process, rand.split(), this::shortestLine, config);
+            arrivals.run(id -> route().startCustomer(id));
+        }
+        for (Theater shard : shards) {
+            shard.drain();
+        }
+        closedNanos = System.nanoTime();
+        for (Theater shard : shards) {
+            shard.getLog().flush();
+        }
+    }
+
+    /**
+     * Picks the shard for the next arriving customer
+     */
+    private Theater route() {
+        int start = nextShard;
+        nextShard = (nextShard + 1) % shards.length;
+        switch (config.router) {
+            case RANDOM:
+                return shards[rand.nextInt(shards.length)];
+            case SHORTEST_LINE:
+                Theater best = shards[start];
+                for (int i = 1; i < shards.length; i++) {   //start from the round robin shard to spread ties
+                    Theater shard = shards[(start + i) % shards.length];
+                    if (shard.getBoxLine().getMetrics().getInLine() < best.getBoxLine().getMetrics().getInLine()) {
+                        best = shard;
+                    }
+                }
+                return best;
+            default:
+                return shards[start];
+        }
+    }
+
+    private int shortestLine() {
+        int shortest = Integer.MAX_VALUE;
+        for (Theater shard : shards) {
+            shortest = Math.min(shortest, shard.getBoxLine().getMetrics().getInLine());
+        }
+        return shortest;
+    }
+
+    /**
+     * Stops every shard, waits for their workers and shuts down their pools
+     */
+    public void shutdown() {
+        for (Theater shard : shards) {
+            shard.drain();  //a customer may still move to a shard that has let all of its own customers in
+        }
+        for (Theater shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Closes the event log of every shard
+     */
+    public void closeLogs() {
+        for (Theater shard : shards) {
+            shard.getLog().close();
+        }
+    }
+
+    /**
+     * Returns the totals of every shard combined once all customers have been let in and finished
+     *
+     * @return totals of the run, with wall-clock time converted to simulated time
+     */
+    public SimulationResult getResult() {
+        int people = 0;
+        int parties = 0;
+        int sold = 0;
+        int visits = 0;
+        int[] orders = new int[Customer.Food.values().length];
+        Histogram waits = new Histogram();
+        Histogram entryTimes = new Histogram();
+        for (Theater shard : shards) {
+            SimulationResult r = shard.getResult();
+            people += r.customers;
+            parties += r.parties;
+            sold += r.ticketsSold;
+            visits += r.concessionVisits;
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] += r.foodOrders[i];
+            }
+            waits.add(r.waits);
+            entryTimes.add(r.entryTimes);
+        }
+        double simulatedMillis = (closedNanos - openedNanos) / 1e6 * config.timeScale;
+        if (arrivals == null) {
+            return new SimulationResult(people, parties, sold, visits, orders, simulatedMillis, waits, entryTimes,
+                    0, 0, 0);
+        }
+        return new SimulationResult(people, parties, sold, visits, orders, simulatedMillis, waits, entryTimes,
+                arrivals.getTargetRatePerMinute(), arrivals.getArrivalSpanMillis(), arrivals.getHeldBack());
+    }
+
+    /**
+     * Returns how many customers went to another shard for seats
+     *
+     * @return customers transferred, counting each move
+     */
+    public int getTransfers() {
+        return transfers.get();
+    }
+
+    /**
+     * Prints what each shard sold and how many customers moved between shards
+     *
+     * @param out stream to print to
+     */
+    public void report(PrintStream out) {
+        out.printf("%-8s %9s %12s%n", "theater", "customers", "tickets sold");
+        for (int i = 0; i < shards.length; i++) {
+            SimulationResult r = shards[i].getResult();
+            out.printf("%-8d %9d %12d%n", i, r.parties, r.ticketsSold);
+        }
+        out.printf("%d customers went to another theater for seats%n", getTransfers());
+    }
+
+}
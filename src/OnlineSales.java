@@ -0,0 +1,305 @@
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A localhost HTTP endpoint selling tickets online while the threaded theater runs. It sells from the same Movie
+ * objects as the box office agents, so online buyers and customers in line compete for the same seats, and a seat can
+ * only be sold once however the two interleave.
+ *
+ * The JDK's HttpServer accepts and reads every connection on one selector thread, so thousands of open connections
+ * cost no thread each. A sale is a compare-and-set on the movie and never blocks, so handlers run on virtual threads
+ * when the JVM has them and on a small pool otherwise.
+ *
+ * GET /movies lists every showing as id, title, showtime and seats left, tab separated, and GET /movies?title=T only
+ * the showings of title T. POST /tickets?movie=ID&seats=N buys N seats of showing ID, and
+ * POST /tickets?title=T&time=HH:MM&seats=N of the showing of title T at that time, both looked up in the theater's
+ * MovieCatalog: 200 when sold, with the row and first seat under assigned seating, 409 when sold out or sales for the
+ * showing have closed, 404 for an unknown showing and 400 for a bad request.
+ *
+ * The server writes headers and body separately, which Nagle's algorithm holds up for a delayed ACK (about 40 ms)
+ * unless the JVM is launched with -Dsun.net.httpserver.nodelay=true. The mains that start a server call noDelay first.
+ *
+ */
+public class OnlineSales {
+
+    //connections waiting to be accepted before the kernel turns new ones away
+    private static final int BACKLOG = 4096;
+
+    private final Theater theater;
+    private final ArrayList<Movie> movies;
+    private final MovieCatalog catalog;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    //seats sold online of each showing
+    private final AtomicIntegerArray sold;
+    private final LongAdder requests;
+    private final LongAdder soldOut;
+    private final LongAdder closed;
+
+    /**
+     * Sets sun.net.httpserver.nodelay unless it was given at launch. The JDK reads it once, when the first HttpServer
+     * is created, so only mains should call this, and before creating one.
+     */
+    static void noDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Creates the endpoint of a theater. The theater should be open, so its clock tells which showings are still on
+     * sale.
+     *
+     * @param theater the theater whose movies are sold
+     * @param port local port to listen on, 0 for any free port
+     * @param threads threads running the handlers, 0 for a virtual thread per request or one per processor on JVMs
+     * without virtual threads
+     * @throws IOException if the port cannot be bound
+     */
+    public OnlineSales(Theater theater, int port, int threads) throws IOException {
+        this.theater = theater;
+        this.movies = theater.getMovies();
+        this.catalog = theater.getCatalog();
+        this.sold = new AtomicIntegerArray(movies.size());
+        this.requests = new LongAdder();
+        this.soldOut = new LongAdder();
+        this.closed = new LongAdder();
+        this.handlers = newHandlers(threads);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.setExecutor(handlers);
+        server.createContext("/movies", this::listMovies);
+        server.createContext("/tickets", this::buyTickets);
+    }
+
+    private static ExecutorService newHandlers(int threads) {
+        if (threads == 0) {
+            try {
+                ThreadFactory virtual = ThreadMode.VIRTUAL.newFactory();
+                return Executors.newCachedThreadPool(virtual);
+            } catch (UnsupportedOperationException ex) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Starts taking requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops taking requests, waiting at most a second for the ones being handled
+     */
+    public void stop() {
+        server.stop(1);
+        handlers.shutdown();
+    }
+
+    /**
+     * Returns the port the endpoint listens on
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the seats sold online of a showing
+     *
+     * @param movie id of the showing
+     * @return seats sold through this endpoint
+     */
+    int getSold(int movie) {
+        return sold.get(movie);
+    }
+
+    /**
+     * Returns the seats sold online of every showing together
+     *
+     * @return seats sold through this endpoint
+     */
+    int getSoldTotal() {
+        int total = 0;
+        for (int i = 0; i < sold.length(); i++) {
+            total += sold.get(i);
+        }
+        return total;
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    private void listMovies(HttpExchange exchange) {
+        requests.increment();
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, "use GET");
+            return;
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        List<Movie> listed = movies;
+        if (query != null && query.startsWith("title=")) {
+            listed = catalog.getShowings(decode(query.substring(6)));
+        }
+        StringBuilder body = new StringBuilder();
+        for (Movie movie : listed) {
+            body.append(movie.id).append('\t').append(movie.title).append('\t').append(showtime(movie)).append('\t')
+                    .append(movie.getTicketsAvaliable()).append('\n');
+        }
+        respond(exchange, 200, body.toString());
+    }
+
+    private static String showtime(Movie movie) {
+        return movie.showtime < 0 ? "-" : showtime(movie.showtime);
+    }
+
+    private static String showtime(int minutes) {
+        return String.format("%02d:%02d", minutes / 60, minutes % 60);
+    }
+
+    /**
+     * Parses HH:MM, or a plain number of minutes after midnight
+     */
+    private static int parseTime(String time) {
+        int colon = time.indexOf(':');
+        if (colon < 0) {
+            return Integer.parseInt(time);
+        }
+        int minutes = Integer.parseInt(time.substring(colon + 1));
+        if (minutes > 59) {
+            throw new NumberFormatException("bad minutes " + minutes);
+        }
+        return Integer.parseInt(time.substring(0, colon)) * 60 + minutes;
+    }
+
+    private static String decode(String param) {
+        return URLDecoder.decode(param, StandardCharsets.UTF_8);
+    }
+
+    private void buyTickets(HttpExchange exchange) {
+        requests.increment();
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "use POST");
+            return;
+        }
+        int id = -1;
+        int seats = -1;
+        String title = null;
+        int time = -1;
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                try {
+                    if (param.startsWith("movie=")) {
+                        id = Integer.parseInt(param.substring(6));
+                    } else if (param.startsWith("seats=")) {
+                        seats = Integer.parseInt(param.substring(6));
+                    } else if (param.startsWith("title=")) {
+                        title = decode(param.substring(6));
+                    } else if (param.startsWith("time=")) {
+                        time = parseTime(decode(param.substring(5)));
+                    }
+                } catch (IllegalArgumentException ex) {
+                    respond(exchange, 400, "bad " + param);
+                    return;
+                }
+            }
+        }
+        if (seats < 1 || seats > SeatMap.MAX_BLOCK) {
+            respond(exchange, 400, "seats must be 1 to " + SeatMap.MAX_BLOCK);
+            return;
+        }
+        Movie movie;
+        if (title != null) {
+            movie = catalog.find(title, time);
+            if (movie == null) {
+                respond(exchange, 404, "no showing of " + title + " at " + (time < 0 ? "-" : showtime(time)));
+                return;
+            }
+            id = movie.id;
+        } else if (id < 0 || id >= catalog.size()) {
+            respond(exchange, 404, "no showing " + id);
+            return;
+        } else {
+            movie = catalog.get(id);
+        }
+        Schedule schedule = theater.getSchedule();
+        if (schedule.isTimed() && !schedule.isOnSale(movie, theater.getTimeOfDay())) {
+            closed.increment();
+            respond(exchange, 409, "sales closed");
+            return;
+        }
+        if (movie.getSeatMap() != null) {
+            int block = movie.purchaseSeats(seats);
+            if (block == SeatMap.NONE) {
+                soldOut.increment();
+                respond(exchange, 409, "sold out");
+                return;
+            }
+            sold.addAndGet(id, seats);
+            theater.recordOnlineSale(seats);
+            respond(exchange, 200, "sold " + seats + " row " + (SeatMap.row(block) + 1) + " seat "
+                    + (SeatMap.seat(block) + 1));
+        } else if (movie.purchaseTicket(seats)) {
+            sold.addAndGet(id, seats);
+            theater.recordOnlineSale(seats);
+            respond(exchange, 200, "sold " + seats);
+        } else {
+            soldOut.increment();
+            respond(exchange, 409, "sold out");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) {
+        byte[] bytes = (body.endsWith("\n") ? body : body + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(OnlineSales.class.getName()).log(Level.FINE, null, ex);    //the buyer hung up
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Prints the requests taken and the seats sold online of every showing that sold any
+     *
+     * @param out stream to print to
+     */
+    public void report(PrintStream out) {
+        out.printf("Online sales: %d requests, %d seats sold, %d turned away sold out, %d after sales closed%n",
+                requests.sum(), getSoldTotal(), soldOut.sum(), closed.sum());
+        for (Movie movie : movies) {
+            if (sold.get(movie.id) > 0) {
+                out.printf("  %-30s %5s %6d of %6d sold online%n", movie.title, showtime(movie), sold.get(movie.id),
+                        movie.getTicketsSold());
+            }
+        }
+    }
+
+}
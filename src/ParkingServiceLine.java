@@ -0,0 +1,145 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ServiceLine handing off with LockSupport park and unpark instead of semaphores. A customer joins the queue without
+ * waiting and wakes an idle worker if there is one; a worker takes customers from the queue and parks when it is
+ * empty. Customers still wait in the queue in order, or in the order of a priority queue passed in.
+ *
+ */
+public class ParkingServiceLine extends ServiceLine {
+
+    //workers parked waiting for customers
+    private final Queue<Thread> idle;
+
+    /**
+     * Constructs a ParkingServiceLine
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     */
+    public ParkingServiceLine(String name, int workers, int batchSize) {
+        this(name, workers, batchSize, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Constructs a ParkingServiceLine whose workers take customers in the order of the given queue
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     * @param queue queue customers wait in, which must be safe to use from many threads
+     */
+    public ParkingServiceLine(String name, int workers, int batchSize, Queue<Customer> queue) {
+        super(name, workers, batchSize, Handoff.PARK, queue);
+        this.idle = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Called by a customer to join the line and wake an idle worker. Returns at once; the worker that takes the customer
+     * adds the time they waited to them.
+     *
+     * @param c the customer
+     */
+    @Override
+    void join(Customer c) {
+        metrics.joined();
+        queue.add(c);
+        Thread worker = idle.poll();
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Called by a worker to take the next customer, parking while the line is empty
+     *
+     * @param w the worker
+     * @return the customer to serve, or null if the worker should leave instead
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    Customer next(Worker w) throws InterruptedException {
+        Thread self = Thread.currentThread();
+        while (true) {
+            int r;
+            while ((r = retiring.get()) > 0) {  //asked to leave
+                if (retiring.compareAndSet(r, r - 1)) {
+                    return null;
+                }
+            }
+            Customer c = queue.poll();
+            if (c != null) {
+                return c;
+            }
+            idle.add(self);
+            if (!queue.isEmpty() || retiring.get() > 0) {   //a customer or a retire came before we were in idle
+                idle.remove(self);
+                continue;
+            }
+            LockSupport.park(this);
+            idle.remove(self);  //still there if the wake up was spurious
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    int nextBatch(Worker w, Customer[] batch) throws InterruptedException {
+        Customer first = next(w);
+        if (first == null) {
+            return 0;
+        }
+        batch[0] = first;
+        int count = 1;
+        Customer c;
+        while (count < batchSize && (c = queue.poll()) != null) {
+            batch[count++] = c;
+        }
+        return count;
+    }
+
+    @Override
+    void freePlaces(int count) {
+        //customers join without waiting for a place
+    }
+
+    @Override
+    int hire() {
+        workers.incrementAndGet();
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Asks one idle worker to leave. The line keeps at least one worker, and busy workers are never interrupted.
+     *
+     * @return if a worker was idle and will leave
+     */
+    @Override
+    boolean retire() {
+        if (workers.get() <= 1) {
+            return false;
+        }
+        Thread worker = idle.poll();
+        if (worker == null) {
+            return false;
+        }
+        workers.decrementAndGet();
+        retiring.incrementAndGet();
+        LockSupport.unpark(worker);
+        return true;
+    }
+
+    @Override
+    void close() {
+        retiring.addAndGet(workers.getAndSet(0));
+        Thread worker;
+        while ((worker = idle.poll()) != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+}
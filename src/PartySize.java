@@ -0,0 +1,134 @@
+import java.util.SplittableRandom;
+
+/**
+ * A distribution of how many people arrive together as one party
+ *
+ */
+public class PartySize {
+
+    //party sizes and the chance of each, as a running total ending at 1
+    private final int[] sizes;
+    private final double[] cumulative;
+
+    /**
+     * Constructs a PartySize where every party has the same size
+     *
+     * @param size people in every party
+     */
+    public PartySize(int size) {
+        this(new int[]{size}, new double[]{1});
+    }
+
+    /**
+     * Constructs a PartySize from sizes and their weights
+     *
+     * @param sizes possible party sizes
+     * @param weights relative chance of each size
+     */
+    public PartySize(int[] sizes, double[] weights) {
+        double total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] < 1 || weights[i] < 0) {
+                throw new IllegalArgumentException("Bad party size " + sizes[i] + " with weight " + weights[i]);
+            }
+            total += weights[i];
+        }
+        if (sizes.length == 0 || total <= 0) {
+            throw new IllegalArgumentException("Party size needs at least one size with a positive weight");
+        }
+        this.sizes = sizes.clone();
+        this.cumulative = new double[sizes.length];
+        double sum = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum / total;
+        }
+    }
+
+    /**
+     * Parses a party size written as a fixed size such as 4, a range such as 1-6 where every size is equally likely,
+     * or weighted sizes such as 1:0.5,2:0.3,4:0.2
+     *
+     * @param spec the party size
+     * @return the matching PartySize
+     */
+    public static PartySize parse(String spec) {
+        spec = spec.trim();
+        if (spec.contains(":")) {
+            String[] parts = spec.split(",");
+            int[] sizes = new int[parts.length];
+            double[] weights = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                String[] kv = parts[i].split(":");
+                sizes[i] = Integer.parseInt(kv[0].trim());
+                weights[i] = Double.parseDouble(kv[1].trim());
+            }
+            return new PartySize(sizes, weights);
+        }
+        String[] range = spec.split("-");
+        if (range.length == 2) {
+            int min = Integer.parseInt(range[0].trim());
+            int max = Integer.parseInt(range[1].trim());
+            int[] sizes = new int[Math.max(0, max - min + 1)];
+            double[] weights = new double[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = min + i;
+                weights[i] = 1;
+            }
+            return new PartySize(sizes, weights);
+        }
+        return new PartySize(Integer.parseInt(spec));
+    }
+
+    /**
+     * Draws one party size. A fixed size does not use the random generator.
+     *
+     * @param rand random generator of the caller
+     * @return people in the party
+     */
+    public int sample(SplittableRandom rand) {
+        if (sizes.length == 1) {
+            return sizes[0];
+        }
+        double r = rand.nextDouble();
+        for (int i = 0; i < sizes.length - 1; i++) {
+            if (r < cumulative[i]) {
+                return sizes[i];
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    /**
+     * Returns the average party size
+     *
+     * @return mean people per party
+     */
+    public double getMean() {
+        double mean = 0;
+        double previous = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            mean += sizes[i] * (cumulative[i] - previous);
+            previous = cumulative[i];
+        }
+        return mean;
+    }
+
+    /**
+     * Returns the party size as a string
+     * @return the party size in the format parse accepts
+     */
+    public String toString() {
+        if (sizes.length == 1) {
+            return String.valueOf(sizes[0]);
+        }
+        StringBuilder sb = new StringBuilder();
+        double previous = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(sizes[i]).append(':').append(cumulative[i] - previous);
+            previous = cumulative[i];
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,609 @@
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the theater in real time without a thread per customer or per worker. A customer is a small state object that
+ * moves from stage to stage, and every service is a CompletableFuture that completes once the scaled service time has
+ * passed, so no thread ever sleeps or waits on a semaphore. A few carrier threads run everything.
+ *
+ * Each stage has a fixed number of servers, the workers of the threaded Theater. Customers arrive through a
+ * Flow.Publisher that only hands the box office as many customers as it asks for: when everyone arrives at once the
+ * customers not yet in front of an agent are not even created, and with a line.capacity arrivals are held back like
+ * the ArrivalGenerator does. The ticket taker and concession lines hold at most stage.capacity customers. When a line
+ * is full, the server upstream keeps the customer it just finished with and serves no one else until there is room.
+ *
+ * Customers decide their movie, party size and food when they arrive, with the same odds as a threaded Customer.
+ * Autoscaling is not supported.
+ *
+ */
+public class ReactiveTheater {
+
+    private static final int BOX = TheaterConfig.BOX;
+    private static final int TICKET = TheaterConfig.TICKET;
+    private static final int CONCESSION = TheaterConfig.CONCESSION;
+    private static final Customer.Food[] FOODS = Customer.Food.values();
+
+    private final TheaterConfig config;
+    private final List<Movie> movies;
+    private final EventLog log;
+    private final SplittableRandom rand;
+    private final ExecutorService carriers;
+    private final Stage[] stages;
+    private final Arrivals arrivals;
+
+    //orders of each kind of food, and how long every admitted customer waited and took to get in, in simulated ms
+    private final AtomicIntegerArray foodOrders;
+    private final Histogram waits;
+    private final Histogram entryTimes;
+    //people that arrived, customers done, and customers that arrived or -1 while they still arrive
+    private final AtomicInteger people;
+    private final AtomicInteger finished;
+    private volatile int total = -1;
+    private final AtomicBoolean closing;
+    private final CompletableFuture<SimulationResult> done;
+    private long openedNanos;
+    private long closedNanos;
+
+    /**
+     * A customer's way through the theater
+     */
+    private static final class Visit {
+
+        final int id;
+        final Movie movie;
+        final int partySize;
+        //Customer.Food ordinal the customer will order, or -1 to skip the concession stand
+        final byte food;
+        final long arrivedNanos;
+        long lineSinceNanos;
+        long waitNanos;
+
+        Visit(int id, Movie movie, int partySize, int food, long arrivedNanos) {
+            this.id = id;
+            this.movie = movie;
+            this.partySize = partySize;
+            this.food = (byte) food;
+            this.arrivedNanos = arrivedNanos;
+            this.lineSinceNanos = arrivedNanos;
+        }
+    }
+
+    /**
+     * Customers one server serves together, and how many of them still keep the server busy
+     */
+    private static final class Batch {
+
+        final Stage stage;
+        final int server;
+        final Visit[] visits;
+        final long startNanos;
+        long serviceNanos;
+        //visits not yet taken by the next stage, plus one until the server is done handing them on
+        final AtomicInteger holding;
+
+        Batch(Stage stage, int server, Visit[] visits, long startNanos) {
+            this.stage = stage;
+            this.server = server;
+            this.visits = visits;
+            this.startNanos = startNanos;
+            this.holding = new AtomicInteger(visits.length + 1);
+        }
+    }
+
+    /**
+     * Constructs a ReactiveTheater
+     *
+     * @param config settings of the run, mode and autoscaling settings are ignored
+     * @param movies movies showing, their seats are sold by the run
+     * @param logStream stream events are logged to
+     */
+    public ReactiveTheater(TheaterConfig config, List<Movie> movies, OutputStream logStream) {
+        this.config = config;
+        this.movies = movies;
+        this.log = new EventLog(config.log, logStream, movies);
+        this.rand = new SplittableRandom(config.seed);
+        int threads = config.carrierThreads > 0 ? config.carrierThreads : Runtime.getRuntime().availableProcessors();
+        this.carriers = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        int stageCapacity = config.stageCapacity > 0 ? config.stageCapacity : Integer.MAX_VALUE;
+        ArrivalProcess process;
+        try {
+            process = ArrivalProcess.fromConfig(config);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        boolean burst = process instanceof ArrivalProcess.Burst;
+        //customers arriving at once wait in the publisher until an agent is free, others wait in line
+        int boxCapacity = config.lineCapacity > 0 ? config.lineCapacity : burst ? 0 : Integer.MAX_VALUE;
+        this.stages = new Stage[]{
+            new Stage(BOX, "Box office", 1, boxCapacity),
+            new Stage(TICKET, "Ticket taker", config.batchSize, stageCapacity),
+            new Stage(CONCESSION, "Concession stand", config.batchSize, stageCapacity)};
+        this.arrivals = new Arrivals(process, burst);
+        this.foodOrders = new AtomicIntegerArray(FOODS.length);
+        this.waits = new Histogram();
+        this.entryTimes = new Histogram();
+        this.people = new AtomicInteger();
+        this.finished = new AtomicInteger();
+        this.closing = new AtomicBoolean();
+        this.done = new CompletableFuture<>();
+    }
+
+    EventLog getLog() {
+        return log;
+    }
+
+    /**
+     * Returns the wait time, service time and line length metrics of every stage
+     *
+     * @return metrics of the box office, ticket taker and concession stand lines
+     */
+    public TheaterMetrics getMetrics() {
+        return new TheaterMetrics(stages[BOX].metrics, stages[TICKET].metrics, stages[CONCESSION].metrics);
+    }
+
+    /**
+     * Opens the theater and lets customers in without waiting for them
+     *
+     * @return completes with the totals of the run once every customer has entered the theater or left
+     */
+    public CompletableFuture<SimulationResult> start() {
+        openedNanos = System.nanoTime();
+        arrivals.subscribe(stages[BOX]);
+        return done.whenComplete((r, ex) -> carriers.shutdown());
+    }
+
+    /**
+     * Runs the theater until every customer has entered the theater or left
+     *
+     * @return totals of the run, with wall-clock time converted to simulated time
+     */
+    public SimulationResult run() {
+        return start().join();
+    }
+
+    /**
+     * Returns the executor that runs a service after a delay, or right away
+     */
+    private Executor after(long nanos) {
+        return nanos <= 0 ? carriers : CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS, carriers);
+    }
+
+    /**
+     * Counts a customer that entered the theater or left
+     */
+    private void finish() {
+        if (finished.incrementAndGet() == total) {
+            close();
+        }
+    }
+
+    /**
+     * Records that the last customer has arrived
+     *
+     * @param count number of customers that arrived
+     */
+    private void arrivalsDone(int count) {
+        total = count;
+        if (finished.get() == count) {
+            close();
+        }
+    }
+
+    private void close() {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        closedNanos = System.nanoTime();
+        log.flush();
+        done.complete(getResult());
+    }
+
+    private void fail(Throwable ex) {
+        Logger.getLogger(ReactiveTheater.class.getName()).log(Level.SEVERE, null, ex);
+        done.completeExceptionally(ex);
+    }
+
+    private SimulationResult getResult() {
+        int sold = 0;
+        for (Movie movie : movies) {
+            sold += movie.getTicketsSold();
+        }
+        int[] orders = new int[foodOrders.length()];
+        int visits = 0;
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = foodOrders.get(i);
+            visits += orders[i];
+        }
+        double simulatedMillis = (closedNanos - openedNanos) / 1e6 * config.timeScale;
+        if (arrivals.burst) {
+            return new SimulationResult(people.get(), total, sold, visits, orders, simulatedMillis, waits, entryTimes,
+                    0, 0, 0);
+        }
+        return new SimulationResult(people.get(), total, sold, visits, orders, simulatedMillis, waits, entryTimes,
+                arrivals.process.getTargetRatePerMinute(),
+                (arrivals.lastNanos - arrivals.firstNanos) / 1e6 * config.timeScale, arrivals.heldBack);
+    }
+
+    /**
+     * Decides where a customer goes after being served at a stage
+     *
+     * @param stage stage that served the customer
+     * @param v the customer
+     * @param server ID of the server that served the customer
+     * @return the next stage, or -1 if the customer entered the theater or left
+     */
+    private int route(int stage, Visit v, int server) {
+        switch (stage) {
+            case BOX:
+                if (!v.movie.purchaseTicket(v.partySize)) { //whole party or no one
+                    log.log(EventLog.Type.BOX_NOT_SOLD, v.id, server, v.movie.id);
+                    log.log(EventLog.Type.NO_TICKET, v.id, -1, v.movie.id);
+                    return -1;
+                }
+                log.log(EventLog.Type.BOX_SOLD, v.id, server, v.movie.id);
+                log.log(EventLog.Type.TICKET_LINE, v.id, -1, -1);
+                return TICKET;
+            case TICKET:
+                log.log(EventLog.Type.TICKET_TAKEN, v.id, server, -1);
+                if (v.food >= 0) {
+                    foodOrders.incrementAndGet(v.food);
+                    log.log(EventLog.Type.CONCESSION_LINE, v.id, -1, v.food);
+                    return CONCESSION;
+                }
+                break;
+            default:
+                log.log(EventLog.Type.FOOD_GIVEN, v.id, server, v.food);
+                break;
+        }
+        log.log(EventLog.Type.ENTERED, v.id, -1, v.movie.id);
+        waits.record((long) (v.waitNanos / 1e6 * config.timeScale));   //in double, huge time scales overflow a long
+        entryTimes.record((long) ((System.nanoTime() - v.arrivedNanos) / 1e6 * config.timeScale));
+        return -1;
+    }
+
+    /**
+     * A line and the servers working it. All fields are guarded by the stage's lock, and no stage calls another while
+     * holding its own lock.
+     */
+    private final class Stage implements Flow.Subscriber<Visit> {
+
+        final int index;
+        final StageMetrics metrics;
+        final int batchSize;
+        //most customers waiting in line before the stage pushes back
+        final int capacity;
+        final SplittableRandom rand;
+        final ArrayDeque<Visit> line;
+        //customers served upstream that wait for room in line, and the batches whose servers they keep busy
+        final ArrayDeque<Visit> blocked;
+        final ArrayDeque<Batch> holders;
+        //IDs of the idle servers
+        final int[] idle;
+        int idleCount;
+        //arrivals asked for and not yet delivered, box office only
+        Flow.Subscription subscription;
+        long requested;
+
+        Stage(int index, String name, int batchSize, int capacity) {
+            this.index = index;
+            this.metrics = new StageMetrics(name);
+            this.batchSize = batchSize;
+            this.capacity = capacity;
+            this.rand = ReactiveTheater.this.rand.split();
+            this.line = new ArrayDeque<>();
+            this.blocked = new ArrayDeque<>();
+            this.holders = new ArrayDeque<>();
+            this.idle = new int[config.workers[index]];
+            for (int i = idle.length - 1; i >= 0; i--) {
+                idle[idleCount++] = i;
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (this) {
+                this.subscription = subscription;
+            }
+            if (capacity == Integer.MAX_VALUE) {
+                subscription.request(Long.MAX_VALUE);   //open workload, the line never pushes back
+            } else {
+                dispatch();
+            }
+        }
+
+        @Override
+        public void onNext(Visit v) {
+            synchronized (this) {
+                requested--;
+            }
+            offer(v, null);
+        }
+
+        @Override
+        public void onError(Throwable ex) {
+            fail(ex);
+        }
+
+        @Override
+        public void onComplete() {
+            arrivalsDone(arrivals.emitted);
+        }
+
+        /**
+         * Puts a customer in line, or keeps them waiting upstream if the line is full
+         *
+         * @param v the customer
+         * @param holder batch the customer came from, null for arrivals which were asked for
+         */
+        void offer(Visit v, Batch holder) {
+            boolean accepted;
+            synchronized (this) {
+                metrics.joined();
+                accepted = holder == null || blocked.isEmpty() && (line.size() < capacity || idleCount > 0);
+                if (accepted) {
+                    line.add(v);
+                } else {
+                    blocked.add(v);
+                    holders.add(holder);
+                }
+            }
+            if (accepted) {
+                if (holder != null) {
+                    release(holder);
+                }
+                dispatch();
+            }
+        }
+
+        /**
+         * Gives a server back once every customer of its batch has been handed on
+         */
+        void release(Batch b) {
+            if (b.holding.decrementAndGet() == 0) {
+                b.stage.idle(b.server);
+            }
+        }
+
+        void idle(int server) {
+            synchronized (this) {
+                idle[idleCount++] = server;
+            }
+            dispatch();
+        }
+
+        /**
+         * Starts service wherever a server is idle, lets blocked customers in where there is room and asks for more
+         * arrivals
+         */
+        void dispatch() {
+            List<Batch> started = new ArrayList<>();
+            List<Batch> unblocked = new ArrayList<>();
+            long want = 0;
+            Flow.Subscription arrivalsWanted = null;
+            synchronized (this) {
+                long now = System.nanoTime();
+                boolean moved = true;
+                while (moved) {
+                    while (idleCount > 0 && !line.isEmpty()) {
+                        Visit[] visits = new Visit[Math.min(batchSize, line.size())];
+                        int[] orders = new int[FOODS.length];
+                        int tickets = 0;
+                        for (int i = 0; i < visits.length; i++) {
+                            Visit v = line.poll();
+                            long wait = now - v.lineSinceNanos;
+                            v.waitNanos += wait;
+                            metrics.left(wait);
+                            tickets += v.partySize;
+                            if (v.food >= 0) {
+                                orders[v.food]++;
+                            }
+                            visits[i] = v;
+                        }
+                        double units = index == TICKET ? TicketTaker.batchUnits(tickets)
+                                : index == CONCESSION ? ConcessionWorker.batchUnits(orders) : 1;
+                        Batch b = new Batch(this, idle[--idleCount], visits, now);
+                        b.serviceNanos = (long) (config.serviceTimes[index].sample(rand) * units * 1e6
+                                / config.timeScale);
+                        started.add(b);
+                    }
+                    moved = false;
+                    while (!blocked.isEmpty() && line.size() < capacity) {
+                        line.add(blocked.poll());
+                        unblocked.add(holders.poll());
+                        moved = true;
+                    }
+                }
+                if (subscription != null && capacity != Integer.MAX_VALUE) {
+                    want = (long) idleCount + capacity - line.size() - requested;
+                    if (want > 0) {
+                        requested += want;
+                        arrivalsWanted = subscription;
+                    }
+                }
+            }
+            for (Batch b : started) {
+                serve(b);
+            }
+            for (Batch b : unblocked) {
+                release(b);
+            }
+            if (arrivalsWanted != null) {
+                arrivalsWanted.request(want);
+            }
+        }
+
+        private void serve(Batch b) {
+            for (Visit v : b.visits) {
+                if (index == BOX) {
+                    log.log(EventLog.Type.BOX_SERVING, v.id, b.server, -1);
+                } else if (index == CONCESSION) {
+                    log.log(EventLog.Type.FOOD_ORDERED, v.id, b.server, v.food);
+                }
+            }
+            CompletableFuture.supplyAsync(() -> b, after(b.serviceNanos))
+                    .thenAccept(this::served)
+                    .whenComplete((r, ex) -> {
+                        if (ex != null) {
+                            fail(ex);
+                        }
+                    });
+        }
+
+        /**
+         * Hands every customer of a finished batch on to their next stage
+         */
+        private void served(Batch b) {
+            long now = System.nanoTime();
+            metrics.served(b.server, now - b.startNanos);
+            for (Visit v : b.visits) {
+                int next = route(index, v, b.server);
+                if (next < 0) {
+                    release(b);
+                    finish();
+                } else {
+                    v.lineSinceNanos = now;
+                    stages[next].offer(v, b);
+                }
+            }
+            release(b);  //done handing on
+        }
+    }
+
+    /**
+     * Publishes arriving customers on the schedule of the arrival process, but never more than the box office asked
+     * for. An arrival nobody asked for is held back and the rest of the schedule slides with it.
+     */
+    private final class Arrivals implements Flow.Publisher<Visit>, Flow.Subscription {
+
+        final ArrivalProcess process;
+        final boolean burst;
+        private final SplittableRandom rand;
+        private final AtomicLong demand;
+        //threads that want to emit, only the first one does and repeats while others asked it to
+        private final AtomicInteger wip;
+        private Flow.Subscriber<? super Visit> subscriber;
+        private volatile boolean cancelled;
+
+        //only touched by the emitting thread, read once the run is done
+        int emitted;
+        int heldBack;
+        long firstNanos;
+        long lastNanos;
+        private long nextMillis;
+        private long shiftNanos;
+        private long holdingSince = -1;
+        private long wakeAt = -1;
+        private boolean completed;
+
+        Arrivals(ArrivalProcess process, boolean burst) {
+            this.process = process;
+            this.burst = burst;
+            this.rand = ReactiveTheater.this.rand.split();
+            this.demand = new AtomicLong();
+            this.wip = new AtomicInteger();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Visit> subscriber) {
+            this.subscriber = subscriber;
+            nextMillis = config.customers > 0 ? process.nextArrival(0, rand) : -1;
+            subscriber.onSubscribe(this);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                subscriber.onError(new IllegalArgumentException("request must be positive"));
+                return;
+            }
+            demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                emit();
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void emit() {
+            while (!completed && !cancelled) {
+                if (emitted >= config.customers || nextMillis < 0) {
+                    completed = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                long now = System.nanoTime();
+                long due = burst ? openedNanos : openedNanos + shiftNanos + nextMillis * 1000000 / config.timeScale;
+                if (due > now) {
+                    if (wakeAt != due) {
+                        wakeAt = due;
+                        after(due - now).execute(this::drain);
+                    }
+                    return;
+                }
+                if (demand.get() == 0) {
+                    if (!burst && holdingSince < 0) { //line is full, hold the arrival back
+                        holdingSince = now;
+                        heldBack++;
+                    }
+                    return;
+                }
+                if (holdingSince >= 0) {
+                    shiftNanos += now - holdingSince;
+                    holdingSince = -1;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                if (emitted == 0) {
+                    firstNanos = now;
+                }
+                lastNanos = now;
+                Visit v = arrive(emitted++, burst ? openedNanos : now);
+                nextMillis = emitted < config.customers ? process.nextArrival(nextMillis, rand) : -1;
+                subscriber.onNext(v);
+            }
+        }
+
+        private Visit arrive(int id, long now) {
+            Movie movie = movies.get(rand.nextInt(movies.size()));
+            int partySize = config.partySize.sample(rand);
+            int food = -1;
+            if (rand.nextFloat() <= 0.5) {  //decide to visit concessions
+                food = rand.nextInt(FOODS.length);
+            }
+            people.addAndGet(partySize);
+            log.log(EventLog.Type.CUSTOMER_CREATED, id, -1, movie.id);
+            return new Visit(id, movie, partySize, food, now);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * The showings of a day, by title and by screen in time order. Ticket sales for a showing close at its showtime, less
+ * sales.close.min, so a customer is sold the next showing of their title that is still on sale and has room for them.
+ * The showings of a title come from the MovieCatalog, sorted by showtime, so the first one still on sale is found by
+ * binary search. The showings after it are then tried in time order, so a lookup also costs one test for every
+ * showing turned down on the way, such as a sold out one, and is linear in the showings of the title when all of them
+ * are full.
+ *
+ * Showings without a showtime are never offered in place of another and are always on sale, so a movie file without
+ * showtimes works as it always has.
+ *
+ */
+public class Schedule {
+
+    private final int closeBeforeMinutes;
+    //showings of each title sorted by showtime
+    private final MovieCatalog catalog;
+    //showings on each screen by showtime
+    private final TreeMap<Integer, TreeMap<Integer, Movie>> byScreen;
+    //if any showing has a showtime
+    private final boolean timed;
+
+    /**
+     * Builds the schedule of the showings in a catalog
+     *
+     * @param catalog every showing, as loaded from the movie file
+     * @param closeBeforeMinutes minutes before a showtime ticket sales close
+     * @throws IllegalArgumentException if two showings are on the same screen at the same time
+     */
+    public Schedule(MovieCatalog catalog, int closeBeforeMinutes) {
+        this.closeBeforeMinutes = closeBeforeMinutes;
+        this.catalog = catalog;
+        this.byScreen = new TreeMap<>();
+        boolean anyTimed = false;
+        for (Movie movie : catalog.getMovies()) {
+            if (movie.showtime < 0) {
+                continue;
+            }
+            anyTimed = true;
+            if (movie.screen >= 0) {
+                Movie other = byScreen.computeIfAbsent(movie.screen, s -> new TreeMap<>())
+                        .putIfAbsent(movie.showtime, movie);
+                if (other != null) {
+                    throw new IllegalArgumentException("Showings " + other.id + " and " + movie.id
+                            + " are both on screen " + movie.screen + " at minute " + movie.showtime);
+                }
+            }
+        }
+        this.timed = anyTimed;
+    }
+
+    /**
+     * Builds the schedule of showings that are not in a catalog yet
+     *
+     * @param movies every showing, the list index of a showing being its ID
+     * @param closeBeforeMinutes minutes before a showtime ticket sales close
+     * @throws IllegalArgumentException if two showings are on the same screen at the same time
+     */
+    public Schedule(List<Movie> movies, int closeBeforeMinutes) {
+        this(MovieCatalog.of(movies), closeBeforeMinutes);
+    }
+
+    /**
+     * Returns if any showing has a showtime, so sales close during the day
+     *
+     * @return if the day has a schedule
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Returns if tickets for a showing can still be sold
+     *
+     * @param movie the showing
+     * @param timeOfDay minutes after midnight
+     * @return if the showing has no showtime or its sales have not closed yet
+     */
+    public boolean isOnSale(Movie movie, int timeOfDay) {
+        return movie.showtime < 0 || timeOfDay < movie.showtime - closeBeforeMinutes;
+    }
+
+    /**
+     * Finds the earliest showing of a title that is still on sale and accepted by a test, such as having seats for a
+     * party. Showings at the same time are tried from the lowest screen.
+     *
+     * @param title title of the movie
+     * @param timeOfDay minutes after midnight
+     * @param accept test for a showing, usually whether it has enough seats left
+     * @return the showing, or null if every later showing of the title was turned down
+     */
+    public Movie next(String title, int timeOfDay, Predicate<Movie> accept) {
+        Movie[] showings = catalog.showings(title);
+        if (showings == null) {
+            return null;
+        }
+        //on sale while the time of day is before the showtime less the closing minutes
+        for (int i = MovieCatalog.indexOf(showings, timeOfDay + closeBeforeMinutes + 1); i < showings.length; i++) {
+            if (accept.test(showings[i])) {
+                return showings[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Chooses the showing a customer buys: the one they drew if it has no showtime, otherwise the next showing of its
+     * title that is on sale with seats for the party, or the one they drew if there is none so the box office turns
+     * them away
+     *
+     * @param drawn the showing the customer drew
+     * @param timeOfDay minutes after midnight
+     * @param partySize people in the party
+     * @return the showing to buy tickets for
+     */
+    public Movie choose(Movie drawn, int timeOfDay, int partySize) {
+        if (drawn.showtime < 0) {
+            return drawn;
+        }
+        Movie next = next(drawn.title, timeOfDay, m -> m.getTicketsAvaliable() >= partySize);
+        return next == null ? drawn : next;
+    }
+
+    /**
+     * Returns the showings on a screen
+     *
+     * @param screen screen number
+     * @return showings by showtime, empty if nothing is on the screen
+     */
+    public NavigableMap<Integer, Movie> getShowings(int screen) {
+        TreeMap<Integer, Movie> showings = byScreen.get(screen);
+        return showings == null ? Collections.emptyNavigableMap() : Collections.unmodifiableNavigableMap(showings);
+    }
+
+    /**
+     * Returns every screen with a showing
+     *
+     * @return screen numbers in order
+     */
+    public List<Integer> getScreens() {
+        return new ArrayList<>(byScreen.keySet());
+    }
+
+    /**
+     * Prints the showings, seats and seats sold of every screen, given the tickets sold of each showing
+     *
+     * @param out stream to print to
+     * @param sold tickets sold by showing ID
+     */
+    public void report(PrintStream out, int[] sold) {
+        out.printf("%-7s %9s %12s %12s %10s%n", "screen", "showings", "seats", "sold", "occupancy");
+        for (Map.Entry<Integer, TreeMap<Integer, Movie>> screen : byScreen.entrySet()) {
+            long seats = 0;
+            long screenSold = 0;
+            for (Movie showing : screen.getValue().values()) {
+                seats += showing.getCapacity();
+                screenSold += sold[showing.id];
+            }
+            out.printf("%-7d %9d %12d %12d %9.1f%%%n", screen.getKey(), screen.getValue().size(), seats, screenSold,
+                    seats == 0 ? 0 : screenSold * 100.0 / seats);
+        }
+    }
+
+}
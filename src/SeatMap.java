@@ -0,0 +1,275 @@
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The seats of one auditorium as a bitset, one bit per seat set while the seat is sold or held. Every row starts on a
+ * new 64-bit word, so a block of adjacent seats never spans two rows, and bits past the end of a row stay set.
+ *
+ * Finding a block of n free seats works on whole words: shifting the free bits of a row against themselves n - 1
+ * times leaves a bit set wherever n free seats start, and the start nearest the middle of the row comes from one
+ * count of leading or trailing zeros. Rows are tried from the best row, two thirds of the way back, outwards. The
+ * block is then claimed with a compare-and-set on each word it covers, and the search starts over if another agent
+ * got there first, so many agents can sell seats at once without a lock.
+ *
+ */
+public class SeatMap {
+
+    //returned when no block of seats was found
+    public static final int NONE = -1;
+    //most seats one block can have, so a block covers at most two words
+    public static final int MAX_BLOCK = 64;
+
+    private final int seatsPerRow;
+    private final int rowWords;
+    //seats in each row, only the last row can be short
+    private final int[] rowSeats;
+    //rows in the order they are tried, best first
+    private final int[] rowOrder;
+    private final AtomicLongArray words;
+
+    /**
+     * Constructs an empty SeatMap
+     *
+     * @param seats seats in the auditorium
+     * @param seatsPerRow seats in every row, the last row may have fewer
+     */
+    public SeatMap(int seats, int seatsPerRow) {
+        if (seatsPerRow < 1 || seatsPerRow > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Rows must have 1 to " + Short.MAX_VALUE + " seats");
+        }
+        int rows = Math.max(1, (int) (((long) seats + seatsPerRow - 1) / seatsPerRow));
+        if (rows > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(seats + " seats need more than " + Short.MAX_VALUE + " rows");
+        }
+        this.seatsPerRow = seatsPerRow;
+        this.rowWords = (seatsPerRow + 63) >>> 6;
+        this.rowSeats = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            rowSeats[r] = Math.min(seatsPerRow, seats - r * seatsPerRow);
+        }
+        this.rowOrder = new int[rows];
+        int best = rows * 2 / 3;
+        rowOrder[0] = best;
+        for (int i = 1, back = best + 1, front = best - 1; i < rows; i++) {
+            //alternate behind and in front of the best row, behind first
+            if (back < rows && (front < 0 || back - best <= best - front)) {
+                rowOrder[i] = back++;
+            } else {
+                rowOrder[i] = front--;
+            }
+        }
+        this.words = new AtomicLongArray(rows * rowWords);
+        reset();
+    }
+
+    /**
+     * Frees every seat
+     */
+    public void reset() {
+        for (int r = 0; r < rowSeats.length; r++) {
+            for (int w = 0; w < rowWords; w++) {
+                int from = Math.max(0, rowSeats[r] - w * 64);   //seats of the row in this word
+                words.set(r * rowWords + w, from >= 64 ? 0 : -1L << from);
+            }
+        }
+    }
+
+    /**
+     * Returns the row of a block
+     *
+     * @param block a block returned by allocate
+     * @return row number from the front, starting at 0
+     */
+    public static int row(int block) {
+        return block >>> 16;
+    }
+
+    /**
+     * Returns the first seat of a block in its row
+     *
+     * @param block a block returned by allocate
+     * @return seat number from the left, starting at 0
+     */
+    public static int seat(int block) {
+        return block & 0xFFFF;
+    }
+
+    /**
+     * Finds the best free block of adjacent seats in one row and takes it
+     *
+     * @param n number of seats
+     * @return the block, see row and seat, or NONE if no row has n adjacent free seats
+     */
+    public int allocate(int n) {
+        if (n < 1 || n > MAX_BLOCK || n > seatsPerRow) {
+            return NONE;
+        }
+        while (true) {
+            int block = find(n);
+            if (block == NONE || claim(row(block), seat(block), n)) {
+                return block;
+            }
+        }
+    }
+
+    /**
+     * Finds the best free block without taking it
+     */
+    private int find(int n) {
+        for (int row : rowOrder) {
+            if (rowSeats[row] < n) {
+                continue;
+            }
+            int seat = findInRow(row, n);
+            if (seat != NONE) {
+                return (row << 16) | seat;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the free block of n seats in a row whose start is nearest the one that centers it
+     *
+     * @return first seat of the block, or NONE
+     */
+    private int findInRow(int row, int n) {
+        int base = row * rowWords;
+        int target = (rowSeats[row] - n) / 2;
+        int best = NONE;
+        int bestDistance = Integer.MAX_VALUE;
+        long free = ~words.get(base);
+        for (int w = 0; w < rowWords; w++) {
+            long nextFree = w + 1 < rowWords ? ~words.get(base + w + 1) : 0;
+            long starts = free;
+            for (int j = 1; j < n && starts != 0; j++) {   //seat j after each start must be free too
+                starts &= (free >>> j) | (nextFree << (64 - j));
+            }
+            if (starts != 0) {
+                int seat = nearest(starts, target - w * 64) + w * 64;
+                int distance = Math.abs(seat - target);
+                if (distance < bestDistance) {
+                    best = seat;
+                    bestDistance = distance;
+                    if (distance == 0) {
+                        break;
+                    }
+                }
+            }
+            free = nextFree;
+        }
+        return best;
+    }
+
+    /**
+     * Returns the set bit of a non-zero word nearest a bit position, which may be outside the word
+     */
+    private static int nearest(long bits, int target) {
+        if (target <= 0) {
+            return Long.numberOfTrailingZeros(bits);
+        }
+        if (target >= 64) {
+            return 63 - Long.numberOfLeadingZeros(bits);
+        }
+        long above = bits & (-1L << target);
+        long below = bits & ((1L << target) - 1);
+        int up = above == 0 ? Integer.MAX_VALUE : Long.numberOfTrailingZeros(above);
+        int down = below == 0 ? Integer.MIN_VALUE / 2 : 63 - Long.numberOfLeadingZeros(below);
+        return up - target <= target - down ? up : down;
+    }
+
+    /**
+     * Sets the bits of a block if they are all still free, one word at a time, undoing the first word if the second
+     * was taken meanwhile
+     *
+     * @return if the block was taken
+     */
+    private boolean claim(int row, int seat, int n) {
+        int word = row * rowWords + (seat >>> 6);
+        int bit = seat & 63;
+        long first = mask(bit, Math.min(n, 64 - bit));
+        if (!setBits(word, first)) {
+            return false;
+        }
+        if (bit + n > 64 && !setBits(word + 1, mask(0, bit + n - 64))) {
+            clearBits(word, first);
+            return false;
+        }
+        return true;
+    }
+
+    private static long mask(int from, int count) {
+        return count == 64 ? -1L : ((1L << count) - 1) << from;
+    }
+
+    private boolean setBits(int word, long mask) {
+        while (true) {
+            long current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+
+    private void clearBits(int word, long mask) {
+        words.accumulateAndGet(word, ~mask, (current, keep) -> current & keep);
+    }
+
+    /**
+     * Frees a block of seats so they can be sold again
+     *
+     * @param block a block returned by allocate
+     * @param n number of seats it was allocated with
+     * @throws IllegalStateException if some of the seats are free already
+     */
+    public void release(int block, int n) {
+        int word = row(block) * rowWords + (seat(block) >>> 6);
+        int bit = seat(block) & 63;
+        long first = mask(bit, Math.min(n, 64 - bit));
+        long second = bit + n > 64 ? mask(0, bit + n - 64) : 0;
+        if ((words.get(word) & first) != first || (second != 0 && (words.get(word + 1) & second) != second)) {
+            throw new IllegalStateException("Seats of row " + row(block) + " from seat " + seat(block)
+                    + " are not taken");
+        }
+        clearBits(word, first);
+        if (second != 0) {
+            clearBits(word + 1, second);
+        }
+    }
+
+    /**
+     * Counts the free seats by counting bits, which is exact once no one is allocating
+     *
+     * @return seats neither sold nor held
+     */
+    public int countFree() {
+        int free = 0;
+        for (int i = 0; i < words.length(); i++) {
+            free += Long.bitCount(~words.get(i));
+        }
+        return free;
+    }
+
+    /**
+     * Returns if a seat is sold or held
+     *
+     * @param row row number
+     * @param seat seat number in the row
+     * @return if the seat is taken
+     */
+    public boolean isTaken(int row, int seat) {
+        return (words.get(row * rowWords + (seat >>> 6)) & (1L << (seat & 63))) != 0;
+    }
+
+    public int getRows() {
+        return rowSeats.length;
+    }
+
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+}
@@ -0,0 +1,400 @@
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A line of customers waiting for one kind of worker. A customer waits for a free worker, then joins the queue and
+ * tells the workers it is ready; a worker waits for a ready customer, serves them, then becomes free again.
+ *
+ * A stage reads the clock once per service. The time a worker finishes is when it is free again and when its
+ * customers join their next line, and a service starts when both the worker and the customer are there, so waits
+ * and service times come from timestamps taken anyway.
+ *
+ * This is the semaphore handoff. ParkingServiceLine does the same with LockSupport park and unpark, and
+ * LaneServiceLine gives every worker a lane of their own. A line in PRIORITY order is a ParkingServiceLine whose queue
+ * serves customers by deadline instead of in the order they joined.
+ *
+ * With a batch size above 1, every worker has that many places, and a worker that wakes up takes every ready customer
+ * up to the batch size and serves them together.
+ *
+ */
+public class ServiceLine {
+
+    /**
+     * How customers and workers hand off to each other
+     */
+    public enum Handoff {
+        SEMAPHORE, PARK;
+
+        /**
+         * Parses a handoff name, ignoring case
+         *
+         * @param name name of the handoff
+         * @return the matching handoff
+         */
+        public static Handoff parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * How customers are spread over the workers of a line
+     */
+    public enum Lanes {
+        //one queue all workers take from
+        SHARED,
+        //a lane per worker, customers join the shortest
+        SHORTEST,
+        //a lane per worker, customers join the shorter of two picked at random
+        TWO_CHOICES;
+
+        /**
+         * Parses a lane policy name, ignoring case and accepting dashes for underscores
+         *
+         * @param name name of the policy
+         * @return the matching policy
+         */
+        public static Lanes parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * Which waiting customer a free worker takes next
+     */
+    public enum Order {
+        //the customer that joined first
+        FIFO,
+        //the customer with the earliest deadline, see Customer.BY_DEADLINE
+        PRIORITY;
+
+        /**
+         * Parses an order name, ignoring case
+         *
+         * @param name name of the order
+         * @return the matching order
+         */
+        public static Order parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    //initial size of a priority queue, which grows as needed
+    private static final int PRIORITY_CAPACITY = 64;
+
+    //manages how many places at workers are free, batchSize per worker
+    private final Semaphore workerSem;
+    //manages how many customers are ready to be served
+    private final Semaphore customerReadySem;
+    final Queue<Customer> queue;
+    final StageMetrics metrics;
+    //workers currently serving the line, the ID the next hired worker gets, and idle workers asked to leave
+    final AtomicInteger workers;
+    final AtomicInteger nextId;
+    final AtomicInteger retiring;
+    //most customers a worker serves at once
+    final int batchSize;
+
+    /**
+     * Constructs a ServiceLine where workers serve one customer at a time
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     */
+    public ServiceLine(String name, int workers) {
+        this(name, workers, 1);
+    }
+
+    /**
+     * Constructs a ServiceLine
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     */
+    public ServiceLine(String name, int workers, int batchSize) {
+        this(name, workers, batchSize, Handoff.SEMAPHORE);
+    }
+
+    /**
+     * Constructs the parts every kind of line has, and the semaphores if the handoff uses them
+     */
+    ServiceLine(String name, int workers, int batchSize, Handoff handoff) {
+        this(name, workers, batchSize, handoff, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Constructs the parts every kind of line has around the given queue
+     */
+    ServiceLine(String name, int workers, int batchSize, Handoff handoff, Queue<Customer> queue) {
+        this.batchSize = batchSize;
+        if (handoff == Handoff.SEMAPHORE) {
+            this.workerSem = new Semaphore(workers * batchSize, true);
+            this.customerReadySem = new Semaphore(0, true);
+        } else {
+            this.workerSem = null;
+            this.customerReadySem = null;
+        }
+        this.queue = queue;
+        this.metrics = new StageMetrics(name);
+        this.workers = new AtomicInteger(workers);
+        this.nextId = new AtomicInteger(workers);
+        this.retiring = new AtomicInteger();
+    }
+
+    /**
+     * Constructs a line with the given handoff
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     * @param handoff how customers and workers hand off to each other
+     * @return the line
+     */
+    static ServiceLine create(String name, int workers, int batchSize, Handoff handoff) {
+        return create(name, workers, batchSize, handoff, Lanes.SHARED);
+    }
+
+    /**
+     * Constructs a line with the given handoff and lanes. Lines with a lane per worker always park their workers.
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     * @param handoff how customers and workers hand off to each other
+     * @param lanes how customers are spread over the workers
+     * @return the line
+     */
+    static ServiceLine create(String name, int workers, int batchSize, Handoff handoff, Lanes lanes) {
+        return create(name, workers, batchSize, handoff, lanes, Order.FIFO);
+    }
+
+    /**
+     * Constructs a line with the given handoff, lanes and order. A line in PRIORITY order parks its workers and has
+     * one queue for the whole stage whatever the handoff and lanes, since customers can only be ordered while they
+     * wait in the queue.
+     *
+     * @param name name of the stage used in reports
+     * @param workers number of workers serving the line
+     * @param batchSize most customers a worker serves at once
+     * @param handoff how customers and workers hand off to each other
+     * @param lanes how customers are spread over the workers
+     * @param order which waiting customer a free worker takes next
+     * @return the line
+     */
+    static ServiceLine create(String name, int workers, int batchSize, Handoff handoff, Lanes lanes, Order order) {
+        if (order == Order.PRIORITY) {
+            return new ParkingServiceLine(name, workers, batchSize,
+                    new PriorityBlockingQueue<>(PRIORITY_CAPACITY, Customer.BY_DEADLINE));
+        }
+        if (lanes != Lanes.SHARED) {
+            return new LaneServiceLine(name, workers, batchSize, lanes);
+        }
+        if (handoff == Handoff.PARK) {
+            return new ParkingServiceLine(name, workers, batchSize);
+        }
+        return new ServiceLine(name, workers, batchSize);
+    }
+
+    /**
+     * Called by a customer to wait for a free worker and then hand themselves to it. The worker that takes the
+     * customer records how long they waited, see started.
+     *
+     * @param c the customer
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void join(Customer c) throws InterruptedException {
+        metrics.joined();
+        workerSem.acquire();    //wait for a worker to be avaliable
+        queue.add(c);
+        customerReadySem.release(); //tell worker you are ready
+    }
+
+    /**
+     * Called by a worker to wait for the next ready customer. Lines with a lane per worker need to know who asks.
+     *
+     * @param w the worker
+     * @return the customer to serve, or null if the worker should leave instead
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Customer next(Worker w) throws InterruptedException {
+        customerReadySem.acquire(); //wait for customer to be ready
+        int r;
+        while ((r = retiring.get()) > 0) {  //woken up to leave instead
+            if (retiring.compareAndSet(r, r - 1)) {
+                return null;
+            }
+        }
+        return queue.remove();
+    }
+
+    /**
+     * Called by a worker to wait for the next ready customer, then take every other ready customer up to the batch
+     * size without waiting for more
+     *
+     * @param w the worker
+     * @param batch array of at least the batch size the customers are put in
+     * @return number of customers in the batch, 0 if the worker should leave instead
+     * @throws InterruptedException if interrupted while waiting
+     */
+    int nextBatch(Worker w, Customer[] batch) throws InterruptedException {
+        Customer first = next(w);
+        if (first == null) {
+            return 0;
+        }
+        batch[0] = first;
+        int count = 1;
+        while (count < batchSize && customerReadySem.tryAcquire()) {
+            Customer c = queue.poll();
+            if (c == null) {    //took a signal meant for a worker that should leave, give it back
+                customerReadySem.release();
+                break;
+            }
+            batch[count++] = c;
+        }
+        return count;
+    }
+
+    /**
+     * Called by a worker that took a customer, to record how long they waited. The service started when the worker
+     * was free again or when the customer joined, whichever was later.
+     *
+     * @param w the worker
+     * @param c the customer
+     * @return System.nanoTime() when the service started
+     */
+    long started(Worker w, Customer c) {
+        long start = w.freeNanos - c.getJoinedNanos() > 0 ? w.freeNanos : c.getJoinedNanos();
+        waited(c, start);
+        return start;
+    }
+
+    /**
+     * Called by a worker that took a batch of customers, to record how long each of them waited. The service started
+     * when the worker was free again or when the last of them joined, whichever was later.
+     *
+     * @param w the worker
+     * @param batch the customers taken
+     * @param count number of customers in the batch
+     * @return System.nanoTime() when the service started
+     */
+    long started(Worker w, Customer[] batch, int count) {
+        long start = w.freeNanos;
+        for (int i = 0; i < count; i++) {
+            if (batch[i].getJoinedNanos() - start > 0) {
+                start = batch[i].getJoinedNanos();
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            waited(batch[i], start);
+        }
+        return start;
+    }
+
+    private void waited(Customer c, long start) {
+        long wait = start - c.getJoinedNanos();
+        metrics.left(wait);
+        c.addWait(wait);
+    }
+
+    /**
+     * Called by a worker once done with a customer, before releasing them, making the worker free for the next one.
+     * This is the one clock read of the stage.
+     *
+     * @param w the worker
+     * @param startNanos when the service started, as returned by started
+     * @param c the customer
+     */
+    void finished(Worker w, long startNanos, Customer c) {
+        long now = System.nanoTime();
+        metrics.served(w.getId(), now - startNanos);
+        w.freeNanos = now;
+        c.setJoinedNanos(now);  //the customer heads straight for their next line
+        freePlaces(1);
+    }
+
+    /**
+     * Called by a worker once done with a batch of customers, before releasing them, making their places free for the
+     * next ones. This is the one clock read of the stage.
+     *
+     * @param w the worker
+     * @param startNanos when the service started, as returned by started
+     * @param batch the customers served
+     * @param count number of customers in the batch
+     */
+    void finished(Worker w, long startNanos, Customer[] batch, int count) {
+        long now = System.nanoTime();
+        metrics.served(w.getId(), now - startNanos);
+        w.freeNanos = now;
+        for (int i = 0; i < count; i++) {
+            batch[i].setJoinedNanos(now);
+        }
+        freePlaces(count);
+    }
+
+    /**
+     * Makes places at a worker free for the next customers
+     *
+     * @param count number of places
+     */
+    void freePlaces(int count) {
+        workerSem.release(count);    //transaction is done, ready for next customers
+    }
+
+    /**
+     * Makes room for one more worker on the line
+     *
+     * @return ID for the new worker
+     */
+    int hire() {
+        int id = nextId.getAndIncrement();
+        workers.incrementAndGet();
+        workerSem.release(batchSize);    //one more worker avaliable
+        return id;
+    }
+
+    /**
+     * Asks one idle worker to leave. The line keeps at least one worker, and busy workers are never interrupted.
+     *
+     * @return if a worker was idle and will leave
+     */
+    boolean retire() {
+        if (workers.get() <= 1 || !workerSem.tryAcquire(batchSize)) {  //take an idle worker away from customers
+            return false;
+        }
+        workers.decrementAndGet();
+        retiring.incrementAndGet();
+        customerReadySem.release(); //wake an idle worker so it sees it should leave
+        return true;
+    }
+
+    /**
+     * Asks every worker to leave once the line is empty. Workers finish the customer they are serving first.
+     */
+    void close() {
+        int n = workers.getAndSet(0);
+        retiring.addAndGet(n);
+        customerReadySem.release(n);    //wake the idle workers so they see they should leave
+    }
+
+    /**
+     * Returns the number of workers serving the line
+     *
+     * @return current number of workers
+     */
+    int getWorkers() {
+        return workers.get();
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    StageMetrics getMetrics() {
+        return metrics;
+    }
+
+}
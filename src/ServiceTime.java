@@ -0,0 +1,67 @@
+
+import java.util.SplittableRandom;
+
+/**
+ * A distribution of how long a worker takes to serve one customer, in simulated milliseconds
+ *
+ */
+public class ServiceTime {
+
+    public enum Kind {
+        FIXED, EXPONENTIAL, UNIFORM;
+    }
+
+    final Kind kind;
+    final long meanMillis;
+
+    /**
+     * Constructs a ServiceTime
+     *
+     * @param kind shape of the distribution
+     * @param meanMillis mean service time in simulated milliseconds
+     */
+    public ServiceTime(Kind kind, long meanMillis) {
+        this.kind = kind;
+        this.meanMillis = meanMillis;
+    }
+
+    /**
+     * Parses a service time written as kind:mean, such as exponential:90000, or just a mean for a fixed time
+     *
+     * @param spec the service time
+     * @return the matching ServiceTime
+     */
+    public static ServiceTime parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        if (parts.length == 1) {
+            return new ServiceTime(Kind.FIXED, Long.parseLong(parts[0]));
+        }
+        return new ServiceTime(Kind.valueOf(parts[0].trim().toUpperCase()), Long.parseLong(parts[1].trim()));
+    }
+
+    /**
+     * Draws one service time
+     *
+     * @param rand random generator of the caller
+     * @return service time in simulated milliseconds
+     */
+    public long sample(SplittableRandom rand) {
+        switch (kind) {
+            case EXPONENTIAL:
+                return (long) (-meanMillis * Math.log(1 - rand.nextDouble()));
+            case UNIFORM:   //between 0 and twice the mean
+                return rand.nextLong(2 * meanMillis + 1);
+            default:
+                return meanMillis;
+        }
+    }
+
+    /**
+     * Returns the service time as a string
+     * @return the service time in the format parse accepts
+     */
+    public String toString() {
+        return kind.name().toLowerCase() + ":" + meanMillis;
+    }
+
+}
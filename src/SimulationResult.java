@@ -0,0 +1,127 @@
+
+/**
+ * Totals from one run of the theater, either threaded or event driven
+ *
+ */
+public class SimulationResult {
+
+    //people that arrived, and the parties they arrived in
+    final int customers;
+    final int parties;
+    final int ticketsSold;
+    final int concessionVisits;
+    final int[] foodOrders;
+    final double simulatedMillis;
+    //total time each admitted customer waited in lines, in simulated milliseconds
+    final Histogram waits;
+    //time from arriving until entering the theater of each admitted party, in simulated milliseconds
+    final Histogram entryTimes;
+    //arrival rate the run aimed for in customers per simulated minute (0 if everyone arrived at once), simulated time
+    //from the first to the last arrival, and how many arrivals were held back by a full box office line
+    final double targetArrivalRate;
+    final double arrivalSpanMillis;
+    final int heldBack;
+
+    /**
+     * Constructs a SimulationResult
+     *
+     * @param customers number of customers that arrived
+     * @param ticketsSold number of tickets sold
+     * @param concessionVisits number of customers that bought food
+     * @param foodOrders orders of each kind of food, indexed by Customer.Food ordinal
+     * @param simulatedMillis simulated time from opening until the last customer was done
+     * @param waits total time each admitted customer waited in lines, in simulated milliseconds
+     */
+    public SimulationResult(int customers, int ticketsSold, int concessionVisits, int[] foodOrders,
+            double simulatedMillis, Histogram waits) {
+        this(customers, customers, ticketsSold, concessionVisits, foodOrders, simulatedMillis, waits, new Histogram(),
+                0, 0, 0);
+    }
+
+    /**
+     * Constructs a SimulationResult of a run where customers arrived over time or in parties
+     *
+     * @param customers number of people that arrived
+     * @param parties number of parties they arrived in, the same as customers if everyone came alone
+     * @param ticketsSold number of tickets sold
+     * @param concessionVisits number of parties that bought food
+     * @param foodOrders orders of each kind of food, indexed by Customer.Food ordinal
+     * @param simulatedMillis simulated time from opening until the last customer was done
+     * @param waits total time each admitted party waited in lines, in simulated milliseconds
+     * @param entryTimes time from arriving until entering the theater of each admitted party, in simulated
+     * milliseconds
+     * @param targetArrivalRate arrival rate aimed for in parties per simulated minute, 0 if everyone arrived at once
+     * @param arrivalSpanMillis simulated time from the first to the last arrival
+     * @param heldBack number of times an arrival was held back by a full box office line
+     */
+    public SimulationResult(int customers, int parties, int ticketsSold, int concessionVisits, int[] foodOrders,
+            double simulatedMillis, Histogram waits, Histogram entryTimes, double targetArrivalRate,
+            double arrivalSpanMillis, int heldBack) {
+        this.customers = customers;
+        this.parties = parties;
+        this.ticketsSold = ticketsSold;
+        this.concessionVisits = concessionVisits;
+        this.foodOrders = foodOrders;
+        this.simulatedMillis = simulatedMillis;
+        this.waits = waits;
+        this.entryTimes = entryTimes;
+        this.targetArrivalRate = targetArrivalRate;
+        this.arrivalSpanMillis = arrivalSpanMillis;
+        this.heldBack = heldBack;
+    }
+
+    /**
+     * Returns the arrival rate the run actually achieved, which falls below the target when a full line holds
+     * arrivals back
+     *
+     * @return parties per simulated minute from the first to the last arrival, 0 if everyone arrived at once
+     */
+    public double getArrivalRatePerMinute() {
+        return arrivalSpanMillis == 0 ? 0 : (parties - 1) * 60000.0 / arrivalSpanMillis;
+    }
+
+    /**
+     * Returns the number of people that left without a ticket
+     *
+     * @return people turned away at the box office
+     */
+    public int getTurnedAway() {
+        return customers - ticketsSold;
+    }
+
+    /**
+     * Returns how many admitted people the theater got through per simulated hour
+     *
+     * @return people that entered the theater per hour
+     */
+    public double getThroughputPerHour() {
+        return simulatedMillis == 0 ? 0 : ticketsSold * 3600000.0 / simulatedMillis;
+    }
+
+    /**
+     * Returns the result as a string
+     * @return totals in a string
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(customers).append(" customers, ");
+        if (parties != customers) {
+            sb.append("in ").append(parties).append(" parties, ");
+        }
+        sb.append(ticketsSold).append(" tickets sold, ")
+                .append(getTurnedAway()).append(" turned away, ")
+                .append(concessionVisits).append(" concession orders (");
+        Customer.Food[] foods = Customer.Food.values();
+        for (int i = 0; i < foods.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(foodOrders[i]).append(' ').append(foods[i]);
+        }
+        sb.append("), ").append(String.format("%.1f", simulatedMillis / 1000)).append(" simulated seconds, ")
+                .append(String.format("%.1f", waits.getPercentile(99) / 1000.0)).append(" s p99 wait");
+        if (targetArrivalRate > 0) {
+            sb.append(String.format(", arrivals %.2f/min (target %.2f/min), held back %d times",
+                    getArrivalRatePerMinute(), targetArrivalRate, heldBack));
+        }
+        return sb.toString();
+    }
+
+}
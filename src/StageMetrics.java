@@ -0,0 +1,150 @@
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wait time, service time and line length of one stage of the theater. All times are in nanoseconds of real time.
+ *
+ */
+public class StageMetrics {
+
+    final String name;
+    //time from getting in line until a worker is free
+    private final Histogram wait;
+    //time a worker spends serving one customer, for each worker by ID, grown when a worker with a higher ID serves
+    private volatile Histogram[] workerService;
+    //customers waiting in line, sampled whenever a customer gets in line
+    private final Histogram lineLength;
+    private final AtomicInteger inLine;
+
+    /**
+     * Constructs an empty StageMetrics
+     *
+     * @param name name of the stage used in reports
+     */
+    public StageMetrics(String name) {
+        this.name = name;
+        this.wait = new Histogram();
+        this.workerService = new Histogram[0];
+        this.lineLength = new Histogram();
+        this.inLine = new AtomicInteger();
+    }
+
+    /**
+     * Records a customer getting in line
+     */
+    void joined() {
+        lineLength.record(inLine.getAndIncrement());
+    }
+
+    /**
+     * Records a customer reaching a worker
+     *
+     * @param waitNanos how long the customer waited in line
+     */
+    void left(long waitNanos) {
+        inLine.decrementAndGet();
+        wait.record(waitNanos);
+    }
+
+    /**
+     * Records a worker finishing with a customer
+     *
+     * @param workerId ID of the worker
+     * @param serviceNanos how long the worker spent with the customer
+     */
+    void served(int workerId, long serviceNanos) {
+        Histogram[] workers = workerService;
+        Histogram h = workerId < workers.length ? workers[workerId] : null;
+        if (h == null) {
+            h = addWorker(workerId);
+        }
+        h.record(serviceNanos);
+    }
+
+    private synchronized Histogram addWorker(int workerId) {
+        Histogram[] workers = workerService;
+        if (workerId >= workers.length) {
+            Histogram[] grown = new Histogram[Math.max(workerId + 1, workers.length * 2)];
+            System.arraycopy(workers, 0, grown, 0, workers.length);
+            workers = grown;
+        }
+        if (workers[workerId] == null) {
+            workers[workerId] = new Histogram();
+        }
+        workerService = workers;
+        return workers[workerId];
+    }
+
+    /**
+     * Returns the number of customers currently waiting in line
+     *
+     * @return customers in line
+     */
+    public int getInLine() {
+        return inLine.get();
+    }
+
+    public Histogram getWait() {
+        return wait;
+    }
+
+    /**
+     * Returns the service times of every worker of the stage together
+     *
+     * @return a new histogram adding up the workers' ones
+     */
+    public Histogram getService() {
+        Histogram service = new Histogram();
+        for (Histogram h : workerService) {
+            if (h != null) {
+                service.add(h);
+            }
+        }
+        return service;
+    }
+
+    public Histogram getLineLength() {
+        return lineLength;
+    }
+
+    /**
+     * Returns the service time histogram of each worker that has served a customer
+     *
+     * @return histograms by worker ID
+     */
+    public Map<Integer, Histogram> getWorkerService() {
+        Histogram[] workers = workerService;
+        TreeMap<Integer, Histogram> byId = new TreeMap<>();
+        for (int id = 0; id < workers.length; id++) {
+            if (workers[id] != null) {
+                byId.put(id, workers[id]);
+            }
+        }
+        return byId;
+    }
+
+    /**
+     * Prints the stage's wait time, service time and line length summaries
+     *
+     * @param out stream to print to
+     */
+    void report(PrintStream out) {
+        out.printf("%-18s %10s %10s %10s %10s %10s%n", name, "count", "mean", "p50", "p99", "max");
+        printTimes(out, "  wait ms", wait);
+        printTimes(out, "  service ms", getService());
+        for (Map.Entry<Integer, Histogram> e : getWorkerService().entrySet()) {
+            printTimes(out, "    worker " + e.getKey(), e.getValue());
+        }
+        out.printf("%-18s %10d %10.1f %10d %10d %10d%n", "  line length", lineLength.getCount(),
+                lineLength.getMean(), lineLength.getPercentile(50), lineLength.getPercentile(99), lineLength.getMax());
+    }
+
+    private static void printTimes(PrintStream out, String label, Histogram h) {
+        out.printf("%-18s %10d %10.3f %10.3f %10.3f %10.3f%n", label, h.getCount(), h.getMean() / 1e6,
+                h.getPercentile(50) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6);
+    }
+
+}
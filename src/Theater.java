@@ -1,17 +1,34 @@
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
-import java.util.Scanner;
+import java.util.SplittableRandom;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Simulates a movie theater using semaphores to ensure correct order of events
  *
+ * A theater is opened with initTheater, serves customers with initCustomers, stops taking customers with drain, sends
+ * its workers home with stop and waits for them with join. Customers and workers run on a pool of threads, so restart
+ * can open the theater again for another run without creating new threads, and shutdown ends the pool.
+ *
  * @author Zion Mantey
  */
 public class Theater {
@@ -23,89 +40,470 @@ public class Theater {
     public static final int MAX_CONCESSION_WORKERS = 1;
     public static final int TIME_SCALE = 60;
 
+    //settings of the run, the pool every customer and worker runs on, and if the theater shuts the pool down
+    private final TheaterConfig config;
+    private final ExecutorService pool;
+    private final boolean ownsPool;
+    //every customer gets a random generator split from this one, so a run is reproducible from its seed
+    private final SplittableRandom rand;
+
     //list of movies in the theater
     private final ArrayList<Movie> movies;
 
-    //lists of all the threads
-    private final ArrayList<Thread> customerThreads;
+    //every customer let in and every worker started, to wait for them to finish
+    private final ArrayList<Future<?>> customerTasks;
+    private final Queue<Future<?>> workerTasks;
+    //people in all the customers' parties, only changed by the thread letting customers in
+    private int people;
+    //cleared by drain so no more customers are let in
+    private boolean accepting;
+    private Thread autoscaler;
+    //multiplex the theater is a shard of and its index there, or null
+    private Multiplex multiplex;
+    private int shard;
+
+    //log of everything customers and workers do
+    private final EventLog log;
 
-    //queues to manage customer lines
-    private final Queue<Customer> boxQ;
-    private final Queue<Customer> ticketQ;
-    private final Queue<Customer> concessionQ;
+    //orders of each kind of food and how long serving all customers took
+    private final AtomicIntegerArray foodOrders;
+    //seats sold from the same movies by OnlineSales, which are not tickets of the theater's customers
+    private final AtomicInteger soldOnline;
+    //total time each customer that entered spent waiting in line, in simulated milliseconds
+    private Histogram waits;
+    //time from arriving until entering the theater of each customer that entered, in simulated milliseconds
+    private Histogram entryTimes;
+    //the same two for each kind of customer, indexed by Customer.Kind ordinal
+    private Histogram[] kindWaits;
+    private Histogram[] kindEntryTimes;
+    private long openedNanos;
+    private long closedNanos;
+    //lets customers in over time, null if they all arrived at once
+    private ArrivalGenerator arrivals;
 
     //used to initilize all workers before opening theater
-    private final Semaphore initSem;
-    //manages how many customers and box agents are ready
-    private final Semaphore boxSem;
-    private final Semaphore boxCustomerReadySem;
-    //manages how many customers and ticket takers are ready
-    private final Semaphore ticketSem;
-    private final Semaphore ticketCustomerReadySem;
-    //manages how many customers and concession workers are ready
-    private final Semaphore concessionSem;
-    private final Semaphore concessionCustomerReadySem;
+    private Semaphore initSem;
+    //lines of customers waiting for box agents, ticket takers and concession workers, new for every run
+    private ServiceLine boxLine;
+    private ServiceLine ticketLine;
+    private ServiceLine concessionLine;
+    //stock and machines behind the concession stand, or null if stock is unlimited
+    private Kitchen kitchen;
+    //every showing by ID, title and showtime, kept from loading the movie file
+    private MovieCatalog catalog;
+    //showings of the day by title and screen, built when the movies are loaded or else on first use
+    private volatile Schedule schedule;
+    //recorder of every arrival, handoff and service, set by initCustomers while workers run, or null
+    private volatile TraceRecorder trace;
+    //customers of an earlier run that arrive again, or null
+    private TraceReplay replay;
+    //customers of the current run, the configured count or every customer of the replayed trace
+    private int customerCount;
 
     /**
-     * Constructs a Theater and creates all empty lists.
+     * Constructs a Theater with every setting at its default
      */
     public Theater() {
-        this.initSem = new Semaphore(-(MAX_BOX_AGENTS + MAX_CONCESSION_WORKERS + MAX_TICKET_TAKERS) + 1, true);  //set semaphore to negative amount of workers + 1
-        this.concessionCustomerReadySem = new Semaphore(0, true);
-        this.concessionSem = new Semaphore(Theater.MAX_CONCESSION_WORKERS, true);
-        this.ticketCustomerReadySem = new Semaphore(0, true);
-        this.ticketSem = new Semaphore(Theater.MAX_TICKET_TAKERS, true);
-        this.boxCustomerReadySem = new Semaphore(0, true);
-        this.boxSem = new Semaphore(Theater.MAX_BOX_AGENTS, true);
+        this(new TheaterConfig());
+    }
+
+    /**
+     * Constructs a Theater that logs events to System.out
+     *
+     * @param config settings of the run
+     */
+    public Theater(TheaterConfig config) {
+        this(config, ThreadMode.parse(config.mode).newFactory(), System.out);
+    }
+
+    /**
+     * Constructs a Theater that logs events as text to System.out
+     *
+     * @param customerCount number of customers that visit the theater
+     * @param timeScale how many times faster than real time the workers serve customers
+     * @param threadFactory factory used to create every customer and worker thread
+     */
+    public Theater(int customerCount, int timeScale, ThreadFactory threadFactory) {
+        this(withCustomers(customerCount, timeScale), threadFactory, System.out);
+    }
+
+    private static TheaterConfig withCustomers(int customerCount, int timeScale) {
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customerCount;
+        config.timeScale = timeScale;
+        return config;
+    }
+
+    /**
+     * Constructs a Theater with its own pool of threads from a factory
+     *
+     * @param config settings of the run
+     * @param threadFactory factory used to create every customer and worker thread
+     * @param logStream stream events are logged to
+     */
+    public Theater(TheaterConfig config, ThreadFactory threadFactory, OutputStream logStream) {
+        this(config, Executors.newCachedThreadPool(threadFactory), true, logStream);
+    }
+
+    /**
+     * Constructs a Theater that runs on a pool shared with other theaters. shutdown leaves the pool running.
+     *
+     * @param config settings of the run
+     * @param pool pool every customer and worker runs on, it must be able to run all of them at once
+     * @param logStream stream events are logged to
+     */
+    public Theater(TheaterConfig config, ExecutorService pool, OutputStream logStream) {
+        this(config, pool, false, logStream);
+    }
+
+    /**
+     * Constructs a Theater and creates all empty lists.
+     */
+    private Theater(TheaterConfig config, ExecutorService pool, boolean ownsPool, OutputStream logStream) {
+        this.config = config;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.rand = new SplittableRandom(config.seed);
         this.movies = new ArrayList<>();
-        this.customerThreads = new ArrayList<>(MAX_CUSTOMERS);
-        this.boxQ = new ConcurrentLinkedQueue<>();
-        this.ticketQ = new ConcurrentLinkedQueue<>();
-        this.concessionQ = new ConcurrentLinkedQueue<>();
+        this.customerTasks = new ArrayList<>(config.customers);
+        this.customerCount = config.customers;
+        this.workerTasks = new ConcurrentLinkedQueue<>();
+        this.foodOrders = new AtomicIntegerArray(Customer.Food.values().length);
+        this.soldOnline = new AtomicInteger();
+        this.log = new EventLog(config.log, logStream, movies);
+        reset();
+    }
+
+    /**
+     * Clears the lines, the counters and the results of the last run
+     */
+    private void reset() {
+        int[] workers = config.workers;
+        this.initSem = new Semaphore(-(workers[TheaterConfig.BOX] + workers[TheaterConfig.CONCESSION]
+                + workers[TheaterConfig.TICKET]) + 1, true);  //set semaphore to negative amount of workers + 1
+        this.concessionLine = ServiceLine.create("Concession stand", workers[TheaterConfig.CONCESSION],
+                config.batchSize, config.handoff, config.lanes, config.lineOrder);
+        this.ticketLine = ServiceLine.create("Ticket taker", workers[TheaterConfig.TICKET], config.batchSize,
+                config.handoff, config.lanes, config.lineOrder);
+        this.boxLine = ServiceLine.create("Box office", workers[TheaterConfig.BOX], 1, config.handoff, config.lanes,
+                config.lineOrder);
+        this.kitchen = config.hasKitchen() ? new Kitchen(config) : null;
+        for (Movie movie : movies) {
+            movie.reset();
+        }
+        for (int i = 0; i < foodOrders.length(); i++) {
+            foodOrders.set(i, 0);
+        }
+        soldOnline.set(0);
+        this.waits = new Histogram();
+        this.entryTimes = new Histogram();
+        this.kindWaits = new Histogram[Customer.Kind.values().length];
+        this.kindEntryTimes = new Histogram[kindWaits.length];
+        for (int i = 0; i < kindWaits.length; i++) {
+            kindWaits[i] = new Histogram();
+            kindEntryTimes[i] = new Histogram();
+        }
+        this.customerTasks.clear();
+        this.people = 0;
+        this.arrivals = null;
+        this.accepting = true;
+    }
+
+    TheaterConfig getConfig() {
+        return config;
+    }
+
+    int getCustomerCount() {
+        return customerCount;
+    }
+
+    int getTimeScale() {
+        return config.timeScale;
     }
 
     ArrayList<Movie> getMovies() {
         return movies;
     }
 
-    Queue<Customer> getBoxQ() {
-        return boxQ;
+    /**
+     * Makes the theater one shard of a multiplex, so customers that find their movie sold out try the other shards
+     *
+     * @param multiplex the multiplex
+     * @param shard index of this theater in the multiplex
+     */
+    void joinMultiplex(Multiplex multiplex, int shard) {
+        this.multiplex = multiplex;
+        this.shard = shard;
     }
 
-    Queue<Customer> getTicketQ() {
-        return ticketQ;
+    Multiplex getMultiplex() {
+        return multiplex;
     }
 
-    Queue<Customer> getConcessionQ() {
-        return concessionQ;
+    int getShard() {
+        return shard;
     }
 
     Semaphore getInitSem() {
         return initSem;
     }
 
-    Semaphore getBoxSem() {
-        return boxSem;
+    EventLog getLog() {
+        return log;
+    }
+
+    ServiceLine getBoxLine() {
+        return boxLine;
+    }
+
+    ServiceLine getTicketLine() {
+        return ticketLine;
+    }
+
+    ServiceLine getConcessionLine() {
+        return concessionLine;
+    }
+
+    Kitchen getKitchen() {
+        return kitchen;
+    }
+
+    /**
+     * Returns the catalog of every showing, indexing the movies when they were added directly instead of loaded
+     *
+     * @return the catalog
+     */
+    synchronized MovieCatalog getCatalog() {
+        if (catalog == null) {
+            catalog = MovieCatalog.of(movies);
+        }
+        return catalog;
+    }
+
+    /**
+     * Returns the schedule of the showings, building it from the catalog when the movies were added directly instead
+     * of loaded
+     *
+     * @return the schedule
+     */
+    Schedule getSchedule() {
+        Schedule built = schedule;
+        return built != null ? built : buildSchedule();
+    }
+
+    private synchronized Schedule buildSchedule() {
+        if (schedule == null) {
+            schedule = new Schedule(getCatalog(), config.salesCloseMinutes);
+        }
+        return schedule;
+    }
+
+    TraceReplay getReplay() {
+        return replay;
+    }
+
+    /**
+     * Records an event to the trace if the run is traced
+     *
+     * @param type kind of event
+     * @param stage TheaterConfig stage index, or -1
+     * @param customer customer ID, or -1
+     * @param worker worker ID, or -1
+     * @param arg depends on the type, see TraceRecorder.Type
+     */
+    void trace(TraceRecorder.Type type, int stage, int customer, int worker, int arg) {
+        TraceRecorder t = trace;
+        if (t != null) {
+            t.record(type, stage, customer, worker, arg);
+        }
+    }
+
+    /**
+     * Returns the line of one stage
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     * @return the line of the stage
+     */
+    ServiceLine getLine(int stage) {
+        switch (stage) {
+            case TheaterConfig.BOX:
+                return boxLine;
+            case TheaterConfig.TICKET:
+                return ticketLine;
+            default:
+                return concessionLine;
+        }
+    }
+
+    /**
+     * Starts one more worker at a stage while the theater is open
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     * @return ID of the new worker
+     */
+    public int addWorker(int stage) {
+        int id = getLine(stage).hire();
+        startWorker(newWorker(stage, id));
+        return id;
+    }
+
+    /**
+     * Sends one idle worker at a stage home. At least one worker always stays.
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     * @return if a worker was idle and will leave
+     */
+    public boolean removeWorker(int stage) {
+        return getLine(stage).retire();
+    }
+
+    private Worker newWorker(int stage, int id) {
+        switch (stage) {
+            case TheaterConfig.BOX:
+                return new BoxOfficeAgent(id, this);
+            case TheaterConfig.TICKET:
+                return new TicketTaker(id, this);
+            default:
+                return new ConcessionWorker(id, this);
+        }
+    }
+
+    private void startWorker(Worker worker) {
+        workerTasks.add(pool.submit(worker));
+    }
+
+    /**
+     * Returns the wait time, service time and line length metrics of every stage
+     *
+     * @return metrics of the box office, ticket taker and concession stand lines
+     */
+    public TheaterMetrics getMetrics() {
+        return new TheaterMetrics(boxLine.getMetrics(), ticketLine.getMetrics(), concessionLine.getMetrics());
+    }
+
+    /**
+     * Counts a customer's food order for the run totals
+     *
+     * @param food food the customer ordered
+     */
+    void recordConcessionOrder(Customer.Food food) {
+        foodOrders.incrementAndGet(food.ordinal());
+    }
+
+    /**
+     * Counts seats sold online, so the run totals only count tickets sold to the theater's customers
+     *
+     * @param seats seats sold
+     */
+    void recordOnlineSale(int seats) {
+        soldOnline.addAndGet(seats);
+    }
+
+    int getSoldOnline() {
+        return soldOnline.get();
+    }
+
+    /**
+     * Creates the random generator for a new customer or worker
+     *
+     * @return a generator independent of every other customer's and worker's
+     */
+    synchronized SplittableRandom newRandom() {
+        return rand.split();
     }
 
-    Semaphore getBoxCustomerReadySem() {
-        return boxCustomerReadySem;
+    /**
+     * Records how long a customer that entered the theater spent waiting in lines and getting there
+     *
+     * @param kind what kind of customer they are
+     * @param waitNanos total wait in nanoseconds of real time
+     * @param entryNanos time from arriving until entering the theater in nanoseconds of real time
+     */
+    void recordWait(Customer.Kind kind, long waitNanos, long entryNanos) {
+        //in double, huge time scales overflow a long
+        long waitMillis = (long) ((double) waitNanos * config.timeScale / 1e6);
+        long entryMillis = (long) ((double) entryNanos * config.timeScale / 1e6);
+        waits.record(waitMillis);
+        entryTimes.record(entryMillis);
+        kindWaits[kind.ordinal()].record(waitMillis);
+        kindEntryTimes[kind.ordinal()].record(entryMillis);
     }
 
-    Semaphore getTicketSem() {
-        return ticketSem;
+    /**
+     * Returns the total time each customer of one kind that entered spent waiting in lines
+     *
+     * @param kind the kind of customer
+     * @return waits in simulated milliseconds
+     */
+    Histogram getWaits(Customer.Kind kind) {
+        return kindWaits[kind.ordinal()];
     }
 
-    Semaphore getTicketCustomerReadySem() {
-        return ticketCustomerReadySem;
+    /**
+     * Returns the time from arriving until entering the theater of each customer of one kind that entered
+     *
+     * @param kind the kind of customer
+     * @return entry times in simulated milliseconds
+     */
+    Histogram getEntryTimes(Customer.Kind kind) {
+        return kindEntryTimes[kind.ordinal()];
+    }
+
+    /**
+     * Returns the simulated time of day, counting from open.time when the theater opened
+     *
+     * @return minutes after midnight
+     */
+    int getTimeOfDay() {
+        return config.openTime + (int) ((System.nanoTime() - openedNanos) / 60e9 * config.timeScale);
     }
 
-    Semaphore getConcessionSem() {
-        return concessionSem;
+    /**
+     * Prints the waits and entry times of each kind of customer that entered, and how many of them entered within
+     * sla.ms of arriving
+     *
+     * @param out stream to print to
+     */
+    public void reportKinds(PrintStream out) {
+        out.printf("%-8s %9s %11s %11s %12s %12s %8s%n", "kind", "customers", "p50 wait s", "p99 wait s",
+                "p50 entry s", "p99 entry s", "in SLA");
+        for (Customer.Kind kind : Customer.Kind.values()) {
+            Histogram waits = getWaits(kind);
+            Histogram entries = getEntryTimes(kind);
+            if (entries.getCount() == 0) {
+                continue;
+            }
+            out.printf("%-8s %9d %11.1f %11.1f %12.1f %12.1f %7.1f%%%n", kind, entries.getCount(),
+                    waits.getPercentile(50) / 1000.0, waits.getPercentile(99) / 1000.0,
+                    entries.getPercentile(50) / 1000.0, entries.getPercentile(99) / 1000.0,
+                    entries.getPercentAtOrBelow(config.slaMillis));
+        }
     }
 
-    Semaphore getConcessionCustomerReadySem() {
-        return concessionCustomerReadySem;
+    /**
+     * Returns the totals of the run once all customers have been joined. Seats sold online are left out, see
+     * OnlineSales.report for those.
+     *
+     * @return totals of the run, with wall-clock time converted to simulated time
+     */
+    public SimulationResult getResult() {
+        int sold = -soldOnline.get();
+        for (Movie movie : movies) {
+            sold += movie.getTicketsSold();
+        }
+        int[] orders = new int[foodOrders.length()];
+        int visits = 0;
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = foodOrders.get(i);
+            visits += orders[i];
+        }
+        double simulatedMillis = (closedNanos - openedNanos) / 1e6 * config.timeScale;
+        if (arrivals == null) {
+            return new SimulationResult(people, customerTasks.size(), sold, visits, orders, simulatedMillis, waits,
+                    entryTimes, 0, 0, 0);
+        }
+        return new SimulationResult(people, customerTasks.size(), sold, visits, orders, simulatedMillis, waits,
+                entryTimes, arrivals.getTargetRatePerMinute(), arrivals.getArrivalSpanMillis(), arrivals.getHeldBack());
     }
 
     /**
@@ -118,6 +516,13 @@ public class Theater {
             System.out.println("Movie file could not be opened");
             System.exit(1);
         }
+        open();
+    }
+
+    /**
+     * Starts the workers of every line and opens once they are all ready
+     */
+    private void open() {
         initBoxAgents();
         initTicketTakers();
         initConcessionWorkers();
@@ -126,9 +531,111 @@ public class Theater {
         } catch (InterruptedException ex) {
             Logger.getLogger(Theater.class.getName()).log(Level.SEVERE, null, ex);
         }
+        openedNanos = System.nanoTime();    //starts the clock for shards of a multiplex too, which never initCustomers
+        if (kitchen != null) {
+            kitchen.start();
+        }
+        if (config.isAutoscaling()) {
+            autoscaler = new Thread(new Autoscaler(this), "Autoscaler");
+            autoscaler.setDaemon(true);
+            autoscaler.start();
+        }
         System.out.println("Theater is open");
     }
 
+    /**
+     * Stops letting customers in, then waits until every customer already let in has entered the theater or left.
+     * Can be called from another thread while initCustomers runs, which then returns early.
+     */
+    public void drain() {
+        synchronized (this) {
+            accepting = false;
+        }
+        ArrivalGenerator generator = arrivals;
+        if (generator != null) {
+            generator.stop();
+        }
+        waitFor(customerTasks());
+    }
+
+    /**
+     * Drains the theater, then sends every worker home once they finish with their current customer
+     */
+    public void stop() {
+        drain();
+        if (autoscaler != null) {
+            autoscaler.interrupt();
+            try {
+                autoscaler.join();
+            } catch (InterruptedException ex) {
+                Logger.getLogger(Theater.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            autoscaler = null;
+        }
+        boxLine.close();
+        ticketLine.close();
+        concessionLine.close();
+        if (kitchen != null) {
+            kitchen.stop();
+        }
+    }
+
+    /**
+     * Waits until every worker has gone home
+     */
+    public void join() {
+        Future<?> task;
+        while ((task = workerTasks.poll()) != null) {
+            waitFor(List.of(task));
+        }
+        TraceRecorder t = trace;
+        if (t != null) {    //nobody records any more
+            trace = null;
+            try {
+                t.close();
+            } catch (IOException ex) {
+                Logger.getLogger(Theater.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Opens a stopped and joined theater again for another run on the same threads. Seats, lines and totals are
+     * cleared, while the random generator carries on so the next run sees different customers.
+     */
+    public void restart() {
+        if (!workerTasks.isEmpty()) {
+            throw new IllegalStateException("Theater must be stopped and joined before it restarts");
+        }
+        reset();
+        open();
+    }
+
+    /**
+     * Stops the theater, waits for its workers and shuts down its pool unless the pool was shared
+     */
+    public void shutdown() {
+        stop();
+        join();
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    private synchronized List<Future<?>> customerTasks() {
+        return new ArrayList<>(customerTasks);
+    }
+
+    private void waitFor(List<Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(Theater.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
     /**
      * Loads all the movies in the file to the movies array
      *
@@ -136,23 +643,66 @@ public class Theater {
      * @return if file was loaded successfully
      */
     private boolean initMovies(String filename) {
+        MovieCatalog loaded = loadCatalog(filename);
+        if (loaded == null) {
+            return false;
+        }
+        synchronized (this) {
+            catalog = loaded;
+        }
+        movies.addAll(loaded.getMovies());
+        assignSeats(movies, config.seatsPerRow);
+        schedule = new Schedule(loaded, config.salesCloseMinutes);
+        return true;
+    }
+
+    /**
+     * Gives every movie assigned seating
+     *
+     * @param movies the movies
+     * @param seatsPerRow seats in every row, 0 to leave tickets only counted
+     */
+    static void assignSeats(List<Movie> movies, int seatsPerRow) {
+        if (seatsPerRow > 0) {
+            for (Movie movie : movies) {
+                movie.assignSeats(seatsPerRow);
+            }
+        }
+    }
+
+    /**
+     * Loads all the movies in the file to a list
+     *
+     * @param filename filename of the movie file, see MovieCatalog for the format
+     * @param movies list the movies are added to
+     * @return if file was loaded successfully
+     */
+    static boolean loadMovies(String filename, List<Movie> movies) {
+        MovieCatalog catalog = loadCatalog(filename);
+        if (catalog == null) {
+            return false;
+        }
+        movies.addAll(catalog.getMovies());
+        return true;
+    }
+
+    /**
+     * Loads all the movies in the file to a catalog
+     *
+     * @param filename filename of the movie file, see MovieCatalog for the format
+     * @return the catalog, or null if the file could not be loaded
+     */
+    static MovieCatalog loadCatalog(String filename) {
         File file = new File(filename);
-        Scanner inFile;
         if (!file.exists()) { //check if file exists
-            return false;
+            return null;
         }
         try {   //load data from file
-            inFile = new Scanner(file);
-            while (inFile.hasNextLine()) {
-                String line[] = inFile.nextLine().trim().split("\t");
-                movies.add(new Movie(line[0], Integer.valueOf(line[1])));
-            }
-            inFile.close();
-        } catch (FileNotFoundException ex) {
+            return MovieCatalog.load(file.toPath());
+        } catch (IOException ex) {
             Logger.getLogger(Theater.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
         }
-        //System.out.println("Movies loaded");
-        return true;
     }
 
     /**
@@ -161,9 +711,8 @@ public class Theater {
      * @return always returns true
      */
     private boolean initBoxAgents() {
-        for (int i = 0; i < MAX_BOX_AGENTS; i++) {
-            Thread thread = new Thread(new BoxOfficeAgent(i, this));
-            thread.start();
+        for (int i = 0; i < config.workers[TheaterConfig.BOX]; i++) {
+            startWorker(new BoxOfficeAgent(i, this));
         }
         return true;
     }
@@ -174,9 +723,8 @@ public class Theater {
      * @return always returns true
      */
     private boolean initTicketTakers() {
-        for (int i = 0; i < MAX_TICKET_TAKERS; i++) {
-            Thread thread = new Thread(new TicketTaker(i, this));
-            thread.start();
+        for (int i = 0; i < config.workers[TheaterConfig.TICKET]; i++) {
+            startWorker(new TicketTaker(i, this));
         }
         return true;
     }
@@ -187,57 +735,232 @@ public class Theater {
      * @return always returns true
      */
     private boolean initConcessionWorkers() {
-        for (int i = 0; i < MAX_CONCESSION_WORKERS; i++) {
-            Thread thread = new Thread(new ConcessionWorker(i, this));
-            thread.start();
+        for (int i = 0; i < config.workers[TheaterConfig.CONCESSION]; i++) {
+            startWorker(new ConcessionWorker(i, this));
         }
         return true;
     }
 
     /**
-     * Creates all of the Customers threads and stores them in the customerThreads ArrayList
+     * Creates all of the Customers threads and stores them in the customerThreads ArrayList. Customers arrive as the
+     * configured arrival process says, all at once by default, or as they did in the replayed trace.
      *
      * @return always returns true
+     * @throws IOException if the arrival trace or replayed trace cannot be read, or the trace cannot be created
      */
-    public boolean initCustomers() {
-        for (int i = 0; i < MAX_CUSTOMERS; i++) {
-            customerThreads.add(new Thread(new Customer(i, this)));
-            customerThreads.get(i).start();
+    public boolean initCustomers() throws IOException {
+        ArrivalProcess process;
+        if (config.replayFile != null) {
+            replay = TraceReplay.load(Paths.get(config.replayFile));
+            customerCount = replay.getCustomers();   //every customer of the trace and no others
+            process = replay.newArrivals();
+        } else {
+            customerCount = config.customers;
+            process = ArrivalProcess.fromConfig(config);
+        }
+        if (config.traceFile != null) {
+            trace = new TraceRecorder(Paths.get(config.traceFile), config.traceRecords, config.timeScale);
+        }
+        openedNanos = System.nanoTime();
+        if (process instanceof ArrivalProcess.Burst) {
+            for (int i = 0; i < customerCount; i++) {
+                if (!startCustomer(i)) {    //draining
+                    break;
+                }
+            }
+        } else {
+            arrivals = new ArrivalGenerator(process, newRandom(), boxLine.getMetrics()::getInLine, config,
+                    customerCount);
+            arrivals.run(this::startCustomer);
         }
         joinCustomers();
+        closedNanos = System.nanoTime();
+        log.flush();
+        return true;
+    }
+
+    /**
+     * Lets one customer in unless the theater is draining
+     *
+     * @param id ID of the customer
+     * @return if the customer was let in
+     */
+    synchronized boolean startCustomer(int id) {
+        if (!accepting) {
+            return false;
+        }
+        Customer customer = new Customer(id, this);
+        trace(TraceRecorder.Type.ARRIVED, -1, id, customer.getPartySize(), customer.getMovie().id);
+        trace(TraceRecorder.Type.KIND, -1, id, -1, customer.getKind().ordinal());
+        TheaterEvents.Arrival event = new TheaterEvents.Arrival();
+        if (event.shouldCommit()) {
+            event.customer = id;
+            event.partySize = customer.getPartySize();
+            event.movie = customer.getMovie().title;
+            event.kind = customer.getKind().name();
+            event.commit();
+        }
+        people += customer.getPartySize();
+        customerTasks.add(pool.submit(customer));
         return true;
     }
 
+    /**
+     * Returns the generator that let customers in
+     *
+     * @return the arrival generator, or null if every customer arrived at once
+     */
+    ArrivalGenerator getArrivals() {
+        return arrivals;
+    }
+
     /**
      * Joins all of the customer threads
      */
     private void joinCustomers() {
-        try {
-            for (int i = 0; i < customerThreads.size(); i++) {
-                customerThreads.get(i).join();
-                System.out.println("Joined customer " + i);
-            }
-        } catch (InterruptedException ex) {
-            Logger.getLogger(Theater.class.getName()).log(Level.SEVERE, null, ex);
+        List<Future<?>> tasks = customerTasks();
+        for (int i = 0; i < tasks.size(); i++) {
+            waitFor(List.of(tasks.get(i)));
+            log.log(EventLog.Type.JOINED, i, -1, -1);
         }
-
     }
 
     /**
      * Starts the movie theater simulation
      *
-     * @param args the command line arguments
+     * @param args the command line arguments: movie filename followed by optional --config=file and --key=value
+     * settings, see TheaterConfig. --mode=event runs the discrete-event simulation instead of threads, and
+     * --mode=reactive runs ReactiveTheater on a few carrier threads. --shards=N runs a Multiplex of N theaters.
+     * --trace=file records the run and --replay=file runs the customers of a recorded run again. --online.port=N
+     * sells tickets online on localhost port N while the theater runs.
+     * @throws IOException if the config file cannot be read or the binary event log cannot be created
      */
-    public static void main(String[] args) {
-        Theater theater = new Theater();
-        if (args.length >= 1) {
-            theater.initTheater(args[0]);
-        } else {
+    public static void main(String[] args) throws IOException {
+        TheaterConfig config;
+        try {
+            config = TheaterConfig.fromArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            return;
+        }
+        if (config.movieFile == null) {
             System.out.println("Missing parameter movie filename");
             return;
         }
-        theater.initCustomers();
-        System.exit(0);
+        if (config.mode.equals("event")) {
+            MovieCatalog catalog = loadCatalog(config.movieFile);
+            if (catalog == null) {
+                System.out.println("Movie file could not be opened");
+                return;
+            }
+            EventSimulation simulation = new EventSimulation(catalog.getMovies(), config);
+            System.out.println(simulation.run());
+            Schedule schedule = new Schedule(catalog, config.salesCloseMinutes);
+            if (schedule.isTimed()) {
+                schedule.report(System.out, simulation.getSold());
+            }
+            return;
+        }
+        if (config.mode.equals("reactive")) {
+            ArrayList<Movie> movies = new ArrayList<>();
+            if (!loadMovies(config.movieFile, movies)) {
+                System.out.println("Movie file could not be opened");
+                return;
+            }
+            assignSeats(movies, config.seatsPerRow);
+            OutputStream logStream = System.out;
+            if (config.log == EventLog.Output.BINARY) {
+                logStream = new BufferedOutputStream(new FileOutputStream("events.bin"));
+            }
+            ReactiveTheater theater;
+            try {
+                theater = new ReactiveTheater(config, movies, logStream);
+            } catch (IllegalArgumentException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+            SimulationResult result = theater.run();
+            theater.getLog().close();
+            System.out.println(result);
+            theater.getMetrics().report(System.out);
+            return;
+        }
+        ThreadFactory factory;
+        try {
+            factory = ThreadMode.parse(config.mode).newFactory();
+        } catch (UnsupportedOperationException | IllegalArgumentException ex) {
+            System.out.println("Cannot run in mode " + config.mode + ": " + ex.getMessage());
+            return;
+        }
+        OutputStream logStream = System.out;
+        if (config.log == EventLog.Output.BINARY) {
+            logStream = new BufferedOutputStream(new FileOutputStream("events.bin"));
+        }
+        if (config.shards != 1) {
+            if (config.traceFile != null || config.replayFile != null) {
+                System.out.println("trace and replay need a single theater");
+                return;
+            }
+            if (config.onlinePort >= 0) {
+                System.out.println("online sales need a single theater");
+                return;
+            }
+            Multiplex multiplex = new Multiplex(config, factory, logStream);
+            multiplex.initTheaters(config.movieFile);
+            try {
+                multiplex.initCustomers();
+            } catch (IllegalArgumentException ex) {
+                System.out.println(ex.getMessage());
+            }
+            multiplex.shutdown();
+            multiplex.closeLogs();
+            System.out.println(multiplex.getResult());
+            multiplex.report(System.out);
+            return;
+        }
+        Theater theater = new Theater(config, factory, logStream);
+        theater.initTheater(config.movieFile);
+        OnlineSales online = null;
+        if (config.onlinePort >= 0) {
+            OnlineSales.noDelay();
+            online = new OnlineSales(theater, config.onlinePort, config.onlineThreads);
+            online.start();
+            System.out.println("Selling tickets online at http://localhost:" + online.getPort() + "/tickets");
+        }
+        try {
+            theater.initCustomers();
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+        }
+        theater.shutdown();
+        if (online != null) {
+            online.stop();
+        }
+        theater.getLog().close();
+        System.out.println(theater.getResult());
+        if (online != null) {
+            System.out.println("plus " + theater.getSoldOnline() + " seats sold online");
+        }
+        if (theater.getArrivals() != null) {
+            theater.getArrivals().report(System.out);
+        }
+        if (config.hasCustomerKinds()) {
+            theater.reportKinds(System.out);
+        }
+        if (theater.getKitchen() != null) {
+            theater.getKitchen().report(System.out, theater.getResult().simulatedMillis);
+        }
+        if (theater.getSchedule().isTimed()) {
+            int[] sold = new int[theater.getMovies().size()];
+            for (Movie movie : theater.getMovies()) {
+                sold[movie.id] = movie.getTicketsSold();
+            }
+            theater.getSchedule().report(System.out, sold);
+        }
+        if (online != null) {
+            online.report(System.out);
+        }
+        theater.getMetrics().report(System.out);
     }
 
 }
@@ -0,0 +1,413 @@
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Settings of one simulation run. Every setting has a default matching the constants in Theater and the workers, and
+ * can be changed from a properties file, a flat YAML file (key: value lines) or --key=value command line flags.
+ *
+ * Keys: customers, box.agents, ticket.takers, concession.workers, time.scale, mode, log, seed, arrival (burst, constant,
+ * poisson, diurnal, bursty or trace:file), arrival.rate (customers per simulated minute), arrival.period.ms (length of
+ * a diurnal cycle), line.capacity (customers allowed in the box office line before arrivals are held back, 0 for no
+ * limit), party.size (people arriving together, see PartySize.parse), batch.size (most customers a ticket taker or
+ * concession worker serves at once), handoff (semaphore or park), lanes (shared, shortest or two-choices: one
+ * queue per stage, or a lane per worker that customers pick by length and idle workers steal from), line.order (fifo or
+ * priority: serve customers in the order they joined, or by deadline so members and customers whose showing starts
+ * soon go first), member.share and prepaid.share (fractions of customers that are members or bought their ticket
+ * online and skip the box office), priority.aging.ms (simulated time a customer without priority waits before they go
+ * ahead of newly joined urgent ones), priority.soon.min (customers whose showing starts within this many minutes of
+ * arriving get priority, 0 for none), open.time (time of day the theater opens, HH:MM), sales.close.min (minutes
+ * before a showtime ticket sales for it close, see Schedule), sla.ms (simulated time from arriving to entering each
+ * kind of customer is reported against), popcorn.batch (portions the popcorn machine cooks at once, 0 for popcorn
+ * that never runs out), popcorn.cook.ms, popcorn.warmer (most portions kept warm),
+ * popcorn.patience.ms (how long a concession worker waits for popcorn before the customer goes without),
+ * soda.dispensers (0 for as many as needed), soda.pour.ms (per cup), seats.row (seats in every row of an auditorium,
+ * so parties are sold adjacent seats from a SeatMap, 0 to only count tickets), trace (file every arrival, handoff and
+ * service is recorded to, see TraceRecorder), trace.records (most records the trace file holds), replay (trace file whose
+ * customers arrive again with the same decisions, see TraceReplay), stage.capacity (customers allowed in the ticket
+ * taker and concession lines in reactive mode before the workers before them hold on to their customers, 0 for no
+ * limit), carrier.threads (threads running reactive mode, 0 for one per processor), shards (theaters in a Multiplex,
+ * 0 for one per processor), router (round-robin, random or shortest-line), online.port (localhost port OnlineSales
+ * sells tickets on while the threaded theater runs, 0 for any free port, -1 for none), online.threads (threads running
+ * its handlers, 0 for virtual threads when available), service.box, service.ticket, service.concession (see
+ * ServiceTime.parse), and autoscale.box.threshold, autoscale.box.max and likewise for ticket and concession, plus
+ * autoscale.period.ms.
+ *
+ */
+public class TheaterConfig implements Cloneable {
+
+    //stage indexes used by the per-stage settings
+    static final int BOX = 0;
+    static final int TICKET = 1;
+    static final int CONCESSION = 2;
+    static final String[] STAGE_KEYS = {"box", "ticket", "concession"};
+
+    String movieFile;
+    int customers = Theater.MAX_CUSTOMERS;
+    int[] workers = {Theater.MAX_BOX_AGENTS, Theater.MAX_TICKET_TAKERS, Theater.MAX_CONCESSION_WORKERS};
+    int timeScale = Theater.TIME_SCALE;
+    String mode = "platform";
+    EventLog.Output log = EventLog.Output.TEXT;
+    long seed = System.nanoTime();
+    String arrival = null;
+    double arrivalRate = 0;
+    long arrivalPeriodMillis = 3600000;
+    int lineCapacity = 0;
+    PartySize partySize = new PartySize(1);
+    int batchSize = 1;
+    ServiceLine.Handoff handoff = ServiceLine.Handoff.SEMAPHORE;
+    ServiceLine.Lanes lanes = ServiceLine.Lanes.SHARED;
+    ServiceLine.Order lineOrder = ServiceLine.Order.FIFO;
+    double memberShare = 0;
+    double prepaidShare = 0;
+    long priorityAgingMillis = 600000;
+    int soonMinutes = 0;
+    //minutes after midnight the theater opens, and the entry time every kind of customer should stay within
+    int openTime = 10 * 60;
+    int salesCloseMinutes = 0;
+    long slaMillis = 600000;
+    int popcornBatch = 0;
+    long popcornCookMillis = 240000;
+    int popcornWarmer = 60;
+    long popcornPatienceMillis = 120000;
+    int sodaDispensers = 0;
+    long sodaPourMillis = 20000;
+    int seatsPerRow = 0;
+    String traceFile = null;
+    int traceRecords = 1 << 20;
+    String replayFile = null;
+    int stageCapacity = 64;
+    int carrierThreads = 0;
+    int shards = 1;
+    Multiplex.Router router = Multiplex.Router.ROUND_ROBIN;
+    int onlinePort = -1;
+    int onlineThreads = 0;
+    ServiceTime[] serviceTimes = {
+        new ServiceTime(ServiceTime.Kind.FIXED, BoxOfficeAgent.TIME),
+        new ServiceTime(ServiceTime.Kind.FIXED, TicketTaker.TIME),
+        new ServiceTime(ServiceTime.Kind.FIXED, ConcessionWorker.TIME)};
+    //line length that makes the autoscaler add a worker, 0 to never, and the most workers it may add up to
+    int[] autoscaleThreshold = {0, 0, 0};
+    int[] autoscaleMax = {0, 0, 0};
+    long autoscalePeriodMillis = 100;
+
+    /**
+     * Constructs a TheaterConfig with every setting at its default
+     */
+    public TheaterConfig() {
+    }
+
+    /**
+     * Returns a copy that can be changed without changing this config
+     *
+     * @return a copy of every setting
+     */
+    TheaterConfig copy() {
+        try {
+            TheaterConfig copy = (TheaterConfig) super.clone();
+            copy.workers = workers.clone();
+            copy.serviceTimes = serviceTimes.clone();
+            copy.autoscaleThreshold = autoscaleThreshold.clone();
+            copy.autoscaleMax = autoscaleMax.clone();
+            return copy;
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Builds a config from command line arguments: the movie filename followed by --config=file and --key=value
+     * flags. Flags override the file no matter their order.
+     *
+     * @param args the command line arguments
+     * @return the config
+     * @throws IOException if the config file cannot be read
+     * @throws IllegalArgumentException if a key or value is invalid
+     */
+    public static TheaterConfig fromArgs(String[] args) throws IOException {
+        TheaterConfig config = new TheaterConfig();
+        Properties flags = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                if (config.movieFile != null) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+                config.movieFile = arg;
+                continue;
+            }
+            String[] kv = arg.substring(2).split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            if (kv[0].equals("config")) {
+                config.load(kv[1]);
+            } else {
+                flags.setProperty(kv[0], kv[1]);
+            }
+        }
+        config.setAll(flags);
+        return config;
+    }
+
+    /**
+     * Loads settings from a .properties file or a flat .yml/.yaml file
+     *
+     * @param filename the file
+     * @throws IOException if the file cannot be read
+     */
+    public void load(String filename) throws IOException {
+        Properties props = new Properties();
+        if (filename.endsWith(".yml") || filename.endsWith(".yaml")) {
+            for (String line : Files.readAllLines(Paths.get(filename))) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    props.setProperty(line.substring(0, colon).trim(), unquote(line.substring(colon + 1).trim()));
+                }
+            }
+        } else {
+            try (Reader in = new FileReader(filename)) {
+                props.load(in);
+            }
+        }
+        setAll(props);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+                || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private void setAll(Properties props) {
+        for (String key : props.stringPropertyNames()) {
+            set(key, props.getProperty(key));
+        }
+    }
+
+    /**
+     * Changes one setting
+     *
+     * @param key name of the setting
+     * @param value new value
+     * @throws IllegalArgumentException if the key is unknown or the value is invalid
+     */
+    public void set(String key, String value) {
+        value = value.trim();
+        switch (key) {
+            case "movies":
+                movieFile = value;
+                return;
+            case "customers":
+                customers = Integer.parseInt(value);
+                return;
+            case "box.agents":
+                workers[BOX] = parseAtLeastOne(key, value);
+                return;
+            case "ticket.takers":
+                workers[TICKET] = parseAtLeastOne(key, value);
+                return;
+            case "concession.workers":
+                workers[CONCESSION] = parseAtLeastOne(key, value);
+                return;
+            case "time.scale":
+                timeScale = parseAtLeastOne(key, value);
+                return;
+            case "mode":
+                mode = value.toLowerCase();
+                return;
+            case "log":
+                log = EventLog.Output.parse(value);
+                return;
+            case "seed":
+                seed = Long.parseLong(value);
+                return;
+            case "arrival":
+                arrival = value;
+                return;
+            case "arrival.rate":
+                arrivalRate = Double.parseDouble(value);
+                return;
+            case "arrival.period.ms":
+                arrivalPeriodMillis = Long.parseLong(value);
+                return;
+            case "line.capacity":
+                lineCapacity = Integer.parseInt(value);
+                return;
+            case "party.size":
+                partySize = PartySize.parse(value);
+                return;
+            case "batch.size":
+                batchSize = parseAtLeastOne(key, value);
+                return;
+            case "handoff":
+                handoff = ServiceLine.Handoff.parse(value);
+                return;
+            case "lanes":
+                lanes = ServiceLine.Lanes.parse(value);
+                return;
+            case "line.order":
+                lineOrder = ServiceLine.Order.parse(value);
+                return;
+            case "member.share":
+                memberShare = Double.parseDouble(value);
+                return;
+            case "prepaid.share":
+                prepaidShare = Double.parseDouble(value);
+                return;
+            case "priority.aging.ms":
+                priorityAgingMillis = Long.parseLong(value);
+                return;
+            case "priority.soon.min":
+                soonMinutes = Integer.parseInt(value);
+                return;
+            case "open.time":
+                openTime = parseTime(value);
+                return;
+            case "sales.close.min":
+                salesCloseMinutes = Integer.parseInt(value);
+                return;
+            case "sla.ms":
+                slaMillis = Long.parseLong(value);
+                return;
+            case "popcorn.batch":
+                popcornBatch = Integer.parseInt(value);
+                return;
+            case "popcorn.cook.ms":
+                popcornCookMillis = Long.parseLong(value);
+                return;
+            case "popcorn.warmer":
+                popcornWarmer = Integer.parseInt(value);
+                return;
+            case "popcorn.patience.ms":
+                popcornPatienceMillis = Long.parseLong(value);
+                return;
+            case "soda.dispensers":
+                sodaDispensers = Integer.parseInt(value);
+                return;
+            case "soda.pour.ms":
+                sodaPourMillis = Long.parseLong(value);
+                return;
+            case "seats.row":
+                seatsPerRow = Integer.parseInt(value);
+                return;
+            case "trace":
+                traceFile = value;
+                return;
+            case "trace.records":
+                traceRecords = Integer.parseInt(value);
+                return;
+            case "replay":
+                replayFile = value;
+                return;
+            case "stage.capacity":
+                stageCapacity = Integer.parseInt(value);
+                return;
+            case "carrier.threads":
+                carrierThreads = Integer.parseInt(value);
+                return;
+            case "shards":
+                shards = Integer.parseInt(value);
+                return;
+            case "router":
+                router = Multiplex.Router.parse(value);
+                return;
+            case "online.port":
+                onlinePort = Integer.parseInt(value);
+                return;
+            case "online.threads":
+                onlineThreads = Integer.parseInt(value);
+                return;
+            case "autoscale.period.ms":
+                autoscalePeriodMillis = Long.parseLong(value);
+                return;
+            default:
+                break;
+        }
+        for (int stage = BOX; stage <= CONCESSION; stage++) {
+            if (key.equals("service." + STAGE_KEYS[stage])) {
+                serviceTimes[stage] = ServiceTime.parse(value);
+                return;
+            } else if (key.equals("autoscale." + STAGE_KEYS[stage] + ".threshold")) {
+                autoscaleThreshold[stage] = Integer.parseInt(value);
+                return;
+            } else if (key.equals("autoscale." + STAGE_KEYS[stage] + ".max")) {
+                autoscaleMax[stage] = Integer.parseInt(value);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unknown setting " + key);
+    }
+
+    /**
+     * Parses a setting that must be at least 1, such as a number of workers
+     *
+     * @param key name of the setting, for the error message
+     * @param value the value
+     * @return the number
+     * @throws IllegalArgumentException if the value is not a number or below 1
+     */
+    private static int parseAtLeastOne(String key, String value) {
+        int n = Integer.parseInt(value);
+        if (n < 1) {
+            throw new IllegalArgumentException(key + " must be at least 1");
+        }
+        return n;
+    }
+
+    /**
+     * Parses a time of day as HH:MM or as minutes after midnight
+     *
+     * @param value the time
+     * @return minutes after midnight
+     */
+    private static int parseTime(String value) {
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            return Integer.parseInt(value);
+        }
+        return Integer.parseInt(value.substring(0, colon)) * 60 + Integer.parseInt(value.substring(colon + 1));
+    }
+
+    /**
+     * Returns if some customers are members, prepaid or in a hurry, so results are worth breaking down by kind
+     *
+     * @return if any customer can be other than REGULAR
+     */
+    boolean hasCustomerKinds() {
+        return memberShare > 0 || prepaidShare > 0 || soonMinutes > 0;
+    }
+
+    /**
+     * Returns if popcorn or soda dispensers are limited, so the concession stand needs a Kitchen
+     *
+     * @return if stock or machines can hold concession workers up
+     */
+    boolean hasKitchen() {
+        return popcornBatch > 0 || sodaDispensers > 0;
+    }
+
+    /**
+     * Returns if any stage has autoscaling turned on
+     *
+     * @return if the autoscaler should run
+     */
+    boolean isAutoscaling() {
+        for (int stage = BOX; stage <= CONCESSION; stage++) {
+            if (autoscaleThreshold[stage] > 0 && autoscaleMax[stage] > workers[stage]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
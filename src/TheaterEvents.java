@@ -0,0 +1,122 @@
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of the threaded theater. Their defaults are meant to stay on in production: no stack traces,
+ * and waits and services only recorded when they take longer than a threshold, so a recording without settings of its
+ * own only holds the slow ones. theater.jfc records all of them along with the JDK's sleep, park and monitor events,
+ * and JfrSummary summarizes a recording per stage.
+ *
+ * An event costs next to nothing while no recording has it enabled, since it is only filled in when shouldCommit
+ * says it will be kept.
+ *
+ */
+public final class TheaterEvents {
+
+    private static final String CATEGORY = "Theater";
+
+    private TheaterEvents() {
+    }
+
+    /**
+     * A customer arrived at the theater
+     */
+    @Name("theater.Arrival")
+    @Label("Customer Arrival")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Arrival extends Event {
+
+        @Label("Customer")
+        int customer;
+
+        @Label("Party Size")
+        int partySize;
+
+        @Label("Movie")
+        String movie;
+
+        @Label("Kind")
+        String kind;
+    }
+
+    /**
+     * A customer was in a line, from joining it until a worker was done with them
+     */
+    @Name("theater.LineWait")
+    @Label("Line Wait")
+    @Category(CATEGORY)
+    @Description("Time a customer spent in a line of a stage, from joining it until a worker was done with them")
+    @StackTrace(false)
+    @Threshold("20 ms")
+    public static class LineWait extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Customer")
+        int customer;
+
+        @Label("Queue Wait")
+        @Description("Time until a worker took the customer, as measured by the worker, the rest being service")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+    }
+
+    /**
+     * A worker served one customer or a batch of them
+     */
+    @Name("theater.Service")
+    @Label("Service")
+    @Category(CATEGORY)
+    @Description("Time a worker slept to serve, next to the time it asked to sleep, so their difference is sleep drift")
+    @StackTrace(false)
+    @Threshold("20 ms")
+    public static class Service extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Worker")
+        int worker;
+
+        @Label("Simulated Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long simulatedMillis;
+
+        @Label("Requested Sleep")
+        @Timespan(Timespan.MILLISECONDS)
+        long requestedMillis;
+    }
+
+    /**
+     * The last seat of a showing was sold, with none held that could still be cancelled
+     */
+    @Name("theater.SellOut")
+    @Label("Sell-out")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class SellOut extends Event {
+
+        @Label("Movie")
+        String movie;
+
+        @Label("Showtime")
+        @Description("Minutes after midnight, or -1")
+        int showtime;
+
+        @Label("Screen")
+        int screen;
+
+        @Label("Seats")
+        int capacity;
+    }
+
+}
@@ -0,0 +1,91 @@
+
+import java.io.PrintStream;
+
+/**
+ * Wait time, service time and line length metrics for every stage of a theater
+ *
+ */
+public class TheaterMetrics {
+
+    //the fastest of several short rounds is taken, as the first ones run before the JIT has compiled the path
+    private static final int CALIBRATION_ROUNDS = 100000;
+    private static final int CALIBRATION_REPEATS = 10;
+
+    private final StageMetrics[] stages;
+
+    /**
+     * Constructs a TheaterMetrics over the given stages
+     *
+     * @param stages metrics of each stage in the order customers visit them
+     */
+    public TheaterMetrics(StageMetrics... stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Returns the metrics of every stage
+     *
+     * @return stages in the order customers visit them
+     */
+    public StageMetrics[] getStages() {
+        return stages.clone();
+    }
+
+    /**
+     * Measures what recording one customer's visit to one stage costs, as ServiceLine records it: the line length
+     * sample, the wait from timestamps already taken, the one clock read when the service ends and the service time of
+     * the worker.
+     *
+     * @return average instrumentation cost in nanoseconds per customer per stage
+     */
+    public static double measureOverheadNanos() {
+        long elapsed = Long.MAX_VALUE;
+        StageMetrics scratch = new StageMetrics("calibration");
+        for (int round = 0; round < CALIBRATION_REPEATS; round++) {
+            long free = System.nanoTime();
+            long start = System.nanoTime();
+            for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+                scratch.joined();
+                scratch.left(free - start);
+                long now = System.nanoTime();
+                scratch.served(i & 3, now - free);
+                free = now;
+            }
+            elapsed = Math.min(elapsed, System.nanoTime() - start);
+        }
+        return (double) elapsed / CALIBRATION_ROUNDS;
+    }
+
+    /**
+     * Measures the System.nanoTime call a stage makes, which is most of the instrumentation cost on machines with a
+     * slow clock source
+     *
+     * @return average cost of one clock read in nanoseconds
+     */
+    public static double measureClockNanos() {
+        long elapsed = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < CALIBRATION_REPEATS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+                sink += System.nanoTime();
+            }
+            elapsed = Math.min(elapsed, System.nanoTime() - start);
+        }
+        return sink == 42 ? 0 : (double) elapsed / CALIBRATION_ROUNDS;
+    }
+
+    /**
+     * Prints an end-of-run report of every stage
+     *
+     * @param out stream to print to
+     */
+    public void report(PrintStream out) {
+        for (StageMetrics stage : stages) {
+            stage.report(out);
+        }
+        out.printf("Instrumentation overhead: %.1f ns per customer per stage, of which %.1f ns is reading the clock%n",
+                measureOverheadNanos(), measureClockNanos());
+    }
+
+}
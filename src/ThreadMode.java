@@ -0,0 +1,40 @@
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The kind of thread that Customers and Workers run on
+ *
+ */
+public enum ThreadMode {
+    PLATFORM, VIRTUAL;
+
+    /**
+     * Creates a ThreadFactory for this mode. Virtual threads are looked up reflectively so the simulation still builds
+     * and runs in platform mode on JDKs older than 21.
+     *
+     * @return factory creating unstarted threads of this kind
+     * @throws UnsupportedOperationException if this mode is not supported by the running JVM
+     */
+    public ThreadFactory newFactory() {
+        if (this == PLATFORM) {
+            return Thread::new;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer", ex);
+        }
+    }
+
+    /**
+     * Parses a mode name, ignoring case
+     *
+     * @param name name of the mode
+     * @return the matching mode
+     */
+    public static ThreadMode parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+}
@@ -1,7 +1,4 @@
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 /**
  * A ticket taker in the movie theater
  *
@@ -11,6 +8,11 @@ import java.util.logging.Logger;
 public class TicketTaker extends Worker {
 
     public static final int TIME = 15000;
+    //share of TIME every ticket after the first in a batch takes
+    public static final double EXTRA_TICKET = 0.25;
+
+    //customers served in the current batch
+    private final Customer[] batch;
 
     /**
      * Constructs a TicketTaker object with an ID
@@ -20,22 +22,47 @@ public class TicketTaker extends Worker {
      */
     public TicketTaker(int id, Theater theater) {
         super(id, theater);
+        this.batch = new Customer[theater.getTicketLine().getBatchSize()];
     }
 
     /**
-     * Waits for a customer to arrive, then takes their ticket and admits them into the theater
+     * Returns how many single services scanning a number of tickets at once takes as long as
+     *
+     * @param tickets tickets in the batch
+     * @return 1 for the first ticket plus EXTRA_TICKET for each other
+     */
+    static double batchUnits(int tickets) {
+        return 1 + (tickets - 1) * EXTRA_TICKET;
+    }
+
+    /**
+     * Waits for a customer to arrive, then takes the tickets of every ready customer up to the batch size and admits
+     * them into the theater
      */
     @Override
     void work() {
         try {
-            theater.getTicketCustomerReadySem().acquire();   //wait for customer to be ready
-            Customer c = theater.getTicketQ().remove();
-            Thread.sleep(TIME / Theater.TIME_SCALE);
-            System.out.println("Ticket taken from " + c);
-            c.release();  //tell customer transaction done
-            theater.getTicketSem().release();    //transaction done, ready for next customer
-        } catch (InterruptedException ex) {
-            Logger.getLogger(TicketTaker.class.getName()).log(Level.SEVERE, null, ex);
+            int count = theater.getTicketLine().nextBatch(this, batch);   //wait for customers to be ready
+            if (count == 0) {    //asked to leave instead
+                goHome();
+                return;
+            }
+            long start = theater.getTicketLine().started(this, batch, count);
+            int tickets = 0;
+            for (int i = 0; i < count; i++) {
+                theater.trace(TraceRecorder.Type.TAKEN, TheaterConfig.TICKET, batch[i].getId(), id, -1);
+                tickets += batch[i].getPartySize();
+            }
+            serve(TheaterConfig.TICKET, batchUnits(tickets));
+            theater.getTicketLine().finished(this, start, batch, count);    //transaction done, ready for next customers
+            for (int i = 0; i < count; i++) {
+                theater.getLog().log(EventLog.Type.TICKET_TAKEN, batch[i].getId(), id, -1);
+                theater.trace(TraceRecorder.Type.RELEASED, TheaterConfig.TICKET, batch[i].getId(), id, -1);
+                batch[i].release();  //tell customer transaction done
+                batch[i] = null;
+            }
+        } catch (InterruptedException ex) {    //told to stop
+            goHome();
         }
     }
 
@@ -46,11 +73,12 @@ public class TicketTaker extends Worker {
 
     @Override
     void printCreated() {
-        if (Theater.MAX_TICKET_TAKERS != 1) {
-            System.out.println(this.getTitle() + " " + id + " created");
-        } else {
-            System.out.println(this.getTitle() + " created");
-        }
+        printCreated(TheaterConfig.TICKET);
+    }
+
+    @Override
+    int getStage() {
+        return TheaterConfig.TICKET;
     }
 
 }
@@ -0,0 +1,133 @@
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records what every customer and worker does, with nanosecond timestamps, into a memory mapped file preallocated for
+ * a fixed number of records. A thread claims a record slot with one atomic increment and writes it in place, so
+ * recording takes no lock, allocates nothing and needs no writer thread. Records past the end of the file are
+ * counted and dropped.
+ *
+ * The file starts with a header of HEADER_SIZE bytes: the magic number, the time scale of the run, the record size,
+ * the number of records and the number dropped. Every record is its time in nanoseconds since the recorder was
+ * created, its type, stage, customer, worker and arg. TraceReplay reads the file back.
+ *
+ */
+public class TraceRecorder implements AutoCloseable {
+
+    /**
+     * Kinds of records. stage is a TheaterConfig stage index or -1, customer and worker are IDs or -1.
+     */
+    public enum Type {
+        //a customer arrived, worker holds their party size and arg their movie ID
+        ARRIVED,
+        //arg is the Customer.Kind ordinal of the customer that just arrived
+        KIND,
+        //arg is the Customer.Food ordinal the customer chose, or -1 if they skipped the concession stand
+        FOOD,
+        //a customer joined the line of a stage
+        JOINED,
+        //a worker took a customer from the line of a stage
+        TAKEN,
+        //a worker started and finished serving, arg is the sampled service time in simulated milliseconds
+        SERVICE_START,
+        SERVICE_END,
+        //a worker told a customer they were done with them
+        RELEASED
+    }
+
+    static final int MAGIC = 0x54524331;   //TRC1
+    static final int HEADER_SIZE = 32;
+    //bytes in one record: time, type, stage, customer, worker, arg
+    static final int RECORD_SIZE = 8 + 1 + 1 + 4 + 4 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final long capacity;
+    private final long startNanos;
+    private final int timeScale;
+    private final AtomicLong next;
+    private final AtomicLong dropped;
+
+    /**
+     * Creates a trace file, replacing any file already there, with room for a number of records
+     *
+     * @param file path of the trace file
+     * @param records most records the trace holds
+     * @param timeScale time scale of the run, so replay can convert times back to simulated time
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public TraceRecorder(Path file, int records, int timeScale) throws IOException {
+        long size = HEADER_SIZE + (long) records * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Trace of " + records + " records is too large to map");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.capacity = records;
+        this.timeScale = timeScale;
+        this.next = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Records one event. Threads write to different slots of the buffer and never move its position, so they can
+     * record at the same time.
+     *
+     * @param type kind of event
+     * @param stage TheaterConfig stage index, or -1
+     * @param customer customer ID, or -1
+     * @param worker worker ID, or -1
+     * @param arg depends on the type
+     */
+    public void record(Type type, int stage, int customer, int worker, int arg) {
+        long time = System.nanoTime() - startNanos;
+        long slot = next.getAndIncrement();
+        if (slot >= capacity) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int at = HEADER_SIZE + (int) slot * RECORD_SIZE;
+        buf.putLong(at, time);
+        buf.put(at + 8, (byte) type.ordinal());
+        buf.put(at + 9, (byte) stage);
+        buf.putInt(at + 10, customer);
+        buf.putInt(at + 14, worker);
+        buf.putInt(at + 18, arg);
+    }
+
+    /**
+     * Returns how many records did not fit in the file
+     *
+     * @return records dropped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the header, flushes the records to disk and cuts the file down to the records written. Every thread that
+     * records must have finished first.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        long count = Math.min(next.get(), capacity);
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, timeScale);
+        buf.putInt(8, RECORD_SIZE);
+        buf.putLong(12, count);
+        buf.putLong(20, dropped.get());
+        buf.force();
+        channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+        channel.close();
+    }
+
+}
@@ -0,0 +1,262 @@
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A trace written by TraceRecorder, read back. It holds what every customer decided, so a theater run with
+ * --replay=file gets the same customers arriving at the same simulated times with the same movies, parties, kinds and
+ * food, whatever the seed or the build. It also holds how long customers waited at each stage and how long workers
+ * served them, to compare runs.
+ *
+ * Run it to summarize a trace, or to compare two traces of the same workload:
+ *
+ * java TraceReplay base.trace [new.trace]
+ *
+ */
+public class TraceReplay {
+
+    private static final TraceRecorder.Type[] TYPES = TraceRecorder.Type.values();
+    private static final Customer.Kind[] KINDS = Customer.Kind.values();
+    private static final Customer.Food[] FOODS = Customer.Food.values();
+    private static final String[] STAGE_NAMES = {"Box office", "Ticket taker", "Concession stand"};
+    //food of a customer that skipped the concession stand or never reached it
+    private static final int NO_FOOD = -1;
+
+    private final long records;
+    private final long dropped;
+    //decisions and arrival time in simulated milliseconds of each customer, indexed by ID
+    private final int[] movies;
+    private final int[] partySizes;
+    private final int[] kinds;
+    private final int[] foods;
+    private final long[] arrivals;
+    //time customers waited in each line and workers spent serving, in simulated milliseconds, by stage
+    private final Histogram[] waits;
+    private final Histogram[] service;
+
+    private TraceReplay(long records, long dropped, int customers) {
+        this.records = records;
+        this.dropped = dropped;
+        this.movies = new int[customers];
+        this.partySizes = new int[customers];
+        this.kinds = new int[customers];
+        this.foods = new int[customers];
+        Arrays.fill(foods, NO_FOOD);
+        this.arrivals = new long[customers];
+        this.waits = new Histogram[STAGE_NAMES.length];
+        this.service = new Histogram[STAGE_NAMES.length];
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            waits[stage] = new Histogram();
+            service[stage] = new Histogram();
+        }
+    }
+
+    /**
+     * Reads a trace file
+     *
+     * @param file path of the trace file
+     * @return the trace
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public static TraceReplay load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.limit() < TraceRecorder.HEADER_SIZE || buf.getInt(0) != TraceRecorder.MAGIC
+                    || buf.getInt(8) != TraceRecorder.RECORD_SIZE) {
+                throw new IOException(file + " is not a trace");
+            }
+            int timeScale = buf.getInt(4);
+            long count = buf.getLong(12);
+            if (TraceRecorder.HEADER_SIZE + count * TraceRecorder.RECORD_SIZE > buf.limit()) {
+                throw new IOException(file + " is cut short");
+            }
+            int customers = 0;
+            for (long i = 0; i < count; i++) {
+                int at = offset(i);
+                if (TYPES[buf.get(at + 8)] == TraceRecorder.Type.ARRIVED) {
+                    customers = Math.max(customers, buf.getInt(at + 10) + 1);
+                }
+            }
+            TraceReplay trace = new TraceReplay(count, buf.getLong(20), customers);
+            trace.read(buf, count, timeScale);
+            return trace;
+        }
+    }
+
+    private static int offset(long record) {
+        return TraceRecorder.HEADER_SIZE + (int) record * TraceRecorder.RECORD_SIZE;
+    }
+
+    /**
+     * Collects the decisions of every customer and pairs up joins with takes and service starts with ends
+     */
+    private void read(ByteBuffer buf, long count, int timeScale) {
+        long[][] joined = new long[STAGE_NAMES.length][movies.length];
+        HashMap<Long, Long> started = new HashMap<>();
+        long firstArrival = -1;
+        for (long i = 0; i < count; i++) {
+            int at = offset(i);
+            long time = buf.getLong(at);
+            int stage = buf.get(at + 9);
+            int customer = buf.getInt(at + 10);
+            int worker = buf.getInt(at + 14);
+            int arg = buf.getInt(at + 18);
+            switch (TYPES[buf.get(at + 8)]) {
+                case ARRIVED:
+                    if (firstArrival < 0) {
+                        firstArrival = time;
+                    }
+                    //in double, huge time scales overflow a long
+                    arrivals[customer] = (long) ((double) (time - firstArrival) * timeScale / 1e6);
+                    partySizes[customer] = worker;
+                    movies[customer] = arg;
+                    break;
+                case KIND:
+                    kinds[customer] = arg;
+                    break;
+                case FOOD:
+                    foods[customer] = arg;
+                    break;
+                case JOINED:
+                    joined[stage][customer] = time;
+                    break;
+                case TAKEN:
+                    waits[stage].record((long) ((double) (time - joined[stage][customer]) * timeScale / 1e6));
+                    break;
+                case SERVICE_START:
+                    started.put(((long) stage << 32) | worker, time);
+                    break;
+                case SERVICE_END:
+                    Long start = started.remove(((long) stage << 32) | worker);
+                    if (start != null) {
+                        service[stage].record((long) ((double) (time - start) * timeScale / 1e6));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns how many customers arrived in the trace
+     *
+     * @return number of customers
+     */
+    public int getCustomers() {
+        return movies.length;
+    }
+
+    int getMovie(int customer) {
+        return movies[customer];
+    }
+
+    int getPartySize(int customer) {
+        return partySizes[customer];
+    }
+
+    Customer.Kind getKind(int customer) {
+        return KINDS[kinds[customer]];
+    }
+
+    /**
+     * Returns what a customer ordered at the concession stand
+     *
+     * @param customer customer ID
+     * @return the food, or null if they did not visit the stand
+     */
+    Customer.Food getFood(int customer) {
+        return foods[customer] == NO_FOOD ? null : FOODS[foods[customer]];
+    }
+
+    /**
+     * Returns an arrival process that lets customers in at the simulated times they arrived in the trace
+     *
+     * @return a new arrival process
+     */
+    ArrivalProcess newArrivals() {
+        return new ArrivalProcess.Trace(arrivals.clone());
+    }
+
+    Histogram getWaits(int stage) {
+        return waits[stage];
+    }
+
+    Histogram getService(int stage) {
+        return service[stage];
+    }
+
+    /**
+     * Returns how many customers decided differently in another trace, counting customers that are only in one of
+     * them. Food is only compared for customers that visited the stand in both, since customers that do not get a
+     * ticket never choose.
+     *
+     * @param other the other trace
+     * @return number of customers whose movie, party, kind or food differ
+     */
+    public int countDifferences(TraceReplay other) {
+        int n = Math.min(getCustomers(), other.getCustomers());
+        int differ = Math.abs(getCustomers() - other.getCustomers());
+        for (int c = 0; c < n; c++) {
+            boolean foodDiffers = foods[c] != NO_FOOD && other.foods[c] != NO_FOOD && foods[c] != other.foods[c];
+            if (movies[c] != other.movies[c] || partySizes[c] != other.partySizes[c] || kinds[c] != other.kinds[c]
+                    || foodDiffers) {
+                differ++;
+            }
+        }
+        return differ;
+    }
+
+    /**
+     * Prints the waits and service times of every stage, next to those of another trace if given
+     *
+     * @param out stream to print to
+     * @param other trace to compare with, or null
+     */
+    public void report(PrintStream out, TraceReplay other) {
+        out.printf("%d customers, %d records, %d dropped%n", getCustomers(), records, dropped);
+        if (other != null) {
+            out.printf("%d customers, %d records, %d dropped in the other trace, %d customers decided differently%n",
+                    other.getCustomers(), other.records, other.dropped, countDifferences(other));
+        }
+        out.printf("%-18s %-8s %10s %10s %10s %10s%n", "stage", "", "count", "mean s", "p50 s", "p99 s");
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            printTimes(out, STAGE_NAMES[stage], "wait", waits[stage], other == null ? null : other.waits[stage]);
+            printTimes(out, "", "service", service[stage], other == null ? null : other.service[stage]);
+        }
+    }
+
+    private static void printTimes(PrintStream out, String stage, String label, Histogram h, Histogram other) {
+        out.printf("%-18s %-8s %10d %10.1f %10.1f %10.1f%n", stage, label, h.getCount(), h.getMean() / 1000,
+                h.getPercentile(50) / 1000.0, h.getPercentile(99) / 1000.0);
+        if (other != null) {
+            out.printf("%-18s %-8s %10d %10.1f %10.1f %10.1f%n", "", "  other", other.getCount(),
+                    other.getMean() / 1000, other.getPercentile(50) / 1000.0, other.getPercentile(99) / 1000.0);
+        }
+    }
+
+    /**
+     * Summarizes a trace, or compares two
+     *
+     * @param args the trace file, optionally followed by a second trace file to compare with
+     * @throws IOException if a trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java TraceReplay trace [other-trace]");
+            return;
+        }
+        TraceReplay trace = load(Paths.get(args[0]));
+        TraceReplay other = args.length == 2 ? load(Paths.get(args[1])) : null;
+        trace.report(System.out, other);
+    }
+
+}
@@ -1,4 +1,6 @@
 
+import java.util.SplittableRandom;
+
 /**
  * @author Zion Mantey
  *
@@ -7,6 +9,12 @@ public abstract class Worker implements Runnable {
 
     final Theater theater;
     final int id;
+    //random generator for service times
+    private final SplittableRandom rand;
+    //cleared when the worker is sent home
+    private volatile boolean working = true;
+    //System.nanoTime() when the worker was last free for the next customer, kept up by its ServiceLine
+    long freeNanos;
 
     /**
      * Constructs a Worker object with an ID
@@ -17,6 +25,7 @@ public abstract class Worker implements Runnable {
     public Worker(int id, Theater theater) {
         this.theater = theater;
         this.id = id;
+        this.rand = theater.newRandom();
     }
 
     /**
@@ -36,6 +45,73 @@ public abstract class Worker implements Runnable {
      */
     abstract void printCreated();
 
+    /**
+     * Returns the stage the worker serves
+     *
+     * @return TheaterConfig.BOX, TICKET or CONCESSION
+     */
+    abstract int getStage();
+
+    /**
+     * Spends the time it takes to serve a customer at a stage
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     * @throws InterruptedException if interrupted while serving
+     */
+    void serve(int stage) throws InterruptedException {
+        serve(stage, 1);
+    }
+
+    /**
+     * Spends the time it takes to serve several customers at once at a stage
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     * @param units how many single services the batch takes as long as
+     * @throws InterruptedException if interrupted while serving
+     */
+    void serve(int stage, double units) throws InterruptedException {
+        long millis = (long) (theater.getConfig().serviceTimes[stage].sample(rand) * units);
+        theater.trace(TraceRecorder.Type.SERVICE_START, stage, -1, id, (int) millis);
+        TheaterEvents.Service event = new TheaterEvents.Service();
+        boolean recording = event.isEnabled();   //only read the clock for an enabled event
+        if (recording) {
+            event.begin();
+        }
+        Thread.sleep(millis / theater.getTimeScale());
+        if (recording) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = theater.getLine(stage).getMetrics().name;
+                event.worker = id;
+                event.simulatedMillis = millis;
+                event.requestedMillis = millis / theater.getTimeScale();
+                event.commit();
+            }
+        }
+        theater.trace(TraceRecorder.Type.SERVICE_END, stage, -1, id, (int) millis);
+    }
+
+    /**
+     * Stops the worker once the current work call returns
+     */
+    void goHome() {
+        working = false;
+        theater.getLog().log(EventLog.Type.WENT_HOME, -1, id, getStage());
+    }
+
+    /**
+     * Prints the string for creating the object with format depending on how many work at the same stage
+     *
+     * @param stage TheaterConfig.BOX, TICKET or CONCESSION
+     */
+    void printCreated(int stage) {
+        if (theater.getLine(stage).getWorkers() != 1) {
+            System.out.println(this.getTitle() + " " + id + " created");
+        } else {
+            System.out.println(this.getTitle() + " created");
+        }
+    }
+
     /**
      * Returns the Worker ID
      *
@@ -56,7 +132,8 @@ public abstract class Worker implements Runnable {
     public void run() {
         printCreated();
         theater.getInitSem().release();
-        while (true) {
+        freeNanos = System.nanoTime();
+        while (working) {
             work();
         }
     }
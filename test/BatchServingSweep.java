@@ -0,0 +1,75 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/*
+ * BatchServingSweep.java
+ *
+ * Compares ticket takers and concession workers serving one customer at a
+ * time with serving batches of ready customers. Customers arrive as a Poisson
+ * process faster than a single concession worker keeps up with, so batching
+ * raises throughput, while customers in a batch wait for the whole batch to
+ * be served. Prints admitted people per simulated hour and the median and p99
+ * time from arriving to entering, from many event-driven runs and from one
+ * threaded run per batch size.
+ *
+ * Usage: java BatchServingSweep [customers] [runs] [arrivalRate]
+ *
+ */
+public class BatchServingSweep {
+
+    private static final int[] BATCH_SIZES = {1, 2, 4, 8};
+    //30 ms box office, 5 ms ticket taker and 60 ms concession sleeps
+    private static final int TIME_SCALE = 3000;
+
+    public static void main(String args[]) throws Exception {
+        int customers = args.length >= 1 ? Integer.parseInt(args[0]) : 200;
+        int runs = args.length >= 2 ? Integer.parseInt(args[1]) : 200;
+        double rate = args.length >= 3 ? Double.parseDouble(args[2]) : 1.2;
+        Path movieFile = Bench.movieFile("Benchmark\t" + Integer.MAX_VALUE);
+        ArrayList<Movie> movies = new ArrayList<>();
+        Theater.loadMovies(movieFile.toString(), movies);
+
+        PrintStream out = System.out;
+        out.printf("%6s | %-34s | %-34s%n", "", "event (" + runs + " runs)", "threaded (1 run)");
+        out.printf("%6s | %12s %10s %10s | %12s %10s %10s%n", "batch", "people/hour", "p50 s", "p99 s",
+                "people/hour", "p50 s", "p99 s");
+        for (int batch : BATCH_SIZES) {
+            double throughput = 0;
+            Histogram entryTimes = new Histogram();
+            for (int run = 0; run < runs; run++) {
+                SimulationResult r = new EventSimulation(movies, config(customers, rate, batch, run)).run();
+                throughput += r.getThroughputPerHour();
+                entryTimes.add(r.entryTimes);
+            }
+
+            TheaterConfig config = config(customers, rate, batch, 1);
+            config.timeScale = TIME_SCALE;
+            config.log = EventLog.Output.OFF;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+            theater.initTheater(movieFile.toString());
+            theater.initCustomers();
+            theater.shutdown();
+            System.setOut(out);
+            SimulationResult t = theater.getResult();
+
+            out.printf("%6d | %12.1f %10.1f %10.1f | %12.1f %10.1f %10.1f%n", batch, throughput / runs,
+                    entryTimes.getPercentile(50) / 1000.0, entryTimes.getPercentile(99) / 1000.0,
+                    t.getThroughputPerHour(), t.entryTimes.getPercentile(50) / 1000.0,
+                    t.entryTimes.getPercentile(99) / 1000.0);
+        }
+    }
+
+    private static TheaterConfig config(int customers, double rate, int batch, long seed) {
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customers;
+        config.arrival = "poisson";
+        config.arrivalRate = rate;
+        config.batchSize = batch;
+        config.seed = seed;
+        return config;
+    }
+
+}
@@ -0,0 +1,198 @@
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+
+/*
+ * Bench.java
+ *
+ * A small benchmark harness: runs an operation on a number of threads for a
+ * few warmup iterations and then a few measured iterations of fixed length,
+ * and reports ops/sec and per-operation latency percentiles.
+ *
+ * movieFile writes the movie file a benchmark loads into its theaters.
+ *
+ * Latency includes the ~20-30ns cost of the two System.nanoTime calls
+ * around each operation.
+ *
+ */
+public class Bench {
+
+    public static final int WARMUP_ITERATIONS = 3;
+    public static final int MEASURED_ITERATIONS = 5;
+    public static final long ITERATION_NANOS = 500000000L;
+    //latency samples kept per thread per iteration
+    private static final int SAMPLES = 1 << 16;
+
+    /**
+     * An operation to measure
+     */
+    public interface Op {
+
+        /**
+         * Runs the operation once
+         *
+         * @param thread index of the calling thread
+         * @throws Exception any failure aborts the benchmark
+         */
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Result of one benchmark
+     */
+    public static class Result {
+
+        public final double opsPerSec;
+        public final double opsPerSecError;
+        public final long p50;
+        public final long p99;
+        public final long max;
+
+        Result(double opsPerSec, double opsPerSecError, long p50, long p99, long max) {
+            this.opsPerSec = opsPerSec;
+            this.opsPerSecError = opsPerSecError;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Prints the column headers used by print
+     *
+     * @param out stream to print to
+     */
+    public static void header(PrintStream out) {
+        out.printf("%-32s %7s %14s %10s %10s %10s %12s%n",
+                "benchmark", "threads", "ops/s", "+-", "p50 ns", "p99 ns", "max ns");
+    }
+
+    /**
+     * Prints one line of results
+     *
+     * @param out stream to print to
+     * @param name name of the benchmark
+     * @param threads number of threads the operation ran on
+     * @param r the measured result
+     */
+    public static void print(PrintStream out, String name, int threads, Result r) {
+        out.printf("%-32s %7d %14.0f %10.0f %10d %10d %12d%n",
+                name, threads, r.opsPerSec, r.opsPerSecError, r.p50, r.p99, r.max);
+    }
+
+    /**
+     * Measures an operation
+     *
+     * @param threads number of threads running the operation at once
+     * @param op the operation
+     * @return the measured result
+     * @throws Exception if the operation failed
+     */
+    public static Result measure(int threads, Op op) throws Exception {
+        int iterations = WARMUP_ITERATIONS + MEASURED_ITERATIONS;
+        long[][] samples = new long[threads][SAMPLES];
+        int[] sampled = new int[threads];
+        long[] counts = new long[threads];
+        double[] rates = new double[MEASURED_ITERATIONS];
+        long[] latencies = new long[0];
+        Exception[] failure = new Exception[1];
+
+        for (int it = 0; it < iterations; it++) {
+            final boolean measured = it >= WARMUP_ITERATIONS;
+            CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+            Thread[] runners = new Thread[threads];
+            final long[] deadline = new long[1];
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                runners[t] = new Thread(() -> {
+                    long n = 0;
+                    int s = 0;
+                    long[] mine = samples[id];
+                    try {
+                        barrier.await();
+                        long end = deadline[0];
+                        long now = System.nanoTime();
+                        while (now < end) {
+                            op.run(id);
+                            long after = System.nanoTime();
+                            if (s < SAMPLES) {
+                                mine[s++] = after - now;
+                            }
+                            now = after;
+                            n++;
+                        }
+                    } catch (Exception ex) {
+                        failure[0] = ex;
+                    }
+                    counts[id] = n;
+                    sampled[id] = s;
+                });
+                runners[t].start();
+            }
+            deadline[0] = System.nanoTime() + ITERATION_NANOS;
+            barrier.await();
+            long start = System.nanoTime();
+            long total = 0;
+            for (int t = 0; t < threads; t++) {
+                runners[t].join();
+                total += counts[t];
+            }
+            long elapsed = System.nanoTime() - start;
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            if (measured) {
+                rates[it - WARMUP_ITERATIONS] = total * 1e9 / elapsed;
+                int from = latencies.length;
+                int add = 0;
+                for (int t = 0; t < threads; t++) {
+                    add += sampled[t];
+                }
+                latencies = Arrays.copyOf(latencies, from + add);
+                for (int t = 0; t < threads; t++) {
+                    System.arraycopy(samples[t], 0, latencies, from, sampled[t]);
+                    from += sampled[t];
+                }
+            }
+        }
+
+        double mean = 0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= rates.length;
+        double var = 0;
+        for (double r : rates) {
+            var += (r - mean) * (r - mean);
+        }
+        double error = Math.sqrt(var / (rates.length - 1));
+        Arrays.sort(latencies);
+        if (latencies.length == 0) {
+            return new Result(mean, error, 0, 0, 0);
+        }
+        return new Result(mean, error, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                latencies[latencies.length - 1]);
+    }
+
+    /**
+     * Writes a temporary movie file, deleted when the JVM exits
+     *
+     * @param lines one showing per line, see MovieCatalog for the format
+     * @return path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static Path movieFile(String... lines) throws IOException {
+        Path file = Files.createTempFile("movies", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, Arrays.asList(lines));
+        return file;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
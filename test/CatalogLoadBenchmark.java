@@ -0,0 +1,120 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * CatalogLoadBenchmark.java
+ *
+ * Writes a catalog of showings (titles x showtimes x screens) to a temporary
+ * file and compares loading it with the original Scanner and String.split
+ * loader against MovieCatalog, both in load time and in heap retained by the
+ * loaded showings. Then compares finding a showing by title and showtime with
+ * a scan of the list against the catalog's index.
+ *
+ * Usage: java CatalogLoadBenchmark [titles] [showtimes] [screens]
+ *
+ */
+public class CatalogLoadBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int titles = args.length >= 1 ? Integer.parseInt(args[0]) : 2000;
+        int showtimes = args.length >= 2 ? Integer.parseInt(args[1]) : 12;
+        int screens = args.length >= 3 ? Integer.parseInt(args[2]) : 5;
+        Path file = Files.createTempFile("catalog", ".txt");
+        file.toFile().deleteOnExit();
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (int t = 0; t < titles; t++) {
+                for (int s = 0; s < showtimes; s++) {
+                    for (int screen = 0; screen < screens; screen++) {
+                        int time = 10 * 60 + s * 75;
+                        //every title has screens of its own, as a screen shows one thing at a time
+                        w.printf("Feature Presentation Number %d\t%d\t%02d:%02d\t%d%n", t, 100 + screen * 20,
+                                time / 60, time % 60, t * screens + screen);
+                    }
+                }
+            }
+        }
+        int showings = titles * showtimes * screens;
+        PrintStream out = System.out;
+        out.printf("%d showings, %d KB%n%n", showings, Files.size(file) / 1024);
+
+        Bench.header(out);
+        Bench.print(out, "Scanner + split load", 1, Bench.measure(1, t -> scannerLoad(file.toFile())));
+        Bench.print(out, "MovieCatalog load", 1, Bench.measure(1, t -> MovieCatalog.load(file)));
+
+        MovieCatalog catalog = MovieCatalog.load(file);
+        List<Movie> list = catalog.getMovies();
+        Bench.print(out, "find by scanning list", 1, Bench.measure(1, t -> {
+            String title = "Feature Presentation Number " + ThreadLocalRandom.current().nextInt(titles);
+            int time = 10 * 60 + ThreadLocalRandom.current().nextInt(showtimes) * 75;
+            for (Movie m : list) {
+                if (m.showtime == time && m.title.equals(title)) {
+                    return;
+                }
+            }
+            throw new IllegalStateException("not found");
+        }));
+        Bench.print(out, "MovieCatalog.find", 1, Bench.measure(1, t -> {
+            String title = "Feature Presentation Number " + ThreadLocalRandom.current().nextInt(titles);
+            int time = 10 * 60 + ThreadLocalRandom.current().nextInt(showtimes) * 75;
+            if (catalog.find(title, time) == null) {
+                throw new IllegalStateException("not found");
+            }
+        }));
+
+        out.println();
+        out.printf("%-28s %12s %14s%n", "loader", "retained KB", "bytes/showing");
+        long scanner = retained(() -> scannerLoad(file.toFile()));
+        out.printf("%-28s %12d %14d%n", "Scanner + split", scanner / 1024, scanner / showings);
+        long mapped = retained(() -> MovieCatalog.load(file));
+        out.printf("%-28s %12d %14d%n", "MovieCatalog (with index)", mapped / 1024, mapped / showings);
+    }
+
+    /**
+     * The loader Theater used before MovieCatalog
+     */
+    private static List<Movie> scannerLoad(File file) throws IOException {
+        ArrayList<Movie> movies = new ArrayList<>();
+        try (Scanner inFile = new Scanner(file)) {
+            while (inFile.hasNextLine()) {
+                String line[] = inFile.nextLine().trim().split("\t");
+                movies.add(new Movie(movies.size(), line[0], Integer.valueOf(line[1])));
+            }
+        }
+        return movies;
+    }
+
+    private interface Loader {
+
+        Object load() throws IOException;
+    }
+
+    /**
+     * Returns the heap still in use after a load while its result is reachable, less the heap in use before
+     */
+    private static long retained(Loader loader) throws IOException {
+        long before = usedAfterGc();
+        Object result = loader.load();
+        long after = usedAfterGc();
+        if (result.hashCode() == 42) {   //keep the result reachable until after the measurement
+            System.out.print("");
+        }
+        return after - before;
+    }
+
+    private static long usedAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+}
@@ -0,0 +1,97 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+/*
+ * ConcessionBenchmark.java
+ *
+ * Runs the concession stand with unlimited stock, then with a popcorn
+ * machine that is slower or faster than customers order popcorn and with
+ * one or two soda dispensers. For every setup it prints how busy the
+ * workers, the popcorn machine and the dispensers were, so the busiest one
+ * shows where the stand's real bottleneck is, followed by what each item
+ * sold per simulated hour, how long workers waited for it and how much ran
+ * out. The box office and ticket takers have enough staff to never be the
+ * bottleneck.
+ *
+ * Usage: java ConcessionBenchmark [customers] [arrivalRate]
+ *
+ */
+public class ConcessionBenchmark {
+
+    private static final int TIME_SCALE = 6000;
+    private static final int[] WORKERS = {24, 4, 24};
+    //popcorn batch (0 for unlimited), cook time and soda dispensers (0 for unlimited) of each setup
+    private static final int[][] SETUPS = {{0, 0, 0}, {12, 240000, 0}, {24, 240000, 0}, {24, 240000, 1},
+        {24, 240000, 2}};
+
+    public static void main(String args[]) throws Exception {
+        int customers = args.length >= 1 ? Integer.parseInt(args[0]) : 1500;
+        double rate = args.length >= 2 ? Double.parseDouble(args[1]) : 12;
+        Path movieFile = Bench.movieFile("Benchmark\t" + Integer.MAX_VALUE);
+
+        PrintStream out = System.out;
+        out.printf("%d customers arriving at %.1f/min, %d concession workers, utilization of each resource%n",
+                customers, rate, WORKERS[TheaterConfig.CONCESSION]);
+        for (int[] setup : SETUPS) {
+            TheaterConfig config = new TheaterConfig();
+            config.customers = customers;
+            config.workers = WORKERS.clone();
+            config.timeScale = TIME_SCALE;
+            config.arrival = "poisson";
+            config.arrivalRate = rate;
+            config.popcornBatch = setup[0];
+            config.popcornCookMillis = setup[1];
+            config.popcornWarmer = setup[0] * 2;
+            config.sodaDispensers = setup[2];
+            config.log = EventLog.Output.OFF;
+            config.seed = 1;
+            Theater theater = run(config, movieFile, out);
+            SimulationResult r = theater.getResult();
+            StageMetrics concession = theater.getConcessionLine().getMetrics();
+
+            //busy time over available time, all in simulated milliseconds
+            Histogram service = concession.getService();
+            double workers = service.getMean() * service.getCount() / 1e6 * TIME_SCALE
+                    / (WORKERS[TheaterConfig.CONCESSION] * r.simulatedMillis);
+            out.println();
+            out.printf("popcorn %s, soda dispensers %s%n",
+                    setup[0] == 0 ? "unlimited" : setup[0] + " every " + setup[1] / 60000 + " min",
+                    setup[2] == 0 ? "unlimited" : setup[2]);
+            out.printf("  workers %.0f%%", workers * 100);
+            Kitchen kitchen = theater.getKitchen();
+            if (kitchen != null) {
+                if (setup[0] > 0) {
+                    int ordered = kitchen.getServed(Kitchen.Item.POPCORN) + kitchen.getStockOuts(Kitchen.Item.POPCORN);
+                    double cookable = r.simulatedMillis / setup[1] * setup[0];
+                    out.printf(", popcorn machine %.0f%%", ordered * 100.0 / (cookable + config.popcornWarmer));
+                }
+                if (setup[2] > 0) {
+                    double pouring = kitchen.getServed(Kitchen.Item.SODA) * (double) config.sodaPourMillis;
+                    out.printf(", soda dispensers %.0f%%", pouring * 100 / (setup[2] * r.simulatedMillis));
+                }
+            }
+            out.printf("%n  concession wait p50 %.1f s, p99 %.1f s, service p50 %.1f s, %.0f people/h%n",
+                    concession.getWait().getPercentile(50) / 1e9 * TIME_SCALE,
+                    concession.getWait().getPercentile(99) / 1e9 * TIME_SCALE,
+                    service.getPercentile(50) / 1e9 * TIME_SCALE, r.getThroughputPerHour());
+            if (kitchen != null) {
+                kitchen.report(out, r.simulatedMillis);
+            }
+        }
+    }
+
+    /**
+     * Runs one theater to the end with console output muted
+     */
+    private static Theater run(TheaterConfig config, Path movieFile, PrintStream out) throws Exception {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print when created and leaving
+        Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+        theater.initTheater(movieFile.toString());
+        theater.initCustomers();
+        theater.shutdown();
+        System.setOut(out);
+        return theater;
+    }
+
+}
@@ -0,0 +1,100 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/*
+ * CustomerStoreBenchmark.java
+ *
+ * Measures what a customer costs in heap. The threaded Theater gives each
+ * customer a Customer object, with its random generator and Semaphore, and
+ * a Thread; CustomerStore keeps the same state in primitive arrays. Both are
+ * measured by the heap they keep alive after a full GC, which leaves out the
+ * stack each started thread also reserves. Then the event-driven theater,
+ * which keeps its customers in a CustomerStore, runs a million customers and
+ * reports its wall time and the heap the store holds.
+ *
+ * Usage: java -Xmx2g CustomerStoreBenchmark [customers] [bigRun]
+ *
+ */
+public class CustomerStoreBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int customers = args.length >= 1 ? Integer.parseInt(args[0]) : 200000;
+        int bigRun = args.length >= 2 ? Integer.parseInt(args[1]) : 1000000;
+        String[] showings = new String[10];
+        for (int i = 0; i < showings.length; i++) {
+            showings[i] = "Benchmark " + i + "\t" + bigRun;
+        }
+        Path movieFile = Bench.movieFile(showings);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print when created and leaving
+        TheaterConfig config = new TheaterConfig();
+        config.log = EventLog.Output.OFF;
+        config.seed = 1;
+        Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+        theater.initTheater(movieFile.toString());
+        System.setOut(out);
+
+        long before = usedHeap();
+        ArrayList<Thread> threads = new ArrayList<>(customers);
+        for (int id = 0; id < customers; id++) {
+            threads.add(new Thread(new Customer(id, theater)));
+        }
+        double threaded = (double) (usedHeap() - before) / customers;
+        threads.size();     //keep them reachable until measured
+        threads = null;
+
+        before = usedHeap();
+        CustomerStore store = new CustomerStore(customers);
+        double compact = (double) (usedHeap() - before) / customers;
+        store.capacity();
+        store = null;
+
+        out.printf("%d customers%n", customers);
+        out.printf("%-36s %16s%n", "design", "bytes/customer");
+        out.printf("%-36s %16.1f%n", "Customer + Semaphore + Thread", threaded);
+        out.printf("%-36s %16.1f%n", "CustomerStore", compact);
+        out.printf("%-36s %16d%n", "CustomerStore fields", CustomerStore.BYTES_PER_CUSTOMER);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        theater.shutdown();
+        System.setOut(out);
+
+        ArrayList<Movie> movies = new ArrayList<>();
+        Theater.loadMovies(movieFile.toString(), movies);
+        TheaterConfig big = new TheaterConfig();
+        big.customers = bigRun;
+        big.workers = new int[]{64, 16, 32};
+        big.arrival = "poisson";
+        big.arrivalRate = 60;
+        big.seed = 1;
+        EventSimulation simulation = new EventSimulation(movies, big);
+        before = usedHeap();
+        long start = System.nanoTime();
+        SimulationResult r = simulation.run();
+        double wallMillis = (System.nanoTime() - start) / 1e6;
+        long held = usedHeap() - before;
+        out.println();
+        out.printf("event theater, %d customers: %.0f ms wall, %.1f MB held by its CustomerStore (%.1f bytes each)%n",
+                bigRun, wallMillis, held / 1e6, (double) held / bigRun);
+        out.printf("  %d tickets sold, %d entered, %d left without a ticket%n", r.ticketsSold,
+                simulation.getCustomers().count(CustomerStore.State.ENTERED, bigRun),
+                simulation.getCustomers().count(CustomerStore.State.LEFT, bigRun));
+    }
+
+    /**
+     * Returns the heap in use after collecting garbage
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+}
@@ -0,0 +1,86 @@
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/*
+ * EngineEquivalenceCheck.java
+ *
+ * Runs the threaded theater and the discrete-event simulation on the same
+ * movie file and compares the mean of every total with Welch's t-test.
+ * |t| below ~2 means the two modes agree at roughly the 95% level.
+ *
+ * Usage: java EngineEquivalenceCheck [movieFile] [threadedRuns] [eventRuns]
+ *
+ */
+public class EngineEquivalenceCheck {
+
+    //30ms box office, 5ms ticket taker and 60ms concession sleeps, all exact
+    private static final int TIME_SCALE = 3000;
+
+    public static void main(String args[]) throws IOException {
+        String movieFile = args.length >= 1 ? args[0] : "movies.txt";
+        int threadedRuns = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+        int eventRuns = args.length >= 3 ? Integer.parseInt(args[2]) : 1000;
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ArrayList<SimulationResult> threaded = new ArrayList<>();
+        ArrayList<Movie> movies = null;
+        for (int i = 0; i < threadedRuns; i++) {
+            Theater theater = new Theater(Theater.MAX_CUSTOMERS, TIME_SCALE, Thread::new);
+            theater.initTheater(movieFile);
+            theater.initCustomers();
+            theater.shutdown();
+            threaded.add(theater.getResult());
+            movies = theater.getMovies();
+        }
+        System.setOut(out);
+
+        ArrayList<SimulationResult> event = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < eventRuns; i++) {
+            event.add(new EventSimulation(movies, Theater.MAX_CUSTOMERS, Theater.MAX_BOX_AGENTS,
+                    Theater.MAX_TICKET_TAKERS, Theater.MAX_CONCESSION_WORKERS, i).run());
+        }
+        long eventNanos = System.nanoTime() - start;
+
+        System.out.printf("%-20s %18s %18s %8s%n", "total", "threaded", "event", "t");
+        compare("tickets sold", threaded, event, r -> r.ticketsSold);
+        compare("turned away", threaded, event, r -> r.getTurnedAway());
+        compare("concession orders", threaded, event, r -> r.concessionVisits);
+        for (Customer.Food food : Customer.Food.values()) {
+            compare("  " + food, threaded, event, r -> r.foodOrders[food.ordinal()]);
+        }
+        compare("simulated seconds", threaded, event, r -> r.simulatedMillis / 1000);
+        System.out.printf("%d event runs took %.1f ms%n", eventRuns, eventNanos / 1e6);
+    }
+
+    interface Stat {
+
+        double of(SimulationResult r);
+    }
+
+    private static void compare(String name, ArrayList<SimulationResult> a, ArrayList<SimulationResult> b, Stat stat) {
+        double[] ma = meanVar(a, stat);
+        double[] mb = meanVar(b, stat);
+        double se = Math.sqrt(ma[1] / a.size() + mb[1] / b.size());
+        double t = se == 0 ? 0 : (ma[0] - mb[0]) / se;
+        System.out.printf("%-20s %9.2f +- %5.2f %9.2f +- %5.2f %8.2f%n",
+                name, ma[0], Math.sqrt(ma[1]), mb[0], Math.sqrt(mb[1]), t);
+    }
+
+    private static double[] meanVar(ArrayList<SimulationResult> results, Stat stat) {
+        double mean = 0;
+        for (SimulationResult r : results) {
+            mean += stat.of(r);
+        }
+        mean /= results.size();
+        double var = 0;
+        for (SimulationResult r : results) {
+            var += (stat.of(r) - mean) * (stat.of(r) - mean);
+        }
+        return new double[]{mean, results.size() > 1 ? var / (results.size() - 1) : 0};
+    }
+}
@@ -0,0 +1,146 @@
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * HandoffBenchmark.java
+ *
+ * Regression benchmark for the theater's synchronization primitives:
+ *  - the customer/box office agent handshake (Customer.buyTicket and
+ *    BoxOfficeAgent.work) with worker sleeps scaled to zero, with the
+ *    semaphore and the park handoff, and the bytes each handoff and each
+ *    new Customer allocate
+ *  - Movie.purchaseTicket
+ *  - the ConcurrentLinkedQueue add/remove used for the customer lines
+ *
+ * Usage: java HandoffBenchmark [maxThreads]
+ *    or: mvn -Pbench verify
+ *
+ */
+public class HandoffBenchmark {
+
+    private static final int TIME_SCALE = 1000000;
+
+    public static void main(String args[]) throws Exception {
+        int maxThreads = args.length >= 1 ? Integer.parseInt(args[0]) : 16;
+        PrintStream out = System.out;
+        Bench.header(out);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print every transaction
+        try {
+            for (ServiceLine.Handoff handoff : ServiceLine.Handoff.values()) {
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    handoff(threads, handoff, out);
+                }
+            }
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                purchase(threads, out);
+            }
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                queue(threads, out);
+            }
+        } finally {
+            System.setOut(out);
+        }
+        out.println();
+        out.printf("%-10s %18s %18s%n", "handoff", "bytes/new Customer", "bytes/handoff");
+        for (ServiceLine.Handoff handoff : ServiceLine.Handoff.values()) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            double[] bytes = allocation(handoff, 4, 200000);
+            System.setOut(out);
+            out.printf("%-10s %18.1f %18.1f%n", handoff.name().toLowerCase(), bytes[0], bytes[1]);
+        }
+    }
+
+    private static Theater theater(int customers, ServiceLine.Handoff handoff) {
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customers;
+        config.timeScale = TIME_SCALE;
+        config.handoff = handoff;
+        config.log = EventLog.Output.OFF;
+        Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+        theater.getMovies().add(new Movie("Benchmark", Integer.MAX_VALUE));
+        for (int i = 0; i < Theater.MAX_BOX_AGENTS; i++) {
+            Thread agent = new Thread(new BoxOfficeAgent(i, theater));
+            agent.setDaemon(true);
+            agent.start();
+        }
+        return theater;
+    }
+
+    /**
+     * Returns the bytes allocated by creating a Customer and by one buyTicket handoff, counting every thread
+     */
+    private static double[] allocation(ServiceLine.Handoff handoff, int threads, int handoffs) throws Exception {
+        Theater theater = theater(threads, handoff);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int created = 100000;
+        Customer[] customers = new Customer[created];
+        long before = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < created; i++) {
+            customers[i] = new Customer(i, theater);
+        }
+        double perCustomer = (double) (mx.getCurrentThreadAllocatedBytes() - before) / created;
+
+        Thread[] buyers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Customer c = customers[t];
+            buyers[t] = new Thread(() -> {
+                for (int i = 0; i < handoffs / threads; i++) {
+                    c.buyTicket();
+                }
+            });
+        }
+        long start = totalAllocated(mx);
+        for (Thread t : buyers) {
+            t.start();
+        }
+        for (Thread t : buyers) {
+            t.join();
+        }
+        double perHandoff = (double) (totalAllocated(mx) - start) / handoffs;
+        return new double[]{perCustomer, perHandoff};
+    }
+
+    private static long totalAllocated(com.sun.management.ThreadMXBean mx) {
+        long total = 0;
+        for (long bytes : mx.getThreadAllocatedBytes(mx.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * Customers repeatedly buy tickets from the box office agents of a fresh theater
+     */
+    private static void handoff(int threads, ServiceLine.Handoff handoff, PrintStream out) throws Exception {
+        Theater theater = theater(threads, handoff);
+        Customer customers[] = new Customer[threads];
+        for (int i = 0; i < threads; i++) {
+            customers[i] = new Customer(i, theater);
+        }
+        Bench.print(out, handoff.name().toLowerCase() + " buyTicket/work", threads, Bench.measure(threads, t -> {
+            if (!customers[t].buyTicket()) {
+                throw new IllegalStateException("Benchmark movie sold out");
+            }
+        }));
+    }
+
+    private static void purchase(int threads, PrintStream out) throws Exception {
+        Movie movie = new Movie("Benchmark", Integer.MAX_VALUE);
+        Bench.print(out, "Movie.purchaseTicket", threads, Bench.measure(threads, t -> movie.purchaseTicket(1)));
+    }
+
+    private static void queue(int threads, PrintStream out) throws Exception {
+        Theater theater = new Theater(threads, TIME_SCALE, Thread::new);
+        theater.getMovies().add(new Movie("Benchmark", Integer.MAX_VALUE));
+        Customer c = new Customer(0, theater);
+        Queue<Customer> q = new ConcurrentLinkedQueue<>();
+        Bench.print(out, "ConcurrentLinkedQueue add/remove", threads, Bench.measure(threads, t -> {
+            q.add(c);
+            q.remove();
+        }));
+    }
+}
@@ -0,0 +1,89 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/*
+ * JfrOverheadBenchmark.java
+ *
+ * Measures what a theater.Service event costs a worker. It emits events as
+ * short as a real service in a loop: with no recording running, with the
+ * event enabled at its production defaults, whose threshold keeps short
+ * services out of the recording, and with theater.jfc, which records every
+ * one of them. The cost is in nanoseconds per event on top of an empty loop.
+ *
+ * Usage: java JfrOverheadBenchmark [events] [jfcFile]
+ *
+ */
+public class JfrOverheadBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int events = args.length >= 1 ? Integer.parseInt(args[0]) : 5000000;
+        Path jfc = Paths.get(args.length >= 2 ? args[1] : "theater.jfc");
+        Path file = Files.createTempFile("bench", ".jfr");
+        file.toFile().deleteOnExit();
+
+        double empty = 0;
+        double off = 0;
+        double defaults = 0;
+        double profile = 0;
+        for (int round = 0; round < 3; round++) {   //first rounds warm up the JIT
+            empty = emit(events, false);
+            off = emit(events, true);
+            try (Recording recording = new Recording()) {
+                recording.enable(TheaterEvents.Service.class);
+                recording.setDestination(file);
+                recording.start();
+                defaults = emit(events, true);
+            }
+            try (Recording recording = new Recording(Configuration.create(jfc))) {
+                recording.setDestination(file);
+                recording.start();
+                profile = emit(events, true);
+            }
+        }
+        System.out.printf("%d events, ns per event on top of an empty loop of %.1f ns%n", events, empty);
+        System.out.printf("%-36s %10.1f%n", "no recording", off - empty);
+        System.out.printf("%-36s %10.1f%n", "enabled, default 20 ms threshold", defaults - empty);
+        System.out.printf("%-36s %10.1f%n", "theater.jfc, every event recorded", profile - empty);
+    }
+
+    /**
+     * Emits events the way Worker.serve does, without the sleep
+     *
+     * @return nanoseconds per iteration
+     */
+    private static double emit(int events, boolean emit) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            if (!emit) {
+                sum += i;
+                continue;
+            }
+            TheaterEvents.Service event = new TheaterEvents.Service();
+            boolean enabled = event.isEnabled();
+            if (enabled) {
+                event.begin();
+            }
+            sum += i;
+            if (enabled) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.stage = "Box office";
+                    event.worker = i & 7;
+                    event.simulatedMillis = 90000;
+                    event.requestedMillis = 1500;
+                    event.commit();
+                }
+            }
+        }
+        double nanos = (double) (System.nanoTime() - start) / events;
+        if (sum == 42) {
+            System.out.println();   //keeps the loop from being removed
+        }
+        return nanos;
+    }
+
+}
@@ -0,0 +1,111 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+/*
+ * LaneBenchmark.java
+ *
+ * Compares one shared queue per stage with a lane per worker, where
+ * customers pick the shortest lane or the shorter of two random lanes and
+ * idle workers steal from the back of the longest lane. Every stage has
+ * many workers.
+ *
+ * The first table scales worker sleeps to zero, so admitted customers per
+ * second measures how much the handoffs contend. The second runs Poisson
+ * arrivals at 90% of the box office's capacity with exponential service
+ * times and compares the wait percentiles, in simulated seconds.
+ *
+ * Usage: java LaneBenchmark [workersPerStage] [customers]
+ *
+ */
+public class LaneBenchmark {
+
+    //every worker sleep rounds down to 0 ms
+    private static final int FAST_SCALE = 1000000000;
+    private static final int TIME_SCALE = 6000;
+    private static final double LOAD = 0.9;
+
+    public static void main(String args[]) throws Exception {
+        int workers = args.length >= 1 ? Integer.parseInt(args[0]) : 16;
+        int customers = args.length >= 2 ? Integer.parseInt(args[1]) : 20000;
+        Path movieFile = Bench.movieFile("Benchmark\t" + Integer.MAX_VALUE);
+        String[][] setups = {{"shared", "semaphore"}, {"shared", "park"}, {"shortest", "park"},
+            {"two-choices", "park"}};
+
+        PrintStream out = System.out;
+        out.printf("%d workers per stage, %d customers, worker sleeps scaled to 0%n", workers, customers);
+        out.printf("%-12s %-10s %12s %10s%n", "lanes", "handoff", "customers/s", "stolen");
+        for (String[] setup : setups) {
+            TheaterConfig config = config(setup, workers, customers);
+            config.timeScale = FAST_SCALE;
+            long start = System.nanoTime();
+            Theater theater = run(config, movieFile, out);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.printf("%-12s %-10s %12.0f %10s%n", setup[0], setup[1], theater.getResult().ticketsSold / seconds,
+                    stolen(theater));
+        }
+
+        int arriving = Math.min(customers, 100 * workers);
+        double rate = LOAD * workers * 60000.0 / BoxOfficeAgent.TIME;
+        out.println();
+        out.printf("%d customers arriving at %.1f/min, %.0f%% of the box office, exponential service%n", arriving,
+                rate, LOAD * 100);
+        out.printf("%-12s %-10s %12s %12s %12s %10s%n", "lanes", "handoff", "p50 wait s", "p99 wait s",
+                "max wait s", "stolen");
+        for (String[] setup : setups) {
+            TheaterConfig config = config(setup, workers, arriving);
+            config.timeScale = TIME_SCALE;
+            config.arrival = "poisson";
+            config.arrivalRate = rate;
+            for (int stage = TheaterConfig.BOX; stage <= TheaterConfig.CONCESSION; stage++) {
+                config.serviceTimes[stage] = new ServiceTime(ServiceTime.Kind.EXPONENTIAL,
+                        config.serviceTimes[stage].meanMillis);
+            }
+            Theater theater = run(config, movieFile, out);
+            Histogram waits = theater.getResult().waits;
+            out.printf("%-12s %-10s %12.1f %12.1f %12.1f %10s%n", setup[0], setup[1],
+                    waits.getPercentile(50) / 1000.0, waits.getPercentile(99) / 1000.0, waits.getMax() / 1000.0,
+                    stolen(theater));
+        }
+    }
+
+    private static TheaterConfig config(String[] setup, int workers, int customers) {
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customers;
+        config.workers = new int[]{workers, workers, workers};
+        config.lanes = ServiceLine.Lanes.parse(setup[0]);
+        config.handoff = ServiceLine.Handoff.parse(setup[1]);
+        config.log = EventLog.Output.OFF;
+        config.seed = 1;
+        return config;
+    }
+
+    /**
+     * Runs one theater to the end with console output muted
+     */
+    private static Theater run(TheaterConfig config, Path movieFile, PrintStream out) throws Exception {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print when created and leaving
+        Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+        theater.initTheater(movieFile.toString());
+        theater.initCustomers();
+        theater.shutdown();
+        System.setOut(out);
+        return theater;
+    }
+
+    /**
+     * Returns how many customers workers stole from other lanes at every stage, or - for a shared queue
+     */
+    private static String stolen(Theater theater) {
+        int stolen = 0;
+        for (int stage = TheaterConfig.BOX; stage <= TheaterConfig.CONCESSION; stage++) {
+            ServiceLine line = theater.getLine(stage);
+            if (!(line instanceof LaneServiceLine)) {
+                return "-";
+            }
+            stolen += ((LaneServiceLine) line).getStolen();
+        }
+        return String.valueOf(stolen);
+    }
+
+}
@@ -0,0 +1,53 @@
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+ * LoggingBenchmark.java
+ *
+ * Runs the theater with each EventLog output and reports customers per
+ * second. DIRECT is the old synchronous System.out.println on every step.
+ * All output goes to /dev/null so only the cost inside the JVM is measured.
+ *
+ * Usage: java LoggingBenchmark [movieFile] [customers] [rounds] [platform|virtual]
+ *
+ */
+public class LoggingBenchmark {
+
+    //large enough that every worker sleep rounds down to zero
+    private static final int TIME_SCALE = 1000000;
+
+    public static void main(String args[]) throws IOException {
+        String movieFile = args.length >= 1 ? args[0] : "movies.txt";
+        int customers = args.length >= 2 ? Integer.parseInt(args[1]) : 10000;
+        int rounds = args.length >= 3 ? Integer.parseInt(args[2]) : 3;
+        ThreadMode mode = args.length >= 4 ? ThreadMode.parse(args[3]) : ThreadMode.PLATFORM;
+        PrintStream out = System.out;
+        out.printf("%-8s %9s %10s %14s%n", "output", "customers", "wall ms", "customers/s");
+        for (int round = 0; round < rounds; round++) {  //first round warms up the JIT
+            for (EventLog.Output output : EventLog.Output.values()) {
+                OutputStream devNull = new BufferedOutputStream(new FileOutputStream("/dev/null"));
+                PrintStream printDevNull = new PrintStream(devNull, false);
+                System.setOut(printDevNull);    //workers still print when they are created
+                OutputStream logStream = output == EventLog.Output.BINARY ? devNull : printDevNull;
+                TheaterConfig config = new TheaterConfig();
+                config.customers = customers;
+                config.timeScale = TIME_SCALE;
+                config.log = output;
+                config.seed = round;
+                Theater theater = new Theater(config, mode.newFactory(), logStream);
+                theater.initTheater(movieFile);
+                long start = System.nanoTime();
+                theater.initCustomers();
+                theater.getLog().close();
+                long elapsed = System.nanoTime() - start;
+                theater.shutdown();
+                System.setOut(out);
+                out.printf("%-8s %9d %10.0f %14.0f%n", output, customers, elapsed / 1e6, customers * 1e9 / elapsed);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * MetricsOverheadBenchmark.java
+ *
+ * Measures the instrumentation a customer's visit to one stage records, the
+ * way ServiceLine records it: a line length sample, a wait computed from
+ * timestamps taken anyway, one System.nanoTime when the service ends and the
+ * worker's service time. Several threads record into the same StageMetrics
+ * at once, each as a different worker, next to a bare System.nanoTime. Each
+ * thread runs a plain loop, so the cost is per stage without a harness
+ * reading the clock around every call. The cost is in nanoseconds of one
+ * processor per stage, so it stays comparable when there are more threads
+ * than processors.
+ *
+ * Usage: java MetricsOverheadBenchmark [maxThreads] [stagesPerThread]
+ *
+ */
+public class MetricsOverheadBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int maxThreads = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        int stages = args.length >= 2 ? Integer.parseInt(args[1]) : 20000000;
+        PrintStream out = System.out;
+        out.printf("%-28s %7s %10s%n", "benchmark", "threads", "ns/stage");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int round = 0; round < 3; round++) {   //first rounds warm up the JIT
+                StageMetrics metrics = new StageMetrics("benchmark");
+                double clock = run(threads, stages, t -> {
+                    long sink = 0;
+                    for (int i = 0; i < stages; i++) {
+                        sink += System.nanoTime();
+                    }
+                    return sink;
+                });
+                double stage = run(threads, stages, t -> {
+                    long free = System.nanoTime();
+                    long joined = free;
+                    for (int i = 0; i < stages; i++) {
+                        metrics.joined();
+                        long start = free - joined > 0 ? free : joined;
+                        metrics.left(start - joined);
+                        long now = System.nanoTime();
+                        metrics.served(t, now - start);
+                        free = now;
+                        joined = now;
+                    }
+                    return free;
+                });
+                if (round == 2) {
+                    out.printf("%-28s %7d %10.1f%n", "1x System.nanoTime", threads, clock);
+                    out.printf("%-28s %7d %10.1f%n", "stage instrumentation", threads, stage);
+                }
+            }
+        }
+    }
+
+    /**
+     * A loop of a number of stages run by one thread
+     */
+    interface Loop {
+
+        long run(int thread);
+    }
+
+    /**
+     * Runs the loop on every thread at once
+     *
+     * @return processor time in nanoseconds per stage
+     */
+    private static double run(int threads, int stages, Loop loop) throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] runners = new Thread[threads];
+        long[] sinks = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            runners[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                sinks[thread] = loop.run(thread);
+            });
+            runners[t].start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread t : runners) {
+            t.join();
+        }
+        int busy = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        return (double) (System.nanoTime() - start) * busy / ((long) stages * threads);
+    }
+}
@@ -0,0 +1,103 @@
+
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * MovieContentionBenchmark.java
+ *
+ * Many box office agents hammering the inventory of one popular movie.
+ * Compares the lock-free Movie against the old synchronized inventory and
+ * checks that neither oversells.
+ *
+ * Usage: java MovieContentionBenchmark [agents] [tickets]
+ *
+ */
+public class MovieContentionBenchmark {
+
+    /**
+     * The inventory Movie had before it was made lock-free
+     */
+    static class SynchronizedMovie {
+
+        private int ticketsAvaliable;
+
+        SynchronizedMovie(int ticketsAvaliable) {
+            this.ticketsAvaliable = ticketsAvaliable;
+        }
+
+        synchronized boolean purchaseTicket(int number) {
+            if (ticketsAvaliable >= number) {
+                ticketsAvaliable -= number;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    interface Seller {
+
+        boolean sell(int number);
+    }
+
+    public static void main(String args[]) throws InterruptedException {
+        int agents = args.length >= 1 ? Integer.parseInt(args[0]) : 64;
+        int tickets = args.length >= 2 ? Integer.parseInt(args[1]) : 20000000;
+
+        for (int round = 0; round < 3; round++) {   //first rounds warm up the JIT
+            SynchronizedMovie old = new SynchronizedMovie(tickets);
+            run("synchronized", agents, tickets, old::purchaseTicket);
+            Movie movie = new Movie("Popular", tickets);
+            run("lock-free", agents, tickets, movie::purchaseTicket);
+            if (movie.getTicketsSold() != tickets || !movie.isSoldOut()) {
+                throw new AssertionError("Sold " + movie.getTicketsSold() + " of " + tickets);
+            }
+            Movie held = new Movie("Popular", tickets);
+            run("hold+confirm", agents, tickets, n -> {
+                if (!held.holdTickets(n)) {
+                    return false;
+                }
+                held.confirmHold(n);
+                return true;
+            });
+            if (held.getTicketsSold() != tickets || !held.isSoldOut()) {
+                throw new AssertionError("Sold " + held.getTicketsSold() + " of " + tickets);
+            }
+        }
+    }
+
+    /**
+     * Starts all agents at once and has each sell single tickets until the movie is sold out
+     */
+    private static void run(String name, int agents, int tickets, Seller seller) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] sold = new long[agents];
+        Thread threads[] = new Thread[agents];
+        for (int i = 0; i < agents; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                }
+                long count = 0;
+                while (seller.sell(1)) {
+                    count++;
+                }
+                sold[id] = count;
+            });
+            threads[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long total = 0;
+        for (int i = 0; i < agents; i++) {
+            threads[i].join();
+            total += sold[i];
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (total != tickets) {
+            throw new AssertionError(name + " sold " + total + " of " + tickets);
+        }
+        System.out.printf("%-13s %3d agents %12.0f tickets/s %7.1f ns/ticket%n",
+                name, agents, total * 1e9 / elapsed, (double) elapsed / total);
+    }
+}
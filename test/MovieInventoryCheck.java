@@ -0,0 +1,93 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * MovieInventoryCheck.java
+ *
+ * Sells showings out from many threads at once, mixing purchases with
+ * holds that are confirmed or cancelled, and checks the packed available
+ * and held counts of Movie: the seats every thread was sold add up to the
+ * capacity exactly, nothing is left held, and no purchase succeeded after
+ * the showing sold out. It also checks that a count below 1 is turned
+ * down instead of giving seats back.
+ *
+ * Usage: java MovieInventoryCheck [threads] [seats] [rounds]
+ *
+ */
+public class MovieInventoryCheck {
+
+    public static void main(String args[]) throws InterruptedException {
+        int threads = args.length >= 1 ? Integer.parseInt(args[0]) : 16;
+        int seats = args.length >= 2 ? Integer.parseInt(args[1]) : 100000;
+        int rounds = args.length >= 3 ? Integer.parseInt(args[2]) : 20;
+
+        for (int round = 0; round < rounds; round++) {
+            Movie movie = new Movie("Popular", seats);
+            AtomicInteger sold = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] sellers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                sellers[t] = new Thread(() -> {
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+                    int mine = 0;
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    while (movie.getTicketsAvaliable() > 0 || movie.getTicketsSold() < seats) {
+                        int n = 1 + rand.nextInt(4);
+                        if (rand.nextBoolean()) {
+                            if (movie.purchaseTicket(n)) {
+                                mine += n;
+                            }
+                        } else if (movie.holdTickets(n)) {
+                            if (rand.nextInt(4) == 0) {
+                                movie.cancelHold(n);
+                            } else {
+                                movie.confirmHold(n);
+                                mine += n;
+                            }
+                        } else if (movie.getTicketsAvaliable() == 0 && movie.getTicketsSold() + 4 > seats) {
+                            break;  //the last seats are held by others, or fewer are left than this party
+                        }
+                    }
+                    sold.addAndGet(mine);
+                });
+                sellers[t].start();
+            }
+            start.countDown();
+            for (Thread seller : sellers) {
+                seller.join();
+            }
+            //a party bigger than the last seats may leave a few unsold, sell them one at a time
+            while (movie.purchaseTicket(1)) {
+                sold.incrementAndGet();
+            }
+            if (sold.get() != seats || movie.getTicketsSold() != seats || !movie.isSoldOut()
+                    || movie.getTicketsAvaliable() != 0) {
+                throw new AssertionError("Round " + round + ": threads were sold " + sold.get() + ", movie sold "
+                        + movie.getTicketsSold() + " with " + movie.getTicketsAvaliable() + " left of " + seats);
+            }
+            if (movie.purchaseTicket(1) || movie.holdTickets(1)) {
+                throw new AssertionError("Round " + round + ": sold a seat after selling out");
+            }
+        }
+
+        Movie movie = new Movie("Popular", 10);
+        for (int number : new int[]{0, -3}) {
+            try {
+                movie.purchaseTicket(number);
+                throw new AssertionError("purchaseTicket(" + number + ") was not rejected");
+            } catch (IllegalArgumentException expected) {
+                //turned down
+            }
+        }
+        if (movie.getTicketsAvaliable() != 10 || movie.getTicketsSold() != 0) {
+            throw new AssertionError("A rejected purchase changed the inventory: " + movie);
+        }
+        System.out.printf("%d rounds of %d seats sold out by %d threads, never oversold%n", rounds, seats, threads);
+    }
+
+}
@@ -0,0 +1,87 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+/*
+ * MultiplexScaling.java
+ *
+ * Runs a Multiplex of 1, 2, 4, ... theaters with the same number of
+ * customers per theater and prints admitted customers per second, so the
+ * speedup over one theater shows how far the shards scale across cores.
+ * Worker sleeps are scaled to zero and every movie has enough seats, so the
+ * runs measure the handoffs, which never leave a shard.
+ *
+ * A second table gives every shard two movies of 50 seats and twice as many
+ * customers as seats, so many of them find their movie sold out and go to
+ * other shards for seats. Every seat should still sell exactly once.
+ *
+ * Usage: java MultiplexScaling [maxShards] [customersPerShard] [runs]
+ *
+ */
+public class MultiplexScaling {
+
+    //every worker sleep rounds down to 0 ms
+    private static final int TIME_SCALE = 1000000000;
+    private static final int SMALL_SEATS = 50;
+
+    public static void main(String args[]) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxShards = args.length >= 1 ? Integer.parseInt(args[0]) : Math.max(cores, 4);
+        int perShard = args.length >= 2 ? Integer.parseInt(args[1]) : 5000;
+        int runs = args.length >= 3 ? Integer.parseInt(args[2]) : 3;
+        Path bigFile = movieFile(Integer.MAX_VALUE);
+        Path smallFile = movieFile(SMALL_SEATS);
+
+        PrintStream out = System.out;
+        out.printf("%d processors, %d customers per theater, best of %d runs%n", cores, perShard, runs);
+        out.printf("%8s %10s %12s %8s%n", "theaters", "customers", "customers/s", "speedup");
+        double base = 0;
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            double best = 0;
+            for (int run = 0; run < runs; run++) {
+                SimulationResult r = run(shards, shards * perShard, bigFile, out).getResult();
+                double seconds = r.simulatedMillis / TIME_SCALE / 1000;    //back to real time
+                best = Math.max(best, r.ticketsSold / seconds);
+            }
+            if (shards == 1) {
+                base = best;
+            }
+            out.printf("%8d %10d %12.0f %8.2f%n", shards, shards * perShard, best, best / base);
+        }
+
+        out.println();
+        out.printf("%8s %10s %10s %12s %10s%n", "theaters", "customers", "seats", "tickets sold", "transfers");
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            int seats = shards * 2 * SMALL_SEATS;
+            int customers = seats * 2;
+            Multiplex multiplex = run(shards, customers, smallFile, out);
+            SimulationResult r = multiplex.getResult();
+            out.printf("%8d %10d %10d %12d %10d%n", shards, customers, seats, r.ticketsSold,
+                    multiplex.getTransfers());
+        }
+    }
+
+    /**
+     * Runs one multiplex to the end with console output muted
+     */
+    private static Multiplex run(int shards, int customers, Path movieFile, PrintStream out) throws Exception {
+        TheaterConfig config = new TheaterConfig();
+        config.shards = shards;
+        config.customers = customers;
+        config.timeScale = TIME_SCALE;
+        config.log = EventLog.Output.OFF;
+        config.seed = 1;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print when created and leaving
+        Multiplex multiplex = new Multiplex(config, Thread::new, OutputStream.nullOutputStream());
+        multiplex.initTheaters(movieFile.toString());
+        multiplex.initCustomers();
+        multiplex.shutdown();
+        System.setOut(out);
+        return multiplex;
+    }
+
+    private static Path movieFile(int seats) throws Exception {
+        return Bench.movieFile("First\t" + seats, "Second\t" + seats);
+    }
+
+}
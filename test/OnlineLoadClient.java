@@ -0,0 +1,172 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * OnlineLoadClient.java
+ *
+ * Buys tickets from OnlineSales over thousands of concurrent localhost
+ * connections while a threaded theater sells the same showings at its box
+ * office. Every connection sends one purchase after another, for 1 to 4
+ * seats of a random showing, through a single HttpClient whose selector
+ * thread drives all of them. For each number of connections it reports the
+ * request rate and latency percentiles, then checks for oversell: no
+ * showing sold more seats than it has, every seat sold online was answered
+ * to a client, and the seat map of every auditorium has exactly as many
+ * seats taken as tickets were sold, so no seat was sold twice. The first
+ * level also warms up the JIT.
+ *
+ * Usage: java OnlineLoadClient [connections,...] [requestsPerConnection]
+ *
+ */
+public class OnlineLoadClient {
+
+    private static final int SHOWINGS = 8;
+    private static final int SEATS = 4000;
+    private static final int SEATS_PER_ROW = 25;
+
+    /**
+     * Results of one load run
+     */
+    static class Load {
+
+        final Histogram latencyMicros = new Histogram();
+        final LongAdder seatsSold = new LongAdder();
+        final LongAdder soldOut = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        double seconds;
+    }
+
+    public static void main(String args[]) throws Exception {
+        String[] levels = (args.length >= 1 ? args[0] : "100,1000,4000").split(",");
+        int perConnection = args.length >= 2 ? Integer.parseInt(args[1]) : 20;
+        OnlineSales.noDelay();
+        String[] showings = new String[SHOWINGS];
+        for (int i = 0; i < SHOWINGS; i++) {
+            showings[i] = "Showing " + i + "\t" + SEATS;
+        }
+        Path movieFile = Bench.movieFile(showings);
+
+        PrintStream out = System.out;
+        out.printf("%d showings of %d seats, %d purchases per connection, box office selling at the same time%n",
+                SHOWINGS, SEATS, perConnection);
+        out.printf("%11s %9s %9s %9s %9s %9s %9s %8s %8s %9s  %s%n", "connections", "requests", "req/s", "p50 ms",
+                "p99 ms", "p99.9 ms", "max ms", "online", "box", "sold out", "oversell");
+        for (String level : levels) {
+            int connections = Integer.parseInt(level.trim());
+            TheaterConfig config = new TheaterConfig();
+            config.customers = 600;
+            config.workers = new int[]{8, 2, 2};
+            config.timeScale = 600;
+            config.arrival = "constant";
+            config.arrivalRate = 200;
+            config.log = EventLog.Output.OFF;
+            config.seed = 1;
+            config.seatsPerRow = SEATS_PER_ROW;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));    //workers print when created and leaving
+            Theater theater = new Theater(config);
+            theater.initTheater(movieFile.toString());
+            Thread boxOffice = new Thread(() -> {
+                try {
+                    theater.initCustomers();
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            boxOffice.start();
+            OnlineSales sales = new OnlineSales(theater, 0, 0);
+            sales.start();
+
+            Load load = run(sales.getPort(), connections, perConnection);
+
+            boxOffice.join();
+            theater.shutdown();
+            sales.stop();
+            System.setOut(out);
+            int online = sales.getSoldTotal();
+            int total = 0;
+            String oversell = "none";
+            for (Movie movie : theater.getMovies()) {
+                total += movie.getTicketsSold();
+                int taken = movie.getCapacity() - movie.getSeatMap().countFree();
+                if (movie.getTicketsSold() > movie.getCapacity() || movie.getTicketsAvaliable() < 0) {
+                    oversell = movie.title + " sold " + movie.getTicketsSold() + " of " + movie.getCapacity();
+                } else if (taken != movie.getTicketsSold()) {
+                    oversell = movie.title + " has " + taken + " seats taken for " + movie.getTicketsSold() + " sold";
+                }
+            }
+            if (load.seatsSold.sum() != online) {
+                oversell = "clients were sold " + load.seatsSold.sum() + " seats, server sold " + online;
+            } else if (theater.getResult().ticketsSold != total - online) {
+                oversell = "box office counted " + theater.getResult().ticketsSold + " of " + (total - online);
+            }
+            out.printf("%11d %9d %9.0f %9.2f %9.2f %9.2f %9.2f %8d %8d %9d  %s%n", connections,
+                    load.latencyMicros.getCount(), load.latencyMicros.getCount() / load.seconds,
+                    load.latencyMicros.getPercentile(50) / 1000.0, load.latencyMicros.getPercentile(99) / 1000.0,
+                    load.latencyMicros.getPercentile(99.9) / 1000.0, load.latencyMicros.getMax() / 1000.0, online,
+                    total - online, load.soldOut.sum(), oversell);
+            if (load.errors.sum() > 0) {
+                out.printf("%11s %d requests failed%n", "", load.errors.sum());
+            }
+        }
+    }
+
+    /**
+     * Opens the connections and has each send its purchases one after another until all are answered
+     */
+    private static Load run(int port, int connections, int perConnection) throws InterruptedException {
+        ExecutorService callbacks = Executors.newFixedThreadPool(2);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(callbacks).build();
+        Load load = new Load();
+        CountDownLatch done = new CountDownLatch(connections);
+        SplittableRandom rand = new SplittableRandom(1);
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            buy(client, port, rand.split(), new AtomicInteger(perConnection), load, done);
+        }
+        done.await();
+        load.seconds = (System.nanoTime() - start) / 1e9;
+        callbacks.shutdown();
+        return load;
+    }
+
+    /**
+     * Sends one purchase and, once it is answered, the next one of the same connection
+     */
+    private static void buy(HttpClient client, int port, SplittableRandom rand, AtomicInteger left, Load load,
+            CountDownLatch done) {
+        int seats = 1 + rand.nextInt(4);
+        URI uri = URI.create("http://localhost:" + port + "/tickets?movie=" + rand.nextInt(SHOWINGS) + "&seats="
+                + seats);
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build();
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, ex) -> {
+            load.latencyMicros.record((System.nanoTime() - sent) / 1000);
+            if (ex != null) {
+                load.errors.increment();
+            } else if (response.statusCode() == 200) {
+                load.seatsSold.add(seats);
+            } else if (response.statusCode() == 409) {
+                load.soldOut.increment();
+            } else {
+                load.errors.increment();
+            }
+            if (left.decrementAndGet() > 0) {
+                buy(client, port, rand, left, load, done);
+            } else {
+                done.countDown();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,67 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/*
+ * PartySizeBenchmark.java
+ *
+ * Sends the same number of people through the theater in parties of
+ * different sizes. The threaded theater runs with every worker sleep scaled
+ * to zero, so admitted people per second measures the cost of the handoffs,
+ * which are per party. The event engine runs with the default service times
+ * to show admitted people per simulated hour when service is per party.
+ *
+ * Usage: java PartySizeBenchmark [people] [runs]
+ *
+ */
+public class PartySizeBenchmark {
+
+    private static final int[] SIZES = {1, 2, 4, 8};
+    //every worker sleep rounds down to 0 ms
+    private static final int TIME_SCALE = 1000000000;
+
+    public static void main(String args[]) throws Exception {
+        int people = args.length >= 1 ? Integer.parseInt(args[0]) : 20000;
+        int runs = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        Path movieFile = Bench.movieFile("Benchmark\t" + Integer.MAX_VALUE);
+
+        PrintStream out = System.out;
+        out.printf("%10s %8s %18s %20s%n", "party size", "parties", "threaded people/s", "event people/hour");
+        for (int size : SIZES) {
+            double best = 0;
+            TheaterConfig threaded = new TheaterConfig();
+            threaded.customers = people / size;
+            threaded.timeScale = TIME_SCALE;
+            threaded.partySize = new PartySize(size);
+            threaded.log = EventLog.Output.OFF;
+            threaded.seed = 1;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Theater theater = new Theater(threaded, Thread::new, OutputStream.nullOutputStream());
+            theater.initTheater(movieFile.toString());
+            for (int run = 0; run < runs; run++) {
+                if (run > 0) {
+                    theater.restart();  //same threads as the last run
+                }
+                long start = System.nanoTime();
+                theater.initCustomers();
+                long elapsed = System.nanoTime() - start;
+                theater.stop();
+                theater.join();
+                best = Math.max(best, theater.getResult().ticketsSold * 1e9 / elapsed);
+            }
+            theater.shutdown();
+            System.setOut(out);
+
+            ArrayList<Movie> movies = new ArrayList<>();
+            Theater.loadMovies(movieFile.toString(), movies);
+            TheaterConfig config = new TheaterConfig();
+            config.customers = people / size;
+            config.partySize = new PartySize(size);
+            config.seed = 1;
+            SimulationResult r = new EventSimulation(movies, config).run();
+            out.printf("%10d %8d %18.0f %20.1f%n", size, people / size, best, r.getThroughputPerHour());
+        }
+    }
+
+}
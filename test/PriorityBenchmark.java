@@ -0,0 +1,110 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+/*
+ * PriorityBenchmark.java
+ *
+ * Compares lines that serve customers in the order they joined with lines
+ * that serve members and customers whose showing starts soon first, for
+ * several aging times. Some customers bought their ticket online and skip
+ * the box office.
+ *
+ * The first table overloads the box office with Poisson arrivals at 120% of
+ * its capacity and prints the entry time of each kind of customer, in
+ * simulated seconds, and how many of them entered within the SLA. It runs
+ * first since the thousands of threads of the second table slow down the
+ * runs after them. The second scales worker sleeps to zero, so admitted
+ * customers per second shows what the priority queue costs the handoffs.
+ *
+ * Usage: java PriorityBenchmark [customers] [overload]
+ *
+ */
+public class PriorityBenchmark {
+
+    //every worker sleep rounds down to 0 ms
+    private static final int FAST_SCALE = 1000000000;
+    private static final int TIME_SCALE = 6000;
+    private static final int[] WORKERS = {8, 2, 12};
+    private static final double MEMBER_SHARE = 0.1;
+    private static final double PREPAID_SHARE = 0.2;
+    private static final long SLA_MILLIS = 600000;
+    //aging times in simulated minutes, 0 meaning first come first served
+    private static final int[] AGING_MINUTES = {0, 5, 30, 120};
+
+    public static void main(String args[]) throws Exception {
+        int customers = args.length >= 1 ? Integer.parseInt(args[0]) : 2000;
+        double overload = args.length >= 2 ? Double.parseDouble(args[1]) : 1.2;
+        Path movieFile = Bench.movieFile("Morning\t" + Integer.MAX_VALUE + "\t11:00\t1",  //an hour after opening
+                "Matinee\t" + Integer.MAX_VALUE + "\t14:00\t2", "Evening\t" + Integer.MAX_VALUE + "\t20:00\t3");
+
+        PrintStream out = System.out;
+        //customers that need the box office arrive at overload times its capacity
+        double rate = overload * WORKERS[TheaterConfig.BOX] * 60000.0 / BoxOfficeAgent.TIME / (1 - PREPAID_SHARE);
+        out.printf("%d customers arriving at %.1f/min, %.0f%% of the box office, %.0f%% members, %.0f%% prepaid, "
+                + "SLA %d s from arriving to entering%n", customers, rate, overload * 100, MEMBER_SHARE * 100,
+                PREPAID_SHARE * 100, SLA_MILLIS / 1000);
+        out.printf("%-10s %8s %-8s %9s %12s %12s %12s %8s %10s%n", "order", "aging m", "kind", "customers",
+                "p50 entry s", "p99 entry s", "max entry s", "in SLA", "people/h");
+        for (int aging : AGING_MINUTES) {
+            TheaterConfig config = config(aging, customers);
+            config.timeScale = TIME_SCALE;
+            config.arrival = "poisson";
+            config.arrivalRate = rate;
+            Theater theater = run(config, movieFile, out);
+            SimulationResult r = theater.getResult();
+            for (Customer.Kind kind : Customer.Kind.values()) {
+                Histogram entries = theater.getEntryTimes(kind);
+                if (entries.getCount() == 0) {
+                    continue;
+                }
+                out.printf("%-10s %8s %-8s %9d %12.1f %12.1f %12.1f %7.1f%% %10.0f%n", config.lineOrder,
+                        aging == 0 ? "-" : aging, kind, entries.getCount(), entries.getPercentile(50) / 1000.0,
+                        entries.getPercentile(99) / 1000.0, entries.getMax() / 1000.0,
+                        entries.getPercentAtOrBelow(SLA_MILLIS), r.getThroughputPerHour());
+            }
+        }
+        out.println();
+        out.printf("%d customers, worker sleeps scaled to 0%n", customers * 10);
+        out.printf("%-10s %8s %12s%n", "order", "aging m", "customers/s");
+        for (int aging : new int[]{0, 30}) {
+            TheaterConfig config = config(aging, customers * 10);
+            config.timeScale = FAST_SCALE;
+            long start = System.nanoTime();
+            Theater theater = run(config, movieFile, out);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.printf("%-10s %8s %12.0f%n", config.lineOrder, aging == 0 ? "-" : aging,
+                    theater.getResult().ticketsSold / seconds);
+        }
+    }
+
+    private static TheaterConfig config(int agingMinutes, int customers) {
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customers;
+        config.workers = WORKERS.clone();
+        config.handoff = ServiceLine.Handoff.PARK; //the same handoff as priority lines, so only the order differs
+        config.lineOrder = agingMinutes == 0 ? ServiceLine.Order.FIFO : ServiceLine.Order.PRIORITY;
+        config.priorityAgingMillis = agingMinutes * 60000L;
+        config.memberShare = MEMBER_SHARE;
+        config.prepaidShare = PREPAID_SHARE;
+        config.soonMinutes = 30;
+        config.slaMillis = SLA_MILLIS;
+        config.log = EventLog.Output.OFF;
+        config.seed = 1;
+        return config;
+    }
+
+    /**
+     * Runs one theater to the end with console output muted
+     */
+    private static Theater run(TheaterConfig config, Path movieFile, PrintStream out) throws Exception {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print when created and leaving
+        Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+        theater.initTheater(movieFile.toString());
+        theater.initCustomers();
+        theater.shutdown();
+        System.setOut(out);
+        return theater;
+    }
+
+}
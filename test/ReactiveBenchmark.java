@@ -0,0 +1,115 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * ReactiveBenchmark.java
+ *
+ * Compares the thread-per-customer Theater on platform and virtual threads
+ * with ReactiveTheater, which runs every customer and worker on a few carrier
+ * threads. Every configuration runs in its own JVM so that peak RSS is not
+ * polluted by earlier runs. Worker sleeps are scaled to zero and every movie
+ * has enough seats, so every customer goes through every stage and the runs
+ * measure the cost of moving customers between stages.
+ *
+ * Usage: java ReactiveBenchmark [maxThreadedCustomers] [maxReactiveCustomers]
+ *
+ */
+public class ReactiveBenchmark {
+
+    private static final int[] CUSTOMERS = {10000, 100000, 1000000};
+    //every worker sleep rounds down to 0 ms
+    private static final int TIME_SCALE = 1000000000;
+
+    public static void main(String args[]) throws Exception {
+        if (args.length == 3) {
+            runChild(args[0], Integer.parseInt(args[1]), args[2]);
+            return;
+        }
+        int maxThreaded = args.length >= 1 ? Integer.parseInt(args[0]) : 10000;
+        int maxReactive = args.length >= 2 ? Integer.parseInt(args[1]) : 1000000;
+        Path movieFile = Bench.movieFile("Benchmark\t" + Integer.MAX_VALUE);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String cp = System.getProperty("java.class.path");
+
+        System.out.printf("%-9s %9s %10s %12s %12s %14s%n", "mode", "customers", "wall ms", "customers/s",
+                "peak threads", "peak RSS MB");
+        for (String mode : new String[]{"platform", "virtual", "reactive"}) {
+            for (int customers : CUSTOMERS) {
+                if (customers > (mode.equals("reactive") ? maxReactive : maxThreaded)) {
+                    continue;
+                }
+                ProcessBuilder pb = new ProcessBuilder(java, "-cp", cp, "ReactiveBenchmark", mode,
+                        String.valueOf(customers), movieFile.toString());
+                pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+                pb.redirectError(ProcessBuilder.Redirect.PIPE);
+                Process p = pb.start();
+                String result = new String(p.getErrorStream().readAllBytes()).stripTrailing();
+                p.waitFor();
+                System.out.printf("%-9s %9d %s%n", mode, customers, result);
+            }
+        }
+    }
+
+    /**
+     * Runs one configuration and reports the result on stderr
+     */
+    private static void runChild(String mode, int customers, String movieFile) throws IOException {
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customers;
+        config.timeScale = TIME_SCALE;
+        config.log = EventLog.Output.OFF;
+        config.mode = mode;
+        config.seed = 1;
+        long start = System.nanoTime();
+        SimulationResult result;
+        if (mode.equals("reactive")) {
+            ArrayList<Movie> movies = new ArrayList<>();
+            Theater.loadMovies(movieFile, movies);
+            result = new ReactiveTheater(config, movies, OutputStream.nullOutputStream()).run();
+        } else {
+            Theater theater;
+            try {
+                theater = new Theater(config, ThreadMode.parse(mode).newFactory(), OutputStream.nullOutputStream());
+            } catch (UnsupportedOperationException ex) {
+                err.println(ex.getMessage());
+                return;
+            }
+            theater.initTheater(movieFile);
+            theater.initCustomers();
+            theater.shutdown();
+            result = theater.getResult();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (result.ticketsSold != customers) {
+            err.println("only " + result.ticketsSold + " of " + customers + " customers got in");
+            return;
+        }
+        err.printf("%10d %12.0f %12d %14.1f%n", elapsed / 1000000, customers * 1e9 / elapsed,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount(), peakRssKb() / 1024.0);
+    }
+
+    /**
+     * Reads the peak resident set size of this process from /proc
+     *
+     * @return peak RSS in kB, or -1 if not available
+     */
+    private static long peakRssKb() throws IOException {
+        List<String> status = Files.readAllLines(Paths.get("/proc/self/status"));
+        for (String line : status) {
+            if (line.startsWith("VmHWM:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+
+/*
+ * SaturationSweep.java
+ *
+ * Runs the discrete-event theater with Poisson arrivals at rates from well
+ * below to well above what the box office can serve, with and without a
+ * bounded box office line, and prints the achieved arrival rate and p99 wait
+ * at each rate. Two agents at a 90 s mean serve 1.33 customers a minute;
+ * the concession stand gets four workers so the box office is the bottleneck.
+ *
+ * Usage: java SaturationSweep [movieFile] [customers] [runs] [lineCapacity]
+ *
+ */
+public class SaturationSweep {
+
+    private static final double[] RATES = {0.5, 0.8, 1.0, 1.2, 1.3, 1.4, 1.6, 2.0, 3.0};
+
+    public static void main(String args[]) {
+        String movieFile = args.length >= 1 ? args[0] : "movies.txt";
+        int customers = args.length >= 2 ? Integer.parseInt(args[1]) : 500;
+        int runs = args.length >= 3 ? Integer.parseInt(args[2]) : 50;
+        int capacity = args.length >= 4 ? Integer.parseInt(args[3]) : 10;
+        ArrayList<Movie> movies = new ArrayList<>();
+        if (!Theater.loadMovies(movieFile, movies)) {
+            System.out.println("Movie file could not be opened");
+            return;
+        }
+        for (int i = 0; i < movies.size(); i++) {   //plenty of seats so nobody is turned away
+            movies.set(i, new Movie(i, movies.get(i).title, customers));
+        }
+
+        System.out.printf("%8s %9s %12s %11s %11s%n", "target", "capacity", "achieved", "held back", "p99 wait s");
+        for (double rate : RATES) {
+            for (int lineCapacity : new int[]{0, capacity}) {
+                double achieved = 0;
+                long held = 0;
+                Histogram waits = new Histogram();
+                for (int run = 0; run < runs; run++) {
+                    TheaterConfig config = new TheaterConfig();
+                    config.customers = customers;
+                    config.workers = new int[]{Theater.MAX_BOX_AGENTS, Theater.MAX_TICKET_TAKERS, 4};
+                    config.arrival = "poisson";
+                    config.arrivalRate = rate;
+                    config.lineCapacity = lineCapacity;
+                    config.seed = run;
+                    SimulationResult r = new EventSimulation(movies, config).run();
+                    achieved += r.getArrivalRatePerMinute();
+                    held += r.heldBack;
+                    waits.add(r.waits);
+                }
+                System.out.printf("%8.2f %9s %12.2f %11.1f %11.1f%n", rate,
+                        lineCapacity == 0 ? "none" : String.valueOf(lineCapacity), achieved / runs,
+                        (double) held / runs, waits.getPercentile(99) / 1000.0);
+            }
+        }
+    }
+
+}
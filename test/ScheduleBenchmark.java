@@ -0,0 +1,139 @@
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+ * ScheduleBenchmark.java
+ *
+ * Builds the day of a large multiplex: every screen starts a showing every
+ * 150 minutes from 10:30 until 22:30, staggered so starts spread over the
+ * hour. First it compares how fast Schedule finds the next showing on sale
+ * with seats against a scan of every showing, for a multiplex of 30 and one
+ * of 300 screens. Then it runs the 30 screen day as a discrete-event
+ * simulation for several numbers of box office agents, with parties arriving
+ * all day, and prints tickets sold, waits and how long the day took to
+ * simulate, which is what a staffing decision needs.
+ *
+ * Usage: java ScheduleBenchmark [parties] [lookups]
+ *
+ */
+public class ScheduleBenchmark {
+
+    private static final int TITLES = 15;
+    private static final int FIRST_SHOWING = 10 * 60 + 30;
+    private static final int LAST_SHOWING = 22 * 60 + 30;
+    private static final int[] BOX_AGENTS = {16, 20, 24, 28, 32};
+
+    public static void main(String args[]) throws Exception {
+        int parties = args.length >= 1 ? Integer.parseInt(args[0]) : 12000;
+        int lookups = args.length >= 2 ? Integer.parseInt(args[1]) : 1000000;
+
+        System.out.printf("%8s %10s %16s %16s%n", "screens", "showings", "scan ns/lookup", "index ns/lookup");
+        for (int screens : new int[]{30, 300}) {
+            List<Movie> movies = day(screens);
+            Schedule schedule = new Schedule(movies, 0);
+            double scan = 0;
+            double index = 0;
+            for (int round = 0; round < 3; round++) {   //first rounds warm up the JIT
+                scan = lookups(movies, schedule, lookups, false);
+                index = lookups(movies, schedule, lookups, true);
+            }
+            System.out.printf("%8d %10d %16.1f %16.1f%n", screens, movies.size(), scan, index);
+        }
+
+        List<Movie> movies = day(30);
+        int seats = 0;
+        for (Movie movie : movies) {
+            seats += movie.getCapacity();
+        }
+        System.out.println();
+        System.out.printf("30 screens, %d showings, %d seats, %d parties of 1 to 4 from 10:00 to 22:00%n",
+                movies.size(), seats, parties);
+        System.out.printf("%10s %12s %12s %12s %12s %10s%n", "box agents", "sold", "turned away", "p50 wait m",
+                "p99 wait m", "wall ms");
+        for (int agents : BOX_AGENTS) {
+            TheaterConfig config = new TheaterConfig();
+            config.customers = parties;
+            config.workers = new int[]{agents, 8, 16};
+            config.serviceTimes = new ServiceTime[]{ServiceTime.parse("exponential:90000"),
+                ServiceTime.parse("exponential:15000"), ServiceTime.parse("exponential:60000")};
+            config.partySize = PartySize.parse("1-4");
+            config.arrival = "poisson";
+            config.arrivalRate = parties / (12 * 60.0);
+            config.seed = 1;
+            EventSimulation simulation = new EventSimulation(movies, config);
+            long start = System.nanoTime();
+            SimulationResult r = simulation.run();
+            double wallMillis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%10d %12d %12d %12.1f %12.1f %10.1f%n", agents, r.ticketsSold, r.getTurnedAway(),
+                    r.waits.getPercentile(50) / 60000.0, r.waits.getPercentile(99) / 60000.0, wallMillis);
+        }
+    }
+
+    /**
+     * Writes the day of a multiplex to a movie file and loads it, so showings get IDs as they would in a run
+     */
+    private static List<Movie> day(int screens) throws Exception {
+        Path file = Files.createTempFile("schedule", ".txt");
+        file.toFile().deleteOnExit();
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (int screen = 1; screen <= screens; screen++) {
+                int seats = 100 + screen * 37 % 300;
+                for (int time = FIRST_SHOWING + screen * 13 % 60; time <= LAST_SHOWING; time += 150) {
+                    w.printf("Title %d\t%d\t%02d:%02d\t%d%n", (screen * 7 + time) % TITLES, seats, time / 60,
+                            time % 60, screen);
+                }
+            }
+        }
+        ArrayList<Movie> movies = new ArrayList<>();
+        Theater.loadMovies(file.toString(), movies);
+        return movies;
+    }
+
+    /**
+     * Finds the next showing of random titles at random times with seats for random parties, half the showings being
+     * nearly full
+     *
+     * @return nanoseconds per lookup
+     */
+    private static double lookups(List<Movie> movies, Schedule schedule, int lookups, boolean index) {
+        SplittableRandom rand = new SplittableRandom(1);
+        int[] seats = new int[movies.size()];
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = i % 2 == 0 ? 2 : movies.get(i).getCapacity();
+        }
+        String[] titles = new String[TITLES];
+        for (int t = 0; t < TITLES; t++) {
+            titles[t] = "Title " + t;
+        }
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            String title = titles[rand.nextInt(TITLES)];
+            int time = 10 * 60 + rand.nextInt(12 * 60);
+            int party = rand.nextInt(1, 5);
+            Movie next;
+            if (index) {
+                next = schedule.next(title, time, m -> seats[m.id] >= party);
+            } else {
+                next = null;
+                for (Movie m : movies) {    //earliest on sale with seats, lowest ID among showings at the same time
+                    if (m.title.equals(title) && m.showtime > time && seats[m.id] >= party
+                            && (next == null || m.showtime < next.showtime)) {
+                        next = m;
+                    }
+                }
+            }
+            found += next == null ? 0 : next.id;
+        }
+        double nanos = (double) (System.nanoTime() - start) / lookups;
+        if (found == 0) {
+            throw new AssertionError("No showing found");
+        }
+        return nanos;
+    }
+
+}
@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * SeatMapBenchmark.java
+ *
+ * Many box office agents filling large auditoriums with parties of 1 to 6
+ * at once. Compares SeatMap, which searches whole words of its bitset and
+ * claims seats with compare-and-set, against a synchronized seat map that
+ * checks every seat one at a time, in allocations per second. Every fill
+ * checks that the auditorium ended up full and that no seat was sold
+ * twice.
+ *
+ * Usage: java SeatMapBenchmark [fills] [maxAgents]
+ *
+ */
+public class SeatMapBenchmark {
+
+    //seats and seats per row of each auditorium
+    private static final int[][] AUDITORIUMS = {{2000, 50}, {10000, 200}};
+    private static final int[] PARTIES = {2, 4, 1, 3, 2, 6, 2, 5};
+
+    /**
+     * A seat map that checks seat by seat under one lock, trying rows and seats in the same order as SeatMap
+     */
+    static class SynchronizedSeatMap {
+
+        private final boolean[][] taken;
+        private final int[] rowOrder;
+
+        SynchronizedSeatMap(int seats, int seatsPerRow) {
+            int rows = (seats + seatsPerRow - 1) / seatsPerRow;
+            taken = new boolean[rows][];
+            for (int r = 0; r < rows; r++) {
+                taken[r] = new boolean[Math.min(seatsPerRow, seats - r * seatsPerRow)];
+            }
+            rowOrder = new int[rows];
+            int best = rows * 2 / 3;
+            rowOrder[0] = best;
+            for (int i = 1, back = best + 1, front = best - 1; i < rows; i++) {
+                if (back < rows && (front < 0 || back - best <= best - front)) {
+                    rowOrder[i] = back++;
+                } else {
+                    rowOrder[i] = front--;
+                }
+            }
+        }
+
+        synchronized int allocate(int n) {
+            for (int row : rowOrder) {
+                boolean[] seats = taken[row];
+                int target = (seats.length - n) / 2;
+                int best = SeatMap.NONE;
+                for (int start = 0, run = 0; start < seats.length; start++) {
+                    run = seats[start] ? 0 : run + 1;
+                    int first = start - n + 1;
+                    if (run >= n && (best == SeatMap.NONE || Math.abs(first - target) < Math.abs(best - target))) {
+                        best = first;
+                    }
+                }
+                if (best != SeatMap.NONE) {
+                    for (int s = best; s < best + n; s++) {
+                        seats[s] = true;
+                    }
+                    return (row << 16) | best;
+                }
+            }
+            return SeatMap.NONE;
+        }
+    }
+
+    interface Allocator {
+
+        int allocate(int n);
+    }
+
+    public static void main(String args[]) throws InterruptedException {
+        int fills = args.length >= 1 ? Integer.parseInt(args[0]) : 200;
+        int maxAgents = args.length >= 2 ? Integer.parseInt(args[1]) : 64;
+
+        System.out.printf("%d processors, best of 3 rounds of %d fills%n",
+                Runtime.getRuntime().availableProcessors(), fills);
+        System.out.printf("%8s %8s %8s %18s %18s%n", "seats", "per row", "agents", "synchronized/s", "seat map/s");
+        for (int[] auditorium : AUDITORIUMS) {
+            for (int agents = 1; agents <= maxAgents; agents *= 4) {
+                double locked = 0;
+                double bits = 0;
+                for (int round = 0; round < 3; round++) {   //first rounds warm up the JIT
+                    locked = Math.max(locked, rate(auditorium, agents, fills, false));
+                    bits = Math.max(bits, rate(auditorium, agents, fills, true));
+                }
+                System.out.printf("%8d %8d %8d %18.0f %18.0f%n", auditorium[0], auditorium[1], agents, locked, bits);
+            }
+        }
+    }
+
+    /**
+     * Fills an auditorium again and again
+     *
+     * @return allocations per second
+     */
+    private static double rate(int[] auditorium, int agents, int fills, boolean bitset) throws InterruptedException {
+        long allocations = 0;
+        long nanos = 0;
+        SeatMap map = new SeatMap(auditorium[0], auditorium[1]);
+        for (int fill = 0; fill < fills; fill++) {
+            map.reset();
+            Allocator allocator = bitset ? map::allocate
+                    : new SynchronizedSeatMap(auditorium[0], auditorium[1])::allocate;
+            long[] elapsed = new long[1];
+            List<List<int[]>> sold = fill(allocator, agents, elapsed);
+            nanos += elapsed[0];
+            allocations += check(sold, auditorium);
+            if (bitset && map.countFree() != 0) {
+                throw new AssertionError(map.countFree() + " seats left free");
+            }
+        }
+        return allocations * 1e9 / nanos;
+    }
+
+    /**
+     * Starts all agents at once. Each sells parties until one does not fit, then single seats until none are left.
+     * Creating the threads is not timed.
+     *
+     * @param elapsed set to the nanoseconds from the start until the last agent finished
+     * @return the blocks and party sizes each agent sold
+     */
+    private static List<List<int[]>> fill(Allocator allocator, int agents, long[] elapsed)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<List<int[]>> sold = new ArrayList<>();
+        Thread threads[] = new Thread[agents];
+        for (int i = 0; i < agents; i++) {
+            List<int[]> blocks = new ArrayList<>();
+            sold.add(blocks);
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                }
+                int next = id;
+                boolean singles = false;
+                while (true) {
+                    int n = singles ? 1 : PARTIES[next++ % PARTIES.length];
+                    int block = allocator.allocate(n);
+                    if (block != SeatMap.NONE) {
+                        blocks.add(new int[]{block, n});
+                    } else if (singles) {
+                        return;
+                    } else {
+                        singles = true;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        elapsed[0] = System.nanoTime() - begin;
+        return sold;
+    }
+
+    /**
+     * Checks that every seat was sold exactly once
+     *
+     * @return number of allocations
+     */
+    private static long check(List<List<int[]>> sold, int[] auditorium) {
+        boolean[] taken = new boolean[auditorium[0]];
+        long allocations = 0;
+        int seats = 0;
+        for (List<int[]> blocks : sold) {
+            for (int[] block : blocks) {
+                int first = SeatMap.row(block[0]) * auditorium[1] + SeatMap.seat(block[0]);
+                for (int s = first; s < first + block[1]; s++) {
+                    if (taken[s]) {
+                        throw new AssertionError("Seat " + s + " sold twice");
+                    }
+                    taken[s] = true;
+                }
+                seats += block[1];
+                allocations++;
+            }
+        }
+        if (seats != auditorium[0]) {
+            throw new AssertionError("Sold " + seats + " of " + auditorium[0] + " seats");
+        }
+        return allocations;
+    }
+
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * SeatMapCheck.java
+ *
+ * Fills seat maps from many threads at once, each allocating blocks of 1
+ * to 8 seats and giving some of them back while the others allocate. Rows
+ * are wider than a 64-bit word, so blocks are claimed across two words and
+ * rolled back when the second one was taken. Once the threads are done it
+ * checks that no seat belongs to two blocks, that every seat of a block is
+ * taken and the free count matches, that the seats left can all be sold
+ * one at a time, and that releasing every block frees the whole map.
+ *
+ * Usage: java SeatMapCheck [threads] [seats] [rounds]
+ *
+ */
+public class SeatMapCheck {
+
+    private static final int SEATS_PER_ROW = 100;
+    private static final int MAX_PARTY = 8;
+
+    public static void main(String args[]) throws InterruptedException {
+        int threads = args.length >= 1 ? Integer.parseInt(args[0]) : 16;
+        int seats = args.length >= 2 ? Integer.parseInt(args[1]) : 20000;
+        int rounds = args.length >= 3 ? Integer.parseInt(args[2]) : 20;
+
+        for (int round = 0; round < rounds; round++) {
+            SeatMap map = new SeatMap(seats, SEATS_PER_ROW);
+            ArrayList<ArrayList<int[]>> kept = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] agents = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                ArrayList<int[]> mine = new ArrayList<>();
+                kept.add(mine);
+                agents[t] = new Thread(() -> {
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    int misses = 0;
+                    while (misses < 100) {
+                        if (!mine.isEmpty() && rand.nextInt(4) == 0) {  //give a block back while others allocate
+                            int[] block = mine.remove(rand.nextInt(mine.size()));
+                            map.release(block[0], block[1]);
+                            continue;
+                        }
+                        int n = 1 + rand.nextInt(MAX_PARTY);
+                        int block = map.allocate(n);
+                        if (block == SeatMap.NONE) {
+                            misses++;
+                        } else {
+                            mine.add(new int[]{block, n});
+                        }
+                    }
+                });
+                agents[t].start();
+            }
+            start.countDown();
+            for (Thread agent : agents) {
+                agent.join();
+            }
+
+            int[][] owner = new int[map.getRows()][SEATS_PER_ROW];
+            int taken = 0;
+            for (int t = 0; t < threads; t++) {
+                for (int[] block : kept.get(t)) {
+                    int row = SeatMap.row(block[0]);
+                    for (int s = SeatMap.seat(block[0]); s < SeatMap.seat(block[0]) + block[1]; s++) {
+                        if (owner[row][s] != 0) {
+                            throw new AssertionError("Round " + round + ": row " + row + " seat " + s
+                                    + " claimed by agents " + (owner[row][s] - 1) + " and " + t);
+                        }
+                        if (!map.isTaken(row, s)) {
+                            throw new AssertionError("Round " + round + ": row " + row + " seat " + s
+                                    + " was allocated but is free");
+                        }
+                        owner[row][s] = t + 1;
+                        taken++;
+                    }
+                }
+            }
+            if (map.countFree() != seats - taken) {
+                throw new AssertionError("Round " + round + ": " + map.countFree() + " seats free, expected "
+                        + (seats - taken));
+            }
+            ArrayList<Integer> singles = new ArrayList<>();
+            int single;
+            while ((single = map.allocate(1)) != SeatMap.NONE) {
+                singles.add(single);
+            }
+            if (singles.size() != seats - taken || map.countFree() != 0) {
+                throw new AssertionError("Round " + round + ": sold " + singles.size() + " single seats of "
+                        + (seats - taken) + " free, " + map.countFree() + " left");
+            }
+            for (int t = 0; t < threads; t++) {
+                for (int[] block : kept.get(t)) {
+                    map.release(block[0], block[1]);
+                }
+            }
+            for (int block : singles) {
+                map.release(block, 1);
+            }
+            if (map.countFree() != seats) {
+                throw new AssertionError("Round " + round + ": " + map.countFree() + " of " + seats
+                        + " seats free after releasing every block");
+            }
+        }
+        System.out.printf("%d rounds of %d seats in rows of %d filled by %d threads, no seat claimed twice%n", rounds,
+                seats, SEATS_PER_ROW, threads);
+    }
+
+}
@@ -0,0 +1,84 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/*
+ * ThreadModeBenchmark.java
+ *
+ * Compares peak RSS and wall-clock time of a full theater run on platform
+ * threads and on virtual threads. Every configuration runs in its own JVM so
+ * that peak RSS is not polluted by earlier runs.
+ *
+ * Usage: java ThreadModeBenchmark [movieFile]
+ *
+ */
+public class ThreadModeBenchmark {
+
+    private static final int[] CUSTOMERS = {1000, 10000, 100000};
+    //large enough that every worker sleep rounds down to zero, so only the handshakes are measured
+    private static final int TIME_SCALE = 1000000;
+
+    public static void main(String args[]) throws Exception {
+        if (args.length == 3) {
+            runChild(ThreadMode.parse(args[0]), Integer.parseInt(args[1]), args[2]);
+            return;
+        }
+        String movieFile = args.length >= 1 ? args[0] : "movies.txt";
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String cp = System.getProperty("java.class.path");
+
+        System.out.printf("%-9s %9s %10s %14s%n", "mode", "customers", "wall ms", "peak RSS MB");
+        for (ThreadMode mode : ThreadMode.values()) {
+            for (int customers : CUSTOMERS) {
+                ProcessBuilder pb = new ProcessBuilder(java, "-cp", cp, "ThreadModeBenchmark",
+                        mode.name(), String.valueOf(customers), movieFile);
+                pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+                pb.redirectError(ProcessBuilder.Redirect.PIPE);
+                Process p = pb.start();
+                String result = new String(p.getErrorStream().readAllBytes()).stripTrailing();
+                p.waitFor();
+                System.out.printf("%-9s %9d %s%n", mode, customers, result);
+            }
+        }
+    }
+
+    /**
+     * Runs one configuration and reports the result on stderr
+     */
+    private static void runChild(ThreadMode mode, int customers, String movieFile) throws IOException {
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            Theater theater = new Theater(customers, TIME_SCALE, mode.newFactory());
+            theater.initTheater(movieFile);
+            theater.initCustomers();
+        } catch (UnsupportedOperationException ex) {
+            err.println(ex.getMessage());
+            System.exit(0);
+        }
+        long wallMs = (System.nanoTime() - start) / 1000000;
+        err.printf("%10d %14.1f%n", wallMs, peakRssKb() / 1024.0);
+        System.exit(0);
+    }
+
+    /**
+     * Reads the peak resident set size of this process from /proc
+     *
+     * @return peak RSS in kB, or -1 if not available
+     */
+    private static long peakRssKb() throws IOException {
+        List<String> status = Files.readAllLines(Paths.get("/proc/self/status"));
+        for (String line : status) {
+            if (line.startsWith("VmHWM:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return -1;
+    }
+}
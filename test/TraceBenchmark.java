@@ -0,0 +1,65 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * TraceBenchmark.java
+ *
+ * Measures what recording costs: 1, 2, 4 and 8 threads each record the same
+ * number of events into one TraceRecorder at once, and the table shows the
+ * wall time per record of all threads together and the file size. A traced
+ * theater writes about 15 records per customer, so this bounds what tracing
+ * adds to a run.
+ *
+ * Usage: java TraceBenchmark [recordsPerThread] [runs]
+ *
+ */
+public class TraceBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int perThread = args.length >= 1 ? Integer.parseInt(args[0]) : 1000000;
+        int runs = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        Path file = Files.createTempFile("bench", ".trace");
+        file.toFile().deleteOnExit();
+
+        System.out.printf("%d processors, %d records per thread, best of %d runs%n",
+                Runtime.getRuntime().availableProcessors(), perThread, runs);
+        System.out.printf("%8s %14s %12s%n", "threads", "ns per record", "file MB");
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            double best = Double.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                best = Math.min(best, run(file, threads, perThread));
+            }
+            System.out.printf("%8d %14.1f %12.1f%n", threads, best, Files.size(file) / 1e6);
+        }
+    }
+
+    /**
+     * Records from several threads at once
+     *
+     * @return wall time per record of all threads together in nanoseconds
+     */
+    private static double run(Path file, int threads, int perThread) throws Exception {
+        TraceRecorder trace = new TraceRecorder(file, threads * perThread, 1);
+        List<Thread> recorders = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    trace.record(TraceRecorder.Type.TAKEN, TheaterConfig.BOX, i, worker, -1);
+                }
+            });
+            recorders.add(thread);
+            thread.start();
+        }
+        for (Thread thread : recorders) {
+            thread.join();
+        }
+        double nanos = (double) (System.nanoTime() - start) / ((long) threads * perThread);
+        trace.close();
+        return nanos;
+    }
+
+}
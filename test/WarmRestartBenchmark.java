@@ -0,0 +1,73 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/*
+ * WarmRestartBenchmark.java
+ *
+ * Runs the threaded theater many times back to back, once creating a new
+ * theater with a new pool of threads for every run and once restarting the
+ * same theater on the threads of the last run. Worker sleeps are scaled to
+ * zero, so each run's time is the cost of opening, letting customers through
+ * and stopping.
+ *
+ * Usage: java WarmRestartBenchmark [movieFile] [customers] [runs]
+ *
+ */
+public class WarmRestartBenchmark {
+
+    //every worker sleep rounds down to 0 ms
+    private static final int TIME_SCALE = 1000000000;
+
+    public static void main(String args[]) throws Exception {
+        String movieFile = args.length >= 1 ? args[0] : "movies.txt";
+        int customers = args.length >= 2 ? Integer.parseInt(args[1]) : 200;
+        int runs = args.length >= 3 ? Integer.parseInt(args[2]) : 200;
+        TheaterConfig config = new TheaterConfig();
+        config.customers = customers;
+        config.timeScale = TIME_SCALE;
+        config.log = EventLog.Output.OFF;
+        config.seed = 1;
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));   //workers print when created and leaving
+        long[] cold = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+            theater.initTheater(movieFile);
+            theater.initCustomers();
+            theater.shutdown();
+            cold[run] = System.nanoTime() - start;
+        }
+        long[] warm = new long[runs];
+        Theater theater = new Theater(config, Thread::new, OutputStream.nullOutputStream());
+        theater.initTheater(movieFile);
+        theater.initCustomers();
+        theater.stop();
+        theater.join();
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            theater.restart();
+            theater.initCustomers();
+            theater.stop();
+            theater.join();
+            warm[run] = System.nanoTime() - start;
+        }
+        theater.shutdown();
+        System.setOut(out);
+
+        out.printf("%d customers, %d runs each%n", customers, runs);
+        out.printf("%-34s %10s %10s %10s%n", "", "p50 ms", "p90 ms", "max ms");
+        print(out, "new theater and threads every run", cold);
+        print(out, "restart on the same threads", warm);
+    }
+
+    private static void print(PrintStream out, String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        out.printf("%-34s %10.2f %10.2f %10.2f%n", name, sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length * 9 / 10] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+}